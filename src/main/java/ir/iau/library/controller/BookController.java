@@ -1,19 +1,28 @@
 package ir.iau.library.controller;
 
 import ir.iau.library.dto.BookFilterDto;
+import ir.iau.library.dto.BookSummaryDto;
+import ir.iau.library.dto.CursorPage;
+import ir.iau.library.dto.SearchResultDto;
 import ir.iau.library.entity.Book;
+import ir.iau.library.entity.ImageSize;
 import ir.iau.library.service.BookService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
 
 @RestController
 @RequestMapping("/api/book")
@@ -23,19 +32,34 @@ public class BookController {
     private BookService bookService;
 
     @GetMapping
-    public Page<Book> listBooks(
+    public Page<BookSummaryDto> listBooks(
             BookFilterDto filter, // استفاده از BookFilterDto
             @RequestParam(defaultValue = "0") int page,
             @RequestParam(defaultValue = "10") int size,
             @RequestParam(defaultValue = "id,desc") String sort) { // تغییر sort پیشفرض به id,desc
 
-        String[] sortParts = sort.split(",");
-        Sort.Direction direction = sortParts.length > 1 ? Sort.Direction.fromString(sortParts[1]) : Sort.Direction.ASC;
-        Sort sortOrder = Sort.by(direction, sortParts[0]);
-        Pageable pageable = PageRequest.of(page, size, sortOrder);
+        Pageable pageable = PageRequest.of(page, size, Sort.by(parseSortOrder(sort)));
         return bookService.findAllFiltered(filter, pageable);
     }
 
+    // حالت keyset (برای جدول‌های بزرگ): ?after= خالی برای صفحه اول و سپس nextCursor پاسخ قبلی؛ بدون کوئری COUNT
+    @GetMapping(params = "after")
+    public CursorPage<BookSummaryDto> listBooksAfter(
+            BookFilterDto filter,
+            @RequestParam(required = false) String after,
+            @RequestParam(defaultValue = "10") int size,
+            @RequestParam(defaultValue = "id,desc") String sort) {
+        return bookService.findAllFilteredAfter(filter, after, size, parseSortOrder(sort));
+    }
+
+    // جستجوی رتبه‌بندی شده برای باکس جستجو: /api/book/search?q=...
+    @GetMapping("/search")
+    public List<SearchResultDto> searchBooks(
+            @RequestParam("q") String query,
+            @RequestParam(defaultValue = "20") int limit) {
+        return bookService.search(query, Math.min(limit, 100));
+    }
+
     @GetMapping("/{id}")
     public ResponseEntity<Book> getBook(@PathVariable Long id) {
         return bookService.getBookById(id)
@@ -43,6 +67,16 @@ public class BookController {
                 .orElse(ResponseEntity.notFound().build());
     }
 
+    // جلد کتاب جدا از فهرست، با ETag و Cache-Control؛ ?size=thumbnail|medium|original
+    @GetMapping("/{id}/cover")
+    public ResponseEntity<StreamingResponseBody> getBookCover(@PathVariable Long id,
+                                                              @RequestParam(defaultValue = "original") String size,
+                                                              WebRequest request) {
+        return bookService.getCover(id, ImageSize.fromParam(size))
+                .map(cover -> ImageResponses.of(cover, CacheControl.maxAge(Duration.ofHours(1)).cachePublic(), request))
+                .orElse(ResponseEntity.notFound().build());
+    }
+
     // --- BEGIN MODIFICATION for file upload ---
     @PostMapping(consumes = {"multipart/form-data"})
     public ResponseEntity<Book> createBook(
@@ -85,4 +119,10 @@ public class BookController {
         bookService.deleteBookById(id);
         return ResponseEntity.noContent().build();
     }
+
+    private static Sort.Order parseSortOrder(String sort) {
+        String[] sortParts = sort.split(",");
+        Sort.Direction direction = sortParts.length > 1 ? Sort.Direction.fromString(sortParts[1]) : Sort.Direction.ASC;
+        return new Sort.Order(direction, sortParts[0]);
+    }
 }
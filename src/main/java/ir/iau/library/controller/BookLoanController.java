@@ -1,17 +1,24 @@
 package ir.iau.library.controller;
 
+import ir.iau.library.dto.BatchLoanResult;
 import ir.iau.library.dto.BookLoanDto;
 import ir.iau.library.dto.BookLoanFilterDto;
 import ir.iau.library.dto.CreateLoanRequestDto;
+import ir.iau.library.dto.CursorPage;
+import ir.iau.library.dto.OverdueSweepStats;
 import ir.iau.library.service.BookLoanService;
+import ir.iau.library.service.OverdueLoanSweeper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import org.springframework.data.web.PageableDefault;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.List;
+
 @RestController
 @RequestMapping("/api/loan")
 public class BookLoanController {
@@ -19,20 +26,57 @@ public class BookLoanController {
     @Autowired
     private BookLoanService loanService;
 
+    @Autowired
+    private OverdueLoanSweeper overdueLoanSweeper;
+
     @GetMapping
     public Page<BookLoanDto> listLoans(BookLoanFilterDto filter, @PageableDefault(sort = "id", direction = org.springframework.data.domain.Sort.Direction.DESC) Pageable pageable) {
         return loanService.findAllFiltered(filter, pageable);
     }
 
+    // حالت keyset (برای جدول‌های بزرگ): ?after= خالی برای صفحه اول و سپس nextCursor پاسخ قبلی؛ بدون کوئری COUNT
+    @GetMapping(params = "after")
+    public CursorPage<BookLoanDto> listLoansAfter(
+            BookLoanFilterDto filter,
+            @RequestParam(required = false) String after,
+            @RequestParam(defaultValue = "10") int size,
+            @RequestParam(defaultValue = "id,desc") String sort) {
+        return loanService.findAllFilteredAfter(filter, after, size, parseSortOrder(sort));
+    }
+
     @PostMapping
     public ResponseEntity<BookLoanDto> createLoan(@RequestBody CreateLoanRequestDto request) {
         BookLoanDto createdLoan = loanService.createLoan(request);
         return ResponseEntity.status(HttpStatus.CREATED).body(createdLoan);
     }
 
+    // امانت دسته‌ای: آرایه‌ای از {personId, bookId, notes}؛ نتیجه هر قلم جداگانه برمی‌گردد
+    @PostMapping("/batch")
+    public BatchLoanResult createLoans(@RequestBody List<CreateLoanRequestDto> requests) {
+        return loanService.createLoans(requests);
+    }
+
+    // بازگرداندن دسته‌ای: آرایه‌ای از id امانت‌ها
+    @PostMapping("/return/batch")
+    public BatchLoanResult returnBooks(@RequestBody List<Long> loanIds) {
+        return loanService.returnBooks(loanIds);
+    }
+
     @PutMapping("/{id}/return")
     public ResponseEntity<BookLoanDto> returnBook(@PathVariable Long id) {
         BookLoanDto updatedLoan = loanService.returnBook(id);
         return ResponseEntity.ok(updatedLoan);
     }
-}
\ No newline at end of file
+
+    // آمار کار زمان‌بندی شده علامت‌گذاری دیرکردها (روی همین نود)
+    @GetMapping("/overdue-sweep")
+    public OverdueSweepStats overdueSweepStats() {
+        return overdueLoanSweeper.getStats();
+    }
+
+    private static Sort.Order parseSortOrder(String sort) {
+        String[] sortParts = sort.split(",");
+        Sort.Direction direction = sortParts.length > 1 ? Sort.Direction.fromString(sortParts[1]) : Sort.Direction.DESC;
+        return new Sort.Order(direction, sortParts[0]);
+    }
+}
@@ -1,46 +1,94 @@
 package ir.iau.library.controller;
 
-import ir.iau.library.dto.BookFilterDto;
-import ir.iau.library.dto.PersonFilterDto;
-import ir.iau.library.service.ExcelImportService;
+import ir.iau.library.dto.ImportJobDto;
+import ir.iau.library.dto.ImportResult;
+import ir.iau.library.dto.ImportRowError;
+import ir.iau.library.entity.ImportJobType;
+import ir.iau.library.service.ImportJobService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
-import org.springframework.web.bind.annotation.PostMapping;
-import org.springframework.web.bind.annotation.RequestMapping;
-import org.springframework.web.bind.annotation.RequestPart;
-import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.util.List;
+import java.io.IOException;
 
 @RestController
 @RequestMapping("/api/excel-import")
 public class ExcelImportController {
 
-    private final ExcelImportService excelImportService;
+    private final ImportJobService importJobService;
 
     @Autowired
-    public ExcelImportController(ExcelImportService excelImportService) {
-        this.excelImportService = excelImportService;
+    public ExcelImportController(ImportJobService importJobService) {
+        this.importJobService = importJobService;
     }
 
+    // نتیجه شامل تعداد ردیف‌های ذخیره‌شده و خطای ردیف‌های رد شده است؛ مثل /jobs یک job در همان صف است که منتظر پایانش می‌مانیم
     @PostMapping("/books")
-    public ResponseEntity<String> importBooks(@RequestPart("file") MultipartFile file) {
-        try {
-            List<BookFilterDto> books = excelImportService.importBooksFromExcel(file);
-            return ResponseEntity.ok("Books successfully imported. Total records: " + books.size());
-        } catch (Exception e) {
-            return ResponseEntity.status(500).body("Error importing books: " + e.getMessage());
-        }
+    public ResponseEntity<?> importBooks(@RequestPart("file") MultipartFile file) {
+        return importAndWait(ImportJobType.BOOKS, file, "books");
     }
 
     @PostMapping("/persons")
-    public ResponseEntity<String> importPersons(@RequestPart("file") MultipartFile file) {
+    public ResponseEntity<?> importPersons(@RequestPart("file") MultipartFile file) {
+        return importAndWait(ImportJobType.PERSONS, file, "persons");
+    }
+
+    // import در پس‌زمینه؛ پیشرفت با GET /jobs/{id} دنبال می‌شود
+    @PostMapping("/jobs/books")
+    public ResponseEntity<ImportJobDto> submitBookImport(@RequestPart("file") MultipartFile file) throws IOException {
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(importJobService.submit(ImportJobType.BOOKS, file));
+    }
+
+    @PostMapping("/jobs/persons")
+    public ResponseEntity<ImportJobDto> submitPersonImport(@RequestPart("file") MultipartFile file) throws IOException {
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(importJobService.submit(ImportJobType.PERSONS, file));
+    }
+
+    @GetMapping("/jobs")
+    public ResponseEntity<Page<ImportJobDto>> getJobs(@RequestParam(defaultValue = "0") int page,
+                                                      @RequestParam(defaultValue = "20") int size) {
+        return ResponseEntity.ok(importJobService.getJobs(PageRequest.of(page, size, Sort.by(Sort.Direction.DESC, "id"))));
+    }
+
+    @GetMapping("/jobs/{id}")
+    public ResponseEntity<ImportJobDto> getJob(@PathVariable Long id) {
+        return importJobService.getJob(id)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    @GetMapping("/jobs/{id}/errors")
+    public ResponseEntity<Page<ImportRowError>> getJobErrors(@PathVariable Long id,
+                                                             @RequestParam(defaultValue = "0") int page,
+                                                             @RequestParam(defaultValue = "100") int size) {
+        return ResponseEntity.ok(importJobService.getErrors(id, PageRequest.of(page, size)));
+    }
+
+    // ادامه job متوقف‌شده از آخرین دسته ذخیره‌شده
+    @PostMapping("/jobs/{id}/resume")
+    public ResponseEntity<ImportJobDto> resumeJob(@PathVariable Long id) {
+        return importJobService.resume(id)
+                .map(job -> ResponseEntity.status(HttpStatus.ACCEPTED).body(job))
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    private ResponseEntity<?> importAndWait(ImportJobType type, MultipartFile file, String what) {
         try {
-            List<PersonFilterDto> persons = excelImportService.importPersonsFromExcel(file);
-            return ResponseEntity.ok("Persons successfully imported. Total records: " + persons.size());
+            ImportResult result = importJobService.importAndWait(type, file);
+            return ResponseEntity.ok(result);
+        } catch (TaskRejectedException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body("Import queue is full, try again later");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return ResponseEntity.status(500).body("Error importing " + what + ": interrupted");
         } catch (Exception e) {
-            return ResponseEntity.status(500).body("Error importing persons: " + e.getMessage());
+            return ResponseEntity.status(500).body("Error importing " + what + ": " + e.getMessage());
         }
     }
-}
\ No newline at end of file
+}
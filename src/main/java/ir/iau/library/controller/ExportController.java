@@ -0,0 +1,61 @@
+package ir.iau.library.controller;
+
+import ir.iau.library.dto.BookFilterDto;
+import ir.iau.library.dto.BookLoanFilterDto;
+import ir.iau.library.dto.PersonFilterDto;
+import ir.iau.library.exporter.ExportFormat;
+import ir.iau.library.service.ExportService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.time.LocalDate;
+
+/**
+ * خروجی اکسل (?format=xlsx، پیش‌فرض) یا CSV با همان پارامترهای فیلتر فهرست‌ها؛ پاسخ به صورت chunked و هم‌زمان با
+ * خواندن ردیف‌ها ارسال می‌شود.
+ */
+@RestController
+@RequestMapping("/api/export")
+public class ExportController {
+
+    @Autowired
+    private ExportService exportService;
+
+    @GetMapping("/books")
+    public ResponseEntity<StreamingResponseBody> exportBooks(BookFilterDto filter,
+                                                             @RequestParam(defaultValue = "xlsx") String format) {
+        ExportFormat exportFormat = ExportFormat.fromParam(format);
+        return attachment("books", exportFormat, out -> exportService.exportBooks(filter, exportFormat, out));
+    }
+
+    @GetMapping("/persons")
+    public ResponseEntity<StreamingResponseBody> exportPersons(PersonFilterDto filter,
+                                                               @RequestParam(defaultValue = "xlsx") String format) {
+        ExportFormat exportFormat = ExportFormat.fromParam(format);
+        return attachment("persons", exportFormat, out -> exportService.exportPersons(filter, exportFormat, out));
+    }
+
+    @GetMapping("/loans")
+    public ResponseEntity<StreamingResponseBody> exportLoans(BookLoanFilterDto filter,
+                                                             @RequestParam(defaultValue = "xlsx") String format) {
+        ExportFormat exportFormat = ExportFormat.fromParam(format);
+        return attachment("loans", exportFormat, out -> exportService.exportLoans(filter, exportFormat, out));
+    }
+
+    private static ResponseEntity<StreamingResponseBody> attachment(String name, ExportFormat format,
+                                                                    StreamingResponseBody body) {
+        String fileName = name + "-" + LocalDate.now() + "." + format.getExtension();
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment().filename(fileName).build().toString())
+                .contentType(MediaType.parseMediaType(format.getContentType()))
+                .body(body);
+    }
+}
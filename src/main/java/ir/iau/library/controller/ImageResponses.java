@@ -0,0 +1,31 @@
+package ir.iau.library.controller;
+
+import ir.iau.library.service.ImageContent;
+import org.springframework.http.CacheControl;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+/**
+ * پاسخ مشترک برای endpointهای تصویر (جلد کتاب، عکس پروفایل).
+ * ETag همان SHA-256 محتوا در blob store است؛ برای If-None-Match منطبق بدون خواندن فایل 304 برگردانده می‌شود.
+ */
+final class ImageResponses {
+
+    private ImageResponses() {
+    }
+
+    static ResponseEntity<StreamingResponseBody> of(ImageContent image, CacheControl cacheControl, WebRequest request) {
+        String eTag = "\"" + image.hash() + "\"";
+        if (request.checkNotModified(eTag)) {
+            return ResponseEntity.status(304).eTag(eTag).cacheControl(cacheControl).build();
+        }
+        return ResponseEntity.ok()
+                .eTag(eTag)
+                .cacheControl(cacheControl)
+                .contentType(MediaType.parseMediaType(image.contentType()))
+                .contentLength(image.size())
+                .body(image::writeTo);
+    }
+}
@@ -1,46 +1,64 @@
 package ir.iau.library.controller;
 
 import ir.iau.library.dto.ApiResponse;
+import ir.iau.library.dto.ConversationCacheStats;
 import ir.iau.library.dto.ConversationCriteria;
+import ir.iau.library.dto.CursorPage;
+import ir.iau.library.dto.MessageDto;
+import ir.iau.library.dto.MessageStats;
 import ir.iau.library.dto.MessageUpdateRequest;
 import ir.iau.library.dto.SearchCriteria;
+import ir.iau.library.service.ConversationTailCache;
 import ir.iau.library.service.MessageService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.LocalDateTime;
+
 @RestController
 @RequestMapping("/api/messages")
 @RequiredArgsConstructor
 @Slf4j
-@CrossOrigin(origins = "*")
 public class MessageController {
 
     private final MessageService messageService;
+    private final ConversationTailCache conversationTailCache;
 
     @GetMapping("/search")
     public ResponseEntity<ApiResponse> searchMessages(
             @RequestParam(required = false) String query,
+            @RequestParam(required = false) String username,
             @RequestParam(required = false) String sender,
+            @RequestParam(required = false) String recipient,
             @RequestParam(required = false) String subject,
             @RequestParam(required = false) String priority,
+            @RequestParam(required = false) Boolean isActive,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startDate,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endDate,
             @RequestParam(defaultValue = "0") int page,
             @RequestParam(defaultValue = "20") int size
     ) {
         try {
-            log.info("Search request - query: {}, sender: {}, subject: {}, priority: {}",
-                    query, sender, subject, priority);
+            log.info("Search request - query: {}, username: {}, sender: {}, subject: {}, priority: {}",
+                    query, username, sender, subject, priority);
 
             Pageable pageable = PageRequest.of(page, size);
 
             SearchCriteria criteria = new SearchCriteria();
             criteria.setQuery(query);
+            criteria.setUsername(username);
             criteria.setSender(sender);
+            criteria.setRecipient(recipient);
             criteria.setSubject(subject);
             criteria.setPriority(priority);
+            criteria.setIsActive(isActive);
+            criteria.setStartDate(startDate);
+            criteria.setEndDate(endDate);
             criteria.setPage(page);
             criteria.setSize(size);
 
@@ -54,6 +72,22 @@ public class MessageController {
         }
     }
 
+    // حالت keyset برای پیمایش تاریخچه طولانی: ?after= خالی برای صفحه اول و سپس nextCursor پاسخ قبلی؛ بدون COUNT
+    @GetMapping(value = "/conversation", params = "after")
+    public ResponseEntity<ApiResponse<CursorPage<MessageDto>>> getConversationMessagesBefore(
+            @RequestParam String senderUsername,
+            @RequestParam String recipientUsername,
+            @RequestParam(required = false) String after,
+            @RequestParam(defaultValue = "15") int size
+    ) {
+        ConversationCriteria criteria = new ConversationCriteria();
+        criteria.setSenderUsername(senderUsername);
+        criteria.setRecipientUsername(recipientUsername);
+        criteria.setAfter(after);
+        criteria.setSize(Math.min(size, 100));
+        return ResponseEntity.ok(messageService.getConversationMessagesBefore(criteria));
+    }
+
     @GetMapping("/conversation")
     public ResponseEntity<ApiResponse> getConversationMessages(
             @RequestParam String senderUsername,
@@ -126,4 +160,16 @@ public class MessageController {
                     .body(ApiResponse.error("خطا در علامت‌گذاری پیام: " + e.getMessage()));
         }
     }
-}
\ No newline at end of file
+
+    // آمار داشبورد پیام‌ها از شمارنده‌های درون حافظه
+    @GetMapping("/stats")
+    public ResponseEntity<ApiResponse<MessageStats>> getMessageStats(@RequestParam String username) {
+        return ResponseEntity.ok(messageService.getMessageStats(username));
+    }
+
+    // آمار کش آخرین پیام‌های مکالمه‌ها (hit/miss، حافظه مصرفی) روی همین نود
+    @GetMapping("/conversation-cache")
+    public ConversationCacheStats conversationCacheStats() {
+        return conversationTailCache.getStats();
+    }
+}
@@ -1,19 +1,34 @@
 package ir.iau.library.controller;
 
+import ir.iau.library.dto.BookLoanDto;
+import ir.iau.library.dto.BookLoanFilterDto;
+import ir.iau.library.dto.CursorPage;
 import ir.iau.library.dto.PersonFilterDto;
+import ir.iau.library.dto.PersonLoanSummaryDto;
+import ir.iau.library.dto.PersonSummaryDto;
+import ir.iau.library.dto.SearchResultDto;
+import ir.iau.library.entity.ImageSize;
 import ir.iau.library.entity.Person;
+import ir.iau.library.service.BookLoanService;
 import ir.iau.library.service.PersonService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
+import org.springframework.data.web.PageableDefault;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+
 @RestController
 @RequestMapping("/api/person")
 public class PersonController {
@@ -21,21 +36,39 @@ public class PersonController {
     @Autowired
     private PersonService personService;
 
+    @Autowired
+    private BookLoanService loanService;
+
     @GetMapping
-    public Page<Person> listPersons(
+    public Page<PersonSummaryDto> listPersons(
             PersonFilterDto filter,
             @RequestParam(defaultValue = "0") int page,
             @RequestParam(defaultValue = "10") int size,
             @RequestParam(defaultValue = "id,desc") String sort) {
 
-        String[] sortParts = sort.split(",");
-        Sort.Direction direction = sortParts.length > 1 ? Sort.Direction.fromString(sortParts[1]) : Sort.Direction.DESC;
-        Sort sortOrder = Sort.by(direction, sortParts[0]);
-        Pageable pageable = PageRequest.of(page, size, sortOrder);
+        Pageable pageable = PageRequest.of(page, size, Sort.by(parseSortOrder(sort)));
 
         return personService.findAllFiltered(filter, pageable);
     }
 
+    // حالت keyset (برای جدول‌های بزرگ): ?after= خالی برای صفحه اول و سپس nextCursor پاسخ قبلی؛ بدون کوئری COUNT
+    @GetMapping(params = "after")
+    public CursorPage<PersonSummaryDto> listPersonsAfter(
+            PersonFilterDto filter,
+            @RequestParam(required = false) String after,
+            @RequestParam(defaultValue = "10") int size,
+            @RequestParam(defaultValue = "id,desc") String sort) {
+        return personService.findAllFilteredAfter(filter, after, size, parseSortOrder(sort));
+    }
+
+    // جستجوی رتبه‌بندی شده روی نام، ایمیل و کد ملی: /api/person/search?q=...
+    @GetMapping("/search")
+    public List<SearchResultDto> searchPersons(
+            @RequestParam("q") String query,
+            @RequestParam(defaultValue = "20") int limit) {
+        return personService.search(query, Math.min(limit, 100));
+    }
+
     @GetMapping("/{id}")
     public ResponseEntity<Person> getPerson(@PathVariable Long id) {
         return personService.getPersonById(id)
@@ -43,6 +76,35 @@ public class PersonController {
                 .orElse(ResponseEntity.notFound().build());
     }
 
+    // شمارش امانت‌ها و رزروهای عضو با یک کوئری تجمیعی
+    @GetMapping("/{id}/summary")
+    public ResponseEntity<PersonLoanSummaryDto> getLoanSummary(@PathVariable Long id) {
+        return personService.getLoanSummary(id)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    // تاریخچه امانت‌های عضو، جدیدترین اول
+    @GetMapping("/{id}/loans")
+    public ResponseEntity<Page<BookLoanDto>> getLoanHistory(@PathVariable Long id, BookLoanFilterDto filter,
+                                                            @PageableDefault(sort = "id", direction = Sort.Direction.DESC) Pageable pageable) {
+        if (!personService.existsById(id)) {
+            return ResponseEntity.notFound().build();
+        }
+        filter.setPersonId(id);
+        return ResponseEntity.ok(loanService.findAllFiltered(filter, pageable));
+    }
+
+    // عکس پروفایل جدا از فهرست، با ETag و Cache-Control (خصوصی، چون اطلاعات شخصی است)؛ ?size=thumbnail|medium|original
+    @GetMapping("/{id}/picture")
+    public ResponseEntity<StreamingResponseBody> getProfilePicture(@PathVariable Long id,
+                                                                   @RequestParam(defaultValue = "original") String size,
+                                                                   WebRequest request) {
+        return personService.getProfilePicture(id, ImageSize.fromParam(size))
+                .map(picture -> ImageResponses.of(picture, CacheControl.maxAge(Duration.ofHours(1)).cachePrivate(), request))
+                .orElse(ResponseEntity.notFound().build());
+    }
+
     @PostMapping(consumes = {"multipart/form-data"})
     public ResponseEntity<Person> createPerson(
             @RequestPart("person") Person person,
@@ -65,4 +127,10 @@ public class PersonController {
         personService.deactivatePerson(id); // Soft delete
         return ResponseEntity.noContent().build();
     }
-}
\ No newline at end of file
+
+    private static Sort.Order parseSortOrder(String sort) {
+        String[] sortParts = sort.split(",");
+        Sort.Direction direction = sortParts.length > 1 ? Sort.Direction.fromString(sortParts[1]) : Sort.Direction.DESC;
+        return new Sort.Order(direction, sortParts[0]);
+    }
+}
@@ -1,16 +1,22 @@
 package ir.iau.library.controller;
 
 
-import ir.iau.library.entity.Reservation;
+import ir.iau.library.dto.HoldPositionDto;
+import ir.iau.library.dto.ReservationDto;
+import ir.iau.library.dto.ReservationFilterDto;
+import ir.iau.library.entity.ReservationStatus;
 import ir.iau.library.service.ReservationService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.web.PageableDefault;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.time.LocalDate;
-import java.util.List;
 
 @RestController
 @RequestMapping("/api/reservations")
@@ -20,22 +26,36 @@ public class ReservationController {
     private final ReservationService reservationService;
 
     @PostMapping
-    public ResponseEntity<Reservation> createReservation(
+    public ResponseEntity<ReservationDto> createReservation(
             @RequestParam Long personId,
             @RequestParam Long bookId,
             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate expiryDate) {
-        Reservation reservation = reservationService.createReservation(personId, bookId, expiryDate);
+        ReservationDto reservation = reservationService.createReservation(personId, bookId, expiryDate);
         return ResponseEntity.status(HttpStatus.CREATED).body(reservation);
     }
 
     @PutMapping("/{id}/fulfill")
-    public ResponseEntity<Reservation> fulfillReservation(@PathVariable Long id) {
-        Reservation updated = reservationService.fulfillReservation(id);
+    public ResponseEntity<ReservationDto> fulfillReservation(@PathVariable Long id) {
+        ReservationDto updated = reservationService.fulfillReservation(id);
         return ResponseEntity.ok(updated);
     }
 
+    // جایگاه در صف انتظار کتاب، از HoldQueue در حافظه
+    @GetMapping("/{id}/position")
+    public HoldPositionDto getHoldPosition(@PathVariable Long id) {
+        return reservationService.getHoldPosition(id);
+    }
+
+    @GetMapping
+    public Page<ReservationDto> listReservations(ReservationFilterDto filter,
+                                                 @PageableDefault(sort = "id", direction = Sort.Direction.DESC) Pageable pageable) {
+        return reservationService.findAllFiltered(filter, pageable);
+    }
+
+    // صف انتظار، قدیمی‌ترین اول
     @GetMapping("/active")
-    public List<Reservation> listActive() {
-        return reservationService.getActiveReservations();
+    public Page<ReservationDto> listActive(ReservationFilterDto filter, @PageableDefault(sort = "id") Pageable pageable) {
+        filter.setStatus(ReservationStatus.ACTIVE);
+        return reservationService.findAllFiltered(filter, pageable);
     }
 }
\ No newline at end of file
@@ -0,0 +1,32 @@
+package ir.iau.library.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * نتیجه امانت یا بازگرداندن دسته‌ای؛ برای هر قلم درخواست (به همان ترتیب) یک نتیجه جداگانه
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class BatchLoanResult {
+    private int succeeded;
+    private int failed;
+    private List<Item> items;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @Builder
+    public static class Item {
+        private int index;       // جایگاه قلم در آرایه درخواست
+        private boolean success;
+        private String error;
+        private BookLoanDto loan;
+    }
+}
@@ -40,5 +40,5 @@ public class BookFilterDto {
     private String columnNumber;
     private String positionNote;
 
-    // اگر نیاز بود می‌توان آن را هم اضافه کرد.
+    private Boolean available; // true: حداقل یک نسخه قابل امانت، false: همه نسخه‌ها در امانت
 }
\ No newline at end of file
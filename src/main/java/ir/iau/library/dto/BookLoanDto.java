@@ -2,12 +2,17 @@ package ir.iau.library.dto;
 
 
 import ir.iau.library.entity.LoanStatus;
+import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
+import lombok.NoArgsConstructor;
 
 import java.time.LocalDate;
 
+// ترتیب فیلدها با BookLoanSpecification.dtoSelection() یکی است
 @Data
+@NoArgsConstructor
+@AllArgsConstructor
 @Builder
 public class BookLoanDto {
     private Long id;
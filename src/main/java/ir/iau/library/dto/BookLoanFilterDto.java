@@ -9,6 +9,7 @@ import java.time.LocalDate;
 
 @Data
 public class BookLoanFilterDto {
+    private Long personId;
     private String personNationalId;
     private String bookIsbn;
     private LoanStatus status;
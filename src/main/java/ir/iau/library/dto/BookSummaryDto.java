@@ -0,0 +1,45 @@
+package ir.iau.library.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+
+/**
+ * نمای فهرستی کتاب: همه ستون‌ها به جز فایل جلد (LONGBLOB).
+ * جلد از طریق /api/book/{id}/cover جداگانه دریافت می‌شود و hasCover فقط وجود آن را نشان می‌دهد.
+ * ترتیب فیلدها با ترتیب انتخاب در {@code BookSpecification.summarySelection()} یکی است.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class BookSummaryDto {
+    private Long id;
+    private String title;
+    private String author;
+    private String translator;
+    private String publisher;
+    private String isbn10;
+    private String isbn13;
+    private String description;
+    private String deweyDecimal;
+    private String congressClassification;
+    private String subject;
+    private String summary;
+    private LocalDate publicationDate;
+    private Integer pageCount;
+    private String language;
+    private String edition;
+    private Integer copyCount;
+    private Integer availableCopies;
+    private String librarySection;
+    private String shelfCode;
+    private String rowNumbers;
+    private String columnNumber;
+    private String positionNote;
+    private Boolean active;
+    private Boolean hasCover;
+}
@@ -0,0 +1,21 @@
+package ir.iau.library.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// آمار کش آخرین پیام‌های مکالمه‌ها (روی همین نود)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ConversationCacheStats {
+    private int rooms;
+    private long estimatedBytes;
+    private long maxBytes;
+    private long hits;
+    private long misses;
+    private long evictions; // مکالمه‌هایی که به خاطر سقف حافظه (LRU) کنار گذاشته شدند
+    private long invalidations; // مکالمه‌هایی که پس از تغییری که قابل اعمال روی کش نبود حذف شدند
+}
@@ -15,4 +15,5 @@ public class ConversationCriteria {
     private String recipientUsername;
     private int page = 0;
     private int size = 15;
+    private String after; // cursor صفحه keyset؛ خالی برای صفحه اول
 }
\ No newline at end of file
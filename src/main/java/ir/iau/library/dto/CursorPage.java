@@ -0,0 +1,20 @@
+package ir.iau.library.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+// یک صفحه از نتایج در حالت صفحه‌بندی keyset (بدون COUNT)؛ برای صفحه بعد nextCursor را در پارامتر after بفرستید
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class CursorPage<T> {
+    private List<T> content;
+    private String nextCursor;
+    private boolean hasNext;
+    private int size;
+}
@@ -0,0 +1,22 @@
+package ir.iau.library.dto;
+
+import ir.iau.library.entity.ReservationStatus;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * جایگاه یک رزرو در صف انتظار کتاب
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class HoldPositionDto {
+    private Long reservationId;
+    private Long bookId;
+    private ReservationStatus status;
+    private Integer position; // از ۱؛ فقط برای رزروهای ACTIVE (در انتظار)
+    private int queueLength;
+}
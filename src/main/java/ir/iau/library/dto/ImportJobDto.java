@@ -0,0 +1,28 @@
+package ir.iau.library.dto;
+
+import ir.iau.library.entity.ImportJobStatus;
+import ir.iau.library.entity.ImportJobType;
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+@Data
+@Builder
+public class ImportJobDto {
+    private Long id;
+    private ImportJobType type;
+    private ImportJobStatus status;
+    private String fileName;
+    private Long totalRows;        // null تا زمانی که شمارش ردیف‌ها تمام نشده
+    private long processedRows;
+    private long importedRows;
+    private long failedRows;
+    private Double percent;
+    private Double rowsPerSecond;  // سرعت اجرای فعلی
+    private Long etaSeconds;
+    private String errorMessage;
+    private LocalDateTime createDate;
+    private LocalDateTime startedAt;
+    private LocalDateTime finishedAt;
+}
@@ -0,0 +1,16 @@
+package ir.iau.library.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@Builder
+public class ImportResult {
+    private long totalRows;   // ردیف‌های غیرخالی خوانده‌شده (بدون هدر)
+    private long imported;
+    private long failed;
+    private List<ImportRowError> errors; // حداکثر app.import.max-reported-errors خطا
+    private long durationMs;
+}
@@ -0,0 +1,13 @@
+package ir.iau.library.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ImportRowError {
+    private int rowNumber; // شماره ردیف در فایل اکسل
+    private String message;
+}
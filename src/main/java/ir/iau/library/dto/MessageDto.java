@@ -37,6 +37,10 @@ public class MessageDto {
     private String messageStatus;
     private List<FileAttachmentDto> attachments;
 
+    // فقط در نتایج جستجوی متنی: امتیاز رتبه‌بندی و بخشی از متن با کلمات منطبق در <mark>
+    private Double score;
+    private String highlight;
+
     // فیلد roomId برای سازگاری با ChatController
     private String roomId;
 
@@ -0,0 +1,25 @@
+package ir.iau.library.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * آمار اجرای کار علامت‌گذاری امانت‌های دیرکرد روی این نود
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder(toBuilder = true)
+public class OverdueSweepStats {
+    private LocalDateTime lastRunAt;
+    private long lastRowsUpdated;
+    private int lastChunks;
+    private long lastDurationMs;
+    private long totalRuns;
+    private long totalRowsUpdated;
+    private long skippedRuns; // اجراهایی که lease در اختیار نود دیگری بود
+}
@@ -0,0 +1,23 @@
+package ir.iau.library.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * خلاصه امانت‌ها و رزروهای یک عضو برای صفحه پروفایل.
+ * ترتیب فیلدها با کوئری سازنده در {@code PersonRepository.findLoanSummary} یکی است.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class PersonLoanSummaryDto {
+    private Long personId;
+    private long activeLoans;       // بازگردانده نشده
+    private long overdueLoans;      // بازگردانده نشده و سررسید گذشته
+    private long totalLoans;
+    private long activeReservations; // در صف انتظار
+    private long readyReservations;  // آماده دریافت
+}
@@ -0,0 +1,33 @@
+package ir.iau.library.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+
+/**
+ * نمای فهرستی عضو: همه ستون‌ها به جز عکس پروفایل (LONGBLOB).
+ * عکس از طریق /api/person/{id}/picture جداگانه دریافت می‌شود.
+ * ترتیب فیلدها با ترتیب انتخاب در {@code PersonSpecification.summarySelection()} یکی است.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class PersonSummaryDto {
+    private Long id;
+    private String firstName;
+    private String lastName;
+    private String email;
+    private String nationalId;
+    private String phone;
+    private LocalDate birthDate;
+    private LocalDate membershipDate;
+    private String membershipType;
+    private String address;
+    private String notes;
+    private Boolean active;
+    private Boolean hasProfilePicture;
+}
@@ -0,0 +1,30 @@
+package ir.iau.library.dto;
+
+import ir.iau.library.entity.ReservationStatus;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+
+// ترتیب فیلدها با کوئری سازنده در ReservationRepository یکی است
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ReservationDto {
+    private Long id;
+    private LocalDate reservationDate;
+    private LocalDate expiryDate;
+    private ReservationStatus status;
+
+    // Person Info
+    private Long personId;
+    private String personFirstName;
+    private String personLastName;
+
+    // Book Info
+    private Long bookId;
+    private String bookTitle;
+}
@@ -0,0 +1,22 @@
+package ir.iau.library.dto;
+
+import ir.iau.library.entity.ReservationStatus;
+import lombok.Data;
+import org.springframework.format.annotation.DateTimeFormat;
+
+import java.time.LocalDate;
+
+
+@Data
+public class ReservationFilterDto {
+    private Long personId;
+    private String personNationalId;
+    private Long bookId;
+    private ReservationStatus status;
+
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+    private LocalDate reservationDateFrom;
+
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+    private LocalDate reservationDateTo;
+}
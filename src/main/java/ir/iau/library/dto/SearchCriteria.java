@@ -4,6 +4,7 @@ import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
 
 import java.time.LocalDateTime;
 
@@ -14,12 +15,15 @@ import java.time.LocalDateTime;
 @Builder
 public class SearchCriteria {
     private String query;
+    private String username; // فقط پیام‌هایی که این کاربر فرستاده یا دریافت کرده است
     private String sender;
     private String recipient;
     private String subject;
     private String priority;
     private Boolean isActive;
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
     private LocalDateTime startDate;
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
     private LocalDateTime endDate;
     private int page = 0;
     private int size = 15;
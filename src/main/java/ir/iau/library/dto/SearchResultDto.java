@@ -0,0 +1,19 @@
+package ir.iau.library.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+// یک نتیجه‌ی جستجوی رتبه‌بندی شده (کتاب یا عضو)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class SearchResultDto {
+    private Long id;
+    private Double score;
+    private Map<String, String> fields;
+}
@@ -0,0 +1,38 @@
+package ir.iau.library.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * یک فایل در blob store (شناسه = SHA-256 محتوا) و تعداد ارجاع‌ها به آن.
+ * چند کتاب یا عضو با تصویر یکسان به یک فایل ارجاع می‌دهند؛ فایل‌هایی که مدتی بدون ارجاع مانده‌اند پاک می‌شوند.
+ */
+@Entity
+@Table(name = "blob_refs", indexes = @Index(name = "idx_blob_refs_ref_count", columnList = "ref_count"))
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class BlobRef {
+    @Id
+    @Column(length = 64)
+    private String hash;
+
+    @Column(nullable = false)
+    private Long size;
+
+    @Column(nullable = false, length = 100)
+    private String contentType;
+
+    @Column(name = "ref_count", nullable = false)
+    private Integer refCount;
+
+    @Column(name = "create_date")
+    private LocalDateTime createDate;
+
+    @Column(name = "last_reference_change")
+    private LocalDateTime lastReferenceChange;
+}
@@ -1,10 +1,12 @@
 package ir.iau.library.entity;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import ir.iau.library.dto.BookFilterDto;
 import jakarta.persistence.*;
 import lombok.*;
 import org.hibernate.envers.Audited;
+import org.hibernate.envers.NotAudited;
 
 import java.time.LocalDate;
 import java.util.ArrayList;
@@ -12,7 +14,7 @@ import java.util.List;
 
 @Entity
 @Audited
-@Table(name="books")
+@Table(name = "books", indexes = @Index(name = "idx_books_active_available", columnList = "active, available_copies"))
 @Getter
 @Setter
 @NoArgsConstructor
@@ -39,13 +41,21 @@ public class Book {
     private Integer pageCount;
     private String language;
 
-    @Lob
-    @Basic(fetch = FetchType.LAZY)
-    @Column(name = "book_cover_file", columnDefinition = "LONGBLOB")
-    private byte[] bookCoverFile;
+    // SHA-256 فایل جلد در BlobStore؛ خود فایل دیگر در جدول (و جدول audit) ذخیره نمی‌شود
+    @Column(name = "cover_hash", length = 64)
+    private String coverHash;
 
     private String edition;
     private Integer copyCount;
+
+    // تعداد نسخه‌های قابل امانت (copyCount منهای امانت‌های ON_LOAN/OVERDUE).
+    // فقط با UPDATE های اتمی BookRepository تغییر می‌کند (updatable = false) تا ذخیره موجودیت کتاب با مقدار
+    // قدیمی، امانت‌های هم‌زمان را بازنویسی نکند. در audit نمی‌آید تا هر امانت یک نسخه تاریخچه کتاب نسازد
+    @NotAudited
+    @Column(name = "available_copies", updatable = false)
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    private Integer availableCopies;
+
     private String librarySection; // بخش کتابخانه (مثلاً: علوم انسانی، مهندسی)
     private String shelfCode;      // کد یا شماره قفسه (مثلاً: A3, B5)
     private String rowNumbers;      // ردیف (مثلاً: ردیف 2)
@@ -58,6 +68,20 @@ public class Book {
     @JsonIgnore
     private List<BookLoan> loans = new ArrayList<>();
 
+    /**
+     * تعداد کل نسخه‌ها؛ copyCount خالی مثل قبل یک نسخه حساب می‌شود
+     */
+    public int totalCopies() {
+        return copyCount != null ? copyCount : 1;
+    }
+
+    @PrePersist
+    protected void initAvailableCopies() {
+        if (availableCopies == null) {
+            availableCopies = totalCopies();
+        }
+    }
+
     public Book(BookFilterDto bookFilterDto) {
         this.isbn10 = bookFilterDto.getIsbn10();
         this.title = bookFilterDto.getTitle();
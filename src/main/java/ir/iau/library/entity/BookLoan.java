@@ -7,15 +7,20 @@ import org.hibernate.envers.Audited;
 import java.time.LocalDate;
 @Entity
 @Audited
-@Table(name = "book_loans")
+@Table(name = "book_loans", indexes = {
+        // خلاصه و تاریخچه امانت‌های هر عضو؛ due_date برای شمارش دیرکردها بدون خواندن ردیف
+        @Index(name = "idx_book_loans_person_status", columnList = "person_id, status, due_date")
+})
 @Getter
 @Setter
 @NoArgsConstructor
 @AllArgsConstructor
 @Builder
 public class BookLoan {
+    // sequence (نه IDENTITY) تا امانت‌های دسته‌ای با JDBC batch درج شوند
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "book_loan_seq")
+    @SequenceGenerator(name = "book_loan_seq", sequenceName = "book_loan_seq", allocationSize = 50)
     private Long id;
 
     @ManyToOne(fetch = FetchType.LAZY)
@@ -40,4 +45,9 @@ public class BookLoan {
 
     @Column(length = 1000)
     private String notes; // یادداشت
+
+    // قفل خوش‌بینانه: دو بازگرداندن هم‌زمان یک امانت، شمارنده نسخه‌ها را دو بار افزایش نمی‌دهند
+    @Version
+    @Column(nullable = false)
+    private long version;
 }
\ No newline at end of file
@@ -0,0 +1,6 @@
+package ir.iau.library.entity;
+
+public enum ImageOwnerType {
+    BOOK_COVER,     // جلد کتاب
+    PERSON_PICTURE  // عکس پروفایل عضو
+}
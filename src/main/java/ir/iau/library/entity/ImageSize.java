@@ -0,0 +1,20 @@
+package ir.iau.library.entity;
+
+import java.util.Locale;
+
+public enum ImageSize {
+    THUMBNAIL, // برای نمای شبکه‌ای و فهرست‌ها
+    MEDIUM,    // برای صفحه جزئیات
+    ORIGINAL;  // فایل اصلی آپلود شده
+
+    /**
+     * مقدار پارامتر {@code ?size=} را بدون حساسیت به حروف بزرگ و کوچک می‌خواند.
+     */
+    public static ImageSize fromParam(String value) {
+        try {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown image size: " + value + " (expected thumbnail, medium or original)");
+        }
+    }
+}
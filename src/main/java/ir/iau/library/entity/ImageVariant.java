@@ -0,0 +1,53 @@
+package ir.iau.library.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * نسخه کوچک‌شده (thumbnail / medium) یک تصویر. محتوا در {@code BlobStore} است و اینجا فقط hash آن نگهداری می‌شود؛
+ * فایل اصلی از طریق {@code Book.coverHash} یا {@code Person.profilePictureHash} در دسترس است.
+ */
+@Entity
+@Table(name = "image_variants",
+        uniqueConstraints = @UniqueConstraint(name = "uk_image_variant_owner_size",
+                columnNames = {"owner_type", "owner_id", "image_size"}))
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ImageVariant {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "owner_type", nullable = false, length = 20)
+    private ImageOwnerType ownerType;
+
+    @Column(name = "owner_id", nullable = false)
+    private Long ownerId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "image_size", nullable = false, length = 20)
+    private ImageSize imageSize;
+
+    @Column(nullable = false, length = 100)
+    private String contentType;
+
+    private Integer width;
+    private Integer height;
+
+    @Column(name = "blob_hash", length = 64)
+    private String blobHash;
+
+    @Column(name = "create_date")
+    private LocalDateTime createDate;
+
+    @PrePersist
+    protected void onCreate() {
+        this.createDate = LocalDateTime.now();
+    }
+}
@@ -0,0 +1,69 @@
+package ir.iau.library.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * یک import اکسل که در پس‌زمینه اجرا می‌شود.
+ * <p>
+ * {@code processedRows} همان checkpoint است: تعداد ردیف‌های غیرخالی فایل (موفق یا ناموفق) که دسته‌شان commit شده
+ * و در همان تراکنش دسته به‌روز می‌شود. ادامه یک job متوقف‌شده از ردیف بعد از آن شروع می‌شود، پس هیچ ردیفی دو بار
+ * ذخیره نمی‌شود.
+ */
+@Entity
+@Table(name = "import_jobs", indexes = @Index(name = "idx_import_job_status", columnList = "status"))
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ImportJob {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 20)
+    private ImportJobType type;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 20)
+    private ImportJobStatus status;
+
+    private String originalFileName;
+
+    // فایل آپلودشده تا پایان موفق job نگه داشته می‌شود
+    @Column(length = 1000)
+    private String filePath;
+
+    private Long totalRows;
+
+    private long processedRows;
+    private long importedRows;
+    private long failedRows;
+
+    // برای محاسبه سرعت اجرای فعلی (پس از ادامه، ردیف‌های اجرای قبلی حساب نمی‌شوند)
+    private long runStartProcessedRows;
+    private LocalDateTime runStartedAt;
+
+    private LocalDateTime startedAt;
+    private LocalDateTime finishedAt;
+
+    @Column(length = 2000)
+    private String errorMessage;
+
+    // نودی که job را در صف گذاشته و اجرا می‌کند؛ تا وقتی آن نود زنده است heartbeatAt را جلو می‌برد
+    @Column(length = 200)
+    private String owner;
+    private LocalDateTime heartbeatAt;
+
+    @Column(name = "create_date")
+    private LocalDateTime createDate;
+
+    @PrePersist
+    protected void onCreate() {
+        this.createDate = LocalDateTime.now();
+    }
+}
@@ -0,0 +1,29 @@
+package ir.iau.library.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+/**
+ * خطای یک ردیف در یک {@link ImportJob}؛ حداکثر {@code app.import.max-reported-errors} خطا برای هر job ذخیره می‌شود.
+ */
+@Entity
+@Table(name = "import_job_errors", indexes = @Index(name = "idx_import_job_error_job", columnList = "job_id, row_number"))
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ImportJobError {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "job_id", nullable = false)
+    private Long jobId;
+
+    @Column(name = "row_number", nullable = false)
+    private int rowNumber;
+
+    @Column(length = 1000)
+    private String message;
+}
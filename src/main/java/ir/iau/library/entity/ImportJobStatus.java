@@ -0,0 +1,8 @@
+package ir.iau.library.entity;
+
+public enum ImportJobStatus {
+    QUEUED,     // در صف اجرا
+    RUNNING,    // در حال اجرا
+    COMPLETED,  // پایان یافته
+    FAILED      // متوقف شده؛ قابل ادامه از آخرین checkpoint
+}
@@ -0,0 +1,6 @@
+package ir.iau.library.entity;
+
+public enum ImportJobType {
+    BOOKS,   // کتاب‌ها
+    PERSONS  // اعضا
+}
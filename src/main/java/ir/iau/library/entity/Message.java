@@ -4,10 +4,19 @@ import jakarta.persistence.*;
 import lombok.*;
 import org.hibernate.envers.Audited;
 import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
 
 @Entity
 @Audited
-@Table(name = "messages")
+@Table(name = "messages", indexes = {
+        // تاریخچه مکالمه با صفحه‌بندی keyset: WHERE conversation_key = ? ORDER BY create_date DESC, id DESC
+        @Index(name = "idx_messages_conversation", columnList = "conversation_key, create_date, id"),
+        // جستجوی پیام‌ها (MessageSpecification): هر فیلتر برابری + ترتیب create_date از یک ایندکس خوانده می‌شود
+        @Index(name = "idx_messages_sender_date", columnList = "sender, create_date"),
+        @Index(name = "idx_messages_recipient_date", columnList = "recipient, create_date"),
+        @Index(name = "idx_messages_priority_date", columnList = "priority, create_date"),
+        @Index(name = "idx_messages_create_date", columnList = "create_date")
+})
 @Getter
 @Setter
 @NoArgsConstructor
@@ -27,6 +36,10 @@ public class Message {
     @Column(length = 100)
     private String recipient;
 
+    // کلید مکالمه دو نفره، مستقل از جهت پیام؛ همان قالب WebSocketMessage.getRoomId()
+    @Column(name = "conversation_key", length = 201)
+    private String conversationKey;
+
     @Column(name = "recipient_farsi_title", length = 200)
     private String recipientFarsiTitle;
 
@@ -84,7 +97,9 @@ public class Message {
 
     @PrePersist
     protected void onCreate() {
-        this.createDate = LocalDateTime.now();
+        // دقت ستون TIMESTAMP میکروثانیه است؛ مقدار درون حافظه (مثلاً در ConversationTailCache) باید با ردیف ذخیره شده یکی باشد
+        this.createDate = LocalDateTime.now().truncatedTo(ChronoUnit.MICROS);
+        this.conversationKey = conversationKey(this.sender, this.recipient);
         if (this.isActive == null) {
             this.isActive = true;
         }
@@ -103,4 +118,14 @@ public class Message {
     protected void onUpdate() {
         this.modifyDate = LocalDateTime.now();
     }
-}
\ No newline at end of file
+
+    /**
+     * نام‌های کاربری مرتب شده و جدا شده با {@code _}؛ برای پیام بدون گیرنده null است
+     */
+    public static String conversationKey(String user1, String user2) {
+        if (user1 == null || user2 == null) {
+            return null;
+        }
+        return user1.compareTo(user2) < 0 ? user1 + "_" + user2 : user2 + "_" + user1;
+    }
+}
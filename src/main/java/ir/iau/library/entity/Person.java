@@ -22,8 +22,10 @@ import java.util.List;
 @AllArgsConstructor
 @Builder
 public class Person {
+    // sequence (نه IDENTITY) تا Hibernate بتواند insert ها را دسته‌ای (JDBC batch) بفرستد
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "person_seq")
+    @SequenceGenerator(name = "person_seq", sequenceName = "person_seq", allocationSize = 50)
     private Long id;
 
     private String firstName;
@@ -44,10 +46,8 @@ public class Person {
     @Column(length = 2000)
     private String notes; // یادداشت های اضافی درباره عضو
 
-    @Lob
-    @Basic(fetch = FetchType.LAZY)
-    @Column(name = "profile_picture", columnDefinition = "LONGBLOB")
-    private byte[] profilePicture; // عکس پروفایل
+    @Column(name = "profile_picture_hash", length = 64)
+    private String profilePictureHash; // SHA-256 عکس پروفایل در BlobStore
 
     private Boolean active = true; // فلگ برای غیرفعال سازی
 
@@ -8,7 +8,12 @@ import java.time.LocalDate;
 
 @Entity
 @Audited
-@Table(name = "reservations")
+@Table(name = "reservations", indexes = {
+        // صف انتظار هر کتاب و فیلترهای فهرست رزروها
+        @Index(name = "idx_reservations_book_status", columnList = "book_id, status, id"),
+        @Index(name = "idx_reservations_person_status", columnList = "person_id, status"),
+        @Index(name = "idx_reservations_status_expiry", columnList = "status, expiry_date")
+})
 @Getter
 @Setter
 @NoArgsConstructor
@@ -23,13 +28,13 @@ public class Reservation {
     private LocalDate expiryDate;
 
     @Enumerated(EnumType.STRING)
-    private ReservationStatus status; // ACTIVE, EXPIRED, FULFILLED
+    private ReservationStatus status; // ACTIVE, READY, EXPIRED, FULFILLED
 
-    @ManyToOne(optional = false)
+    @ManyToOne(fetch = FetchType.LAZY, optional = false)
     @JoinColumn(name = "person_id")
     private Person person;
 
-    @ManyToOne(optional = false)
+    @ManyToOne(fetch = FetchType.LAZY, optional = false)
     @JoinColumn(name = "book_id")
     private Book book;
 }
\ No newline at end of file
@@ -1,7 +1,8 @@
 package ir.iau.library.entity;
 
 public enum ReservationStatus {
-    ACTIVE,
+    ACTIVE,   // در صف انتظار
+    READY,    // نسخه‌ای برگشته و تا expiryDate برای عضو کنار گذاشته شده
     EXPIRED,
     FULFILLED
 }
\ No newline at end of file
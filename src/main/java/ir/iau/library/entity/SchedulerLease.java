@@ -0,0 +1,28 @@
+package ir.iau.library.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * قفل زمان‌دار (lease) یک کار زمان‌بندی شده؛ فقط نودی که lease را گرفته تا {@code lockedUntil} آن کار را اجرا می‌کند.
+ */
+@Entity
+@Table(name = "scheduler_leases")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class SchedulerLease {
+    @Id
+    @Column(length = 100)
+    private String name;
+
+    @Column(length = 200)
+    private String owner;
+
+    @Column(name = "locked_until", nullable = false)
+    private LocalDateTime lockedUntil;
+}
@@ -0,0 +1,10 @@
+package ir.iau.library.exception;
+
+/**
+ * هیچ نسخه‌ای از کتاب برای امانت باقی نمانده است (پاسخ 409)
+ */
+public class BookNotAvailableException extends IllegalStateException {
+    public BookNotAvailableException(Long bookId) {
+        super("Book " + bookId + " is currently on loan and not available.");
+    }
+}
@@ -2,6 +2,8 @@ package ir.iau.library.exception;
 
 import ir.iau.library.dto.ApiResponse;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.BindException;
@@ -133,6 +135,42 @@ public class GlobalExceptionHandler {
                 .body(ApiResponse.error("پارامتر ورودی نامعتبر: " + ex.getMessage()));
     }
 
+    /**
+     * همه نسخه‌های کتاب در امانت هستند
+     */
+    @ExceptionHandler(BookNotAvailableException.class)
+    public ResponseEntity<ApiResponse<Object>> handleBookNotAvailableException(BookNotAvailableException ex) {
+
+        log.warn("Book not available: {}", ex.getMessage());
+
+        return ResponseEntity.status(HttpStatus.CONFLICT)
+                .body(ApiResponse.error("نسخه‌ای از این کتاب برای امانت موجود نیست"));
+    }
+
+    /**
+     * رکورد هم‌زمان توسط درخواست دیگری تغییر کرده است (مثلاً دو بار بازگرداندن یک امانت)
+     */
+    @ExceptionHandler(OptimisticLockingFailureException.class)
+    public ResponseEntity<ApiResponse<Object>> handleOptimisticLockingFailure(OptimisticLockingFailureException ex) {
+
+        log.warn("Concurrent modification: {}", ex.getMessage());
+
+        return ResponseEntity.status(HttpStatus.CONFLICT)
+                .body(ApiResponse.error("این رکورد هم‌زمان تغییر کرده است. لطفاً دوباره تلاش کنید"));
+    }
+
+    /**
+     * مدیریت خطای پر بودن صف کارهای پس‌زمینه (مثلاً import اکسل)
+     */
+    @ExceptionHandler(TaskRejectedException.class)
+    public ResponseEntity<ApiResponse<Object>> handleTaskRejectedException(TaskRejectedException ex) {
+
+        log.warn("Task rejected: {}", ex.getMessage());
+
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .body(ApiResponse.error("سرور مشغول است. لطفاً بعداً دوباره تلاش کنید"));
+    }
+
     /**
      * مدیریت خطاهای عمومی RuntimeException
      */
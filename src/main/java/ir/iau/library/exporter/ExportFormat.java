@@ -0,0 +1,40 @@
+package ir.iau.library.exporter;
+
+import java.io.OutputStream;
+
+public enum ExportFormat {
+    XLSX("xlsx", "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet"),
+    CSV("csv", "text/csv;charset=UTF-8");
+
+    private final String extension;
+    private final String contentType;
+
+    ExportFormat(String extension, String contentType) {
+        this.extension = extension;
+        this.contentType = contentType;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public RowWriter open(OutputStream out, String sheetName, String[] header) {
+        return this == XLSX ? new XlsxRowWriter(out, sheetName, header) : new CsvRowWriter(out, header);
+    }
+
+    /**
+     * @throws IllegalArgumentException اگر فرمت پشتیبانی نشود
+     */
+    public static ExportFormat fromParam(String value) {
+        for (ExportFormat format : values()) {
+            if (format.extension.equalsIgnoreCase(value)) {
+                return format;
+            }
+        }
+        throw new IllegalArgumentException("Unsupported export format: " + value);
+    }
+}
@@ -0,0 +1,16 @@
+package ir.iau.library.exporter;
+
+/**
+ * نوشتن جریانی ردیف‌های یک خروجی؛ ردیف‌ها به محض پر شدن بافر به خروجی فرستاده می‌شوند و در حافظه جمع نمی‌شوند.
+ * خطاهای ورودی/خروجی (مثلاً قطع اتصال کاربر) به صورت {@link java.io.UncheckedIOException} گزارش می‌شوند.
+ */
+public interface RowWriter extends AutoCloseable {
+
+    /**
+     * @param values مقادیر به ترتیب ستون‌های هدر؛ null یعنی سلول خالی
+     */
+    void row(Object... values);
+
+    @Override
+    void close();
+}
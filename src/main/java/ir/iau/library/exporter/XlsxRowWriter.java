@@ -0,0 +1,97 @@
+package ir.iau.library.exporter;
+
+import org.dhatim.fastexcel.Workbook;
+import org.dhatim.fastexcel.Worksheet;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * خروجی xlsx با fastexcel. هر {@value #FLUSH_ROWS} ردیف، ردیف‌های sheet به خروجی نوشته و از حافظه آزاد می‌شوند.
+ * چون هر sheet حداکثر 1,048,576 ردیف دارد، ردیف‌های بیشتر در sheet های بعدی (با همان هدر) نوشته می‌شوند.
+ * تاریخ‌ها سلول تاریخ هستند، پس فایل خروجی دوباره قابل import است.
+ */
+class XlsxRowWriter implements RowWriter {
+
+    private static final int FLUSH_ROWS = 1000;
+    private static final int MAX_SHEET_ROWS = 1_048_576;
+
+    private final Workbook workbook;
+    private final String sheetName;
+    private final String[] header;
+    private Worksheet sheet;
+    private int sheetCount;
+    private int rowIndex;
+
+    XlsxRowWriter(OutputStream out, String sheetName, String[] header) {
+        this.workbook = new Workbook(out, "library", "1.0");
+        this.sheetName = sheetName;
+        this.header = header;
+        newSheet();
+    }
+
+    @Override
+    public void row(Object... values) {
+        if (rowIndex == MAX_SHEET_ROWS) {
+            finishSheet();
+            newSheet();
+        }
+        for (int column = 0; column < values.length; column++) {
+            Object value = values[column];
+            if (value == null) {
+                continue;
+            }
+            if (value instanceof Number number) {
+                sheet.value(rowIndex, column, number);
+            } else if (value instanceof Boolean bool) {
+                sheet.value(rowIndex, column, bool);
+            } else if (value instanceof LocalDate date) {
+                sheet.value(rowIndex, column, date);
+                sheet.style(rowIndex, column).format("yyyy-mm-dd").set();
+            } else if (value instanceof LocalDateTime dateTime) {
+                sheet.value(rowIndex, column, dateTime);
+                sheet.style(rowIndex, column).format("yyyy-mm-dd hh:mm:ss").set();
+            } else {
+                sheet.value(rowIndex, column, value.toString());
+            }
+        }
+        if (++rowIndex % FLUSH_ROWS == 0) {
+            try {
+                sheet.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        finishSheet();
+        try {
+            workbook.finish();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void newSheet() {
+        sheetCount++;
+        sheet = workbook.newWorksheet(sheetCount == 1 ? sheetName : sheetName + "-" + sheetCount);
+        for (int column = 0; column < header.length; column++) {
+            sheet.value(0, column, header[column]);
+            sheet.style(0, column).bold().set();
+        }
+        rowIndex = 1;
+    }
+
+    private void finishSheet() {
+        try {
+            sheet.finish();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package ir.iau.library.importer;
+
+import ir.iau.library.dto.ImportRowError;
+import ir.iau.library.entity.Book;
+import ir.iau.library.search.BookSearchIndex;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+@Component
+@RequiredArgsConstructor
+public class BookImportHandler implements ImportHandler<Book> {
+
+    private final BookSearchIndex bookSearchIndex;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public Book parse(SpreadsheetRow row) {
+        return BookRowMapper.toBook(row);
+    }
+
+    @Override
+    public int write(List<ParsedRow<Book>> rows, List<ImportRowError> errors) {
+        for (ParsedRow<Book> row : rows) {
+            entityManager.persist(row.value());
+            bookSearchIndex.indexAfterCommit(row.value());
+        }
+        return rows.size();
+    }
+}
@@ -0,0 +1,43 @@
+package ir.iau.library.importer;
+
+import ir.iau.library.dto.BookFilterDto;
+import ir.iau.library.entity.Book;
+
+/**
+ * تبدیل یک ردیف فایل اکسل کتاب‌ها به {@link Book}. ترتیب ستون‌ها همان قالب قبلی فایل ورودی است.
+ */
+public final class BookRowMapper {
+
+    private BookRowMapper() {
+    }
+
+    /**
+     * @throws IllegalArgumentException اگر مقدار یکی از ستون‌های عددی یا تاریخ نامعتبر باشد
+     */
+    public static Book toBook(SpreadsheetRow row) {
+        BookFilterDto bookDto = new BookFilterDto();
+        bookDto.setIsbn10(row.get(0));
+        bookDto.setTitle(row.get(1));
+        bookDto.setAuthor(row.get(2));
+        bookDto.setTranslator(row.get(3));
+        bookDto.setDescription(row.get(4));
+        bookDto.setPublisher(row.get(5));
+        bookDto.setIsbn13(row.get(6));
+        bookDto.setDeweyDecimal(row.get(7));
+        bookDto.setCongressClassification(row.get(8));
+        bookDto.setSubject(row.get(9));
+        bookDto.setSummary(row.get(10));
+        bookDto.setPublicationDate(CellParsers.parseDate(row.get(11), "publication date"));
+        bookDto.setPageCount(CellParsers.parseInteger(row.get(12), "page count"));
+        bookDto.setLanguage(row.get(13));
+        bookDto.setEdition(row.get(14));
+        bookDto.setActive(CellParsers.parseActive(row.get(15)));
+        bookDto.setCopyCount(CellParsers.parseInteger(row.get(16), "copy count"));
+        bookDto.setLibrarySection(row.get(17));
+        bookDto.setShelfCode(row.get(18));
+        bookDto.setRowNumbers(row.get(19));
+        bookDto.setColumnNumber(row.get(20));
+        bookDto.setPositionNote(row.get(21));
+        return new Book(bookDto);
+    }
+}
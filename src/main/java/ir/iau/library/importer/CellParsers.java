@@ -0,0 +1,43 @@
+package ir.iau.library.importer;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+
+/**
+ * تبدیل مقدار رشته‌ای سلول‌ها به نوع فیلدها؛ مقدار نامعتبر با {@link IllegalArgumentException} گزارش می‌شود تا
+ * فقط همان ردیف رد شود.
+ */
+final class CellParsers {
+
+    private CellParsers() {
+    }
+
+    static LocalDate parseDate(String value, String field) {
+        if (value == null || value.isEmpty()) {
+            return null;
+        }
+        try {
+            return LocalDate.parse(value); // YYYY-MM-DD
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid " + field + ": " + value);
+        }
+    }
+
+    static Integer parseInteger(String value, String field) {
+        if (value == null || value.isEmpty()) {
+            return null;
+        }
+        try {
+            return (int) Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + field + ": " + value);
+        }
+    }
+
+    static Boolean parseActive(String value) {
+        if (value == null) {
+            return null;
+        }
+        return value.equalsIgnoreCase("TRUE") || value.equalsIgnoreCase("فعال") || value.equals("1");
+    }
+}
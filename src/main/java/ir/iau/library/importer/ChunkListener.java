@@ -0,0 +1,10 @@
+package ir.iau.library.importer;
+
+/**
+ * پس از ذخیره هر دسته و داخل همان تراکنش صدا زده می‌شود؛ بنابراین هر چه اینجا ذخیره شود (مثلاً checkpoint
+ * یک import job) همراه با خود دسته commit یا rollback می‌شود.
+ */
+@FunctionalInterface
+public interface ChunkListener {
+    void onChunk(ChunkResult chunk);
+}
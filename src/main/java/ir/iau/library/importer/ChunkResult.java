@@ -0,0 +1,14 @@
+package ir.iau.library.importer;
+
+import ir.iau.library.dto.ImportRowError;
+
+import java.util.List;
+
+/**
+ * نتیجه ذخیره یک دسته از ردیف‌ها.
+ *
+ * @param rows   تعداد ردیف‌های خوانده‌شده در این دسته (موفق و ناموفق)
+ * @param errors خطاها به ترتیب شماره ردیف
+ */
+public record ChunkResult(int rows, int imported, List<ImportRowError> errors) {
+}
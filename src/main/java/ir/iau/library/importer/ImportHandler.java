@@ -0,0 +1,24 @@
+package ir.iau.library.importer;
+
+import ir.iau.library.dto.ImportRowError;
+
+import java.util.List;
+
+/**
+ * تبدیل و ذخیره ردیف‌های یک نوع فایل اکسل (کتاب‌ها، اعضا).
+ */
+public interface ImportHandler<T> {
+
+    /**
+     * @throws IllegalArgumentException اگر ردیف نامعتبر باشد؛ فقط همین ردیف رد می‌شود
+     */
+    T parse(SpreadsheetRow row);
+
+    /**
+     * ذخیره ردیف‌های یک دسته، داخل تراکنش همان دسته. ردیف‌هایی که قابل ذخیره نیستند (مثلاً تکراری) به
+     * {@code errors} اضافه می‌شوند.
+     *
+     * @return تعداد ردیف‌های ذخیره‌شده
+     */
+    int write(List<ParsedRow<T>> rows, List<ImportRowError> errors);
+}
@@ -0,0 +1,7 @@
+package ir.iau.library.importer;
+
+/**
+ * ردیف اکسلی که با موفقیت به موجودیت تبدیل شده است.
+ */
+public record ParsedRow<T>(int rowNumber, T value) {
+}
@@ -0,0 +1,74 @@
+package ir.iau.library.importer;
+
+import ir.iau.library.dto.ImportRowError;
+import ir.iau.library.entity.Person;
+import ir.iau.library.repository.PersonRepository;
+import ir.iau.library.search.PersonSearchIndex;
+import ir.iau.library.specification.DuplicateFieldException;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * ذخیره اعضای یک دسته با بررسی تکراری بودن به صورت مجموعه‌ای: ایمیل‌ها و کدهای ملی کل دسته با دو پرس‌وجوی
+ * {@code IN} در پایگاه داده جستجو می‌شوند و تکرار داخل دسته با {@link HashSet} تشخیص داده می‌شود. دسته‌های قبلی
+ * همان فایل commit شده‌اند، پس تکرار بین دسته‌ها هم با همان پرس‌وجوها پیدا می‌شود. insert ها هنگام flush دسته
+ * به صورت JDBC batch فرستاده می‌شوند.
+ */
+@Component
+@RequiredArgsConstructor
+public class PersonImportHandler implements ImportHandler<Person> {
+
+    private final PersonRepository personRepository;
+    private final PersonSearchIndex personSearchIndex;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public Person parse(SpreadsheetRow row) {
+        return PersonRowMapper.toPerson(row);
+    }
+
+    @Override
+    public int write(List<ParsedRow<Person>> rows, List<ImportRowError> errors) {
+        if (rows.isEmpty()) {
+            return 0;
+        }
+        Set<String> emails = new HashSet<>(personRepository.findExistingEmails(values(rows, Person::getEmail)));
+        Set<String> nationalIds = new HashSet<>(personRepository.findExistingNationalIds(values(rows, Person::getNationalId)));
+        int imported = 0;
+        for (ParsedRow<Person> row : rows) {
+            Person person = row.value();
+            if (emails.contains(person.getEmail())) {
+                errors.add(new ImportRowError(row.rowNumber(), new DuplicateFieldException("Email", person.getEmail()).getMessage()));
+                continue;
+            }
+            if (nationalIds.contains(person.getNationalId())) {
+                errors.add(new ImportRowError(row.rowNumber(), new DuplicateFieldException("National ID", person.getNationalId()).getMessage()));
+                continue;
+            }
+            emails.add(person.getEmail());
+            nationalIds.add(person.getNationalId());
+            entityManager.persist(person);
+            personSearchIndex.indexAfterCommit(person);
+            imported++;
+        }
+        return imported;
+    }
+
+    private static Set<String> values(List<ParsedRow<Person>> rows, Function<Person, String> field) {
+        Set<String> values = new HashSet<>();
+        for (ParsedRow<Person> row : rows) {
+            values.add(field.apply(row.value()));
+        }
+        values.remove(null);
+        return values;
+    }
+}
@@ -0,0 +1,43 @@
+package ir.iau.library.importer;
+
+import ir.iau.library.dto.PersonFilterDto;
+import ir.iau.library.entity.Person;
+
+/**
+ * تبدیل یک ردیف فایل اکسل اعضا به {@link Person}. ترتیب ستون‌ها همان قالب قبلی فایل ورودی است.
+ */
+public final class PersonRowMapper {
+
+    private PersonRowMapper() {
+    }
+
+    /**
+     * @throws IllegalArgumentException اگر ایمیل یا کد ملی خالی یا یکی از تاریخ‌ها نامعتبر باشد
+     */
+    public static Person toPerson(SpreadsheetRow row) {
+        if (isBlank(row.get(2))) {
+            throw new IllegalArgumentException("Email is required");
+        }
+        if (isBlank(row.get(4))) {
+            throw new IllegalArgumentException("National ID is required");
+        }
+        PersonFilterDto personDto = new PersonFilterDto();
+        personDto.setFirstName(row.get(0));
+        personDto.setLastName(row.get(1));
+        personDto.setEmail(row.get(2));
+        personDto.setPhone(row.get(3));
+        personDto.setNationalId(row.get(4));
+        personDto.setMembershipType(row.get(5));
+        personDto.setAddress(row.get(6));
+        personDto.setActive(CellParsers.parseActive(row.get(7)));
+
+        Person person = new Person(personDto);
+        person.setBirthDate(CellParsers.parseDate(row.get(8), "birth date"));
+        person.setMembershipDate(CellParsers.parseDate(row.get(9), "membership date"));
+        return person;
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.isEmpty();
+    }
+}
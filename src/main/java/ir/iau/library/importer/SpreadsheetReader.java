@@ -0,0 +1,108 @@
+package ir.iau.library.importer;
+
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.dhatim.fastexcel.reader.Cell;
+import org.dhatim.fastexcel.reader.ReadableWorkbook;
+import org.dhatim.fastexcel.reader.ReadingOptions;
+import org.dhatim.fastexcel.reader.Row;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Iterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * خواندن ردیف به ردیف اولین sheet یک فایل .xlsx با fastexcel-reader (StAX)، تا برخلاف {@code XSSFWorkbook} در POI که
+ * کل sheet را در حافظه می‌سازد، مصرف حافظه به تعداد ردیف‌ها بستگی نداشته باشد.
+ * <p>
+ * مقدار سلول‌ها مثل import قبلی مبتنی بر {@code DataFormatter} به رشته trim شده تبدیل می‌شود، با این تفاوت که سلول‌های
+ * عددی با قالب تاریخ به تاریخ ISO ({@code yyyy-MM-dd}) تبدیل می‌شوند و اعداد ساده هیچ‌وقت نماد علمی نمی‌گیرند (تا
+ * شابک‌های طولانی سالم بمانند).
+ */
+public final class SpreadsheetReader {
+
+    private static final ReadingOptions WITH_CELL_FORMAT = new ReadingOptions(true, false);
+
+    private SpreadsheetReader() {
+    }
+
+    /**
+     * فراخوانی {@code consumer} برای هر ردیف غیرخالی بعد از ردیف عنوان.
+     */
+    public static void read(File file, Consumer<SpreadsheetRow> consumer) throws IOException {
+        read(file, 0, consumer);
+    }
+
+    /**
+     * مثل {@link #read(File, Consumer)}، ولی {@code skipRows} ردیف داده غیرخالی اول را رد می‌کند؛ برای ادامه یک import
+     * از آخرین checkpoint آن.
+     */
+    public static void read(File file, long skipRows, Consumer<SpreadsheetRow> consumer) throws IOException {
+        long skipped = 0;
+        try (ReadableWorkbook workbook = new ReadableWorkbook(file, WITH_CELL_FORMAT);
+             Stream<Row> rows = workbook.getFirstSheet().openStream()) {
+            Iterator<Row> iterator = rows.iterator();
+            if (iterator.hasNext()) {
+                iterator.next(); // هدر
+            }
+            while (iterator.hasNext()) {
+                SpreadsheetRow row = toSpreadsheetRow(iterator.next());
+                if (row.isEmpty()) {
+                    continue;
+                }
+                if (skipped < skipRows) {
+                    skipped++;
+                } else {
+                    consumer.accept(row);
+                }
+            }
+        }
+    }
+
+    /**
+     * تعداد ردیف‌های داده غیرخالی، برای گزارش پیشرفت.
+     */
+    public static long count(File file) throws IOException {
+        long[] count = {0};
+        read(file, row -> count[0]++);
+        return count[0];
+    }
+
+    private static SpreadsheetRow toSpreadsheetRow(Row row) {
+        String[] cells = new String[row.getCellCount()];
+        for (int i = 0; i < cells.length; i++) {
+            cells[i] = toString(row.getCell(i));
+        }
+        return new SpreadsheetRow(row.getRowNum(), cells);
+    }
+
+    private static String toString(Cell cell) {
+        if (cell == null) {
+            return null;
+        }
+        return switch (cell.getType()) {
+            case NUMBER -> isDate(cell)
+                    ? cell.asDate().toLocalDate().toString()
+                    : cell.asNumber().stripTrailingZeros().toPlainString();
+            case STRING -> cell.asString().trim();
+            case BOOLEAN -> cell.asBoolean() ? "TRUE" : "FALSE";
+            case FORMULA -> cell.getRawValue() != null ? formulaValue(cell.getRawValue()) : "";
+            case EMPTY, ERROR -> "";
+        };
+    }
+
+    private static boolean isDate(Cell cell) {
+        return cell.getDataFormatId() != null && cell.getDataFormatString() != null
+                && DateUtil.isADateFormat(cell.getDataFormatId(), cell.getDataFormatString());
+    }
+
+    private static String formulaValue(String raw) {
+        try {
+            return new BigDecimal(raw).stripTrailingZeros().toPlainString();
+        } catch (NumberFormatException e) {
+            return raw.trim();
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package ir.iau.library.importer;
+
+/**
+ * یک ردیف خوانده‌شده از فایل اکسل، با مقدار همه سلول‌ها به صورت رشته.
+ *
+ * @param rowNumber شماره ردیف در خود فایل (از ۱)، برای گزارش خطا
+ */
+public record SpreadsheetRow(int rowNumber, String[] cells) {
+
+    /**
+     * @return مقدار trim شده سلول، یا null اگر سلول وجود نداشته باشد
+     */
+    public String get(int column) {
+        return column < cells.length ? cells[column] : null;
+    }
+
+    public boolean isEmpty() {
+        for (String cell : cells) {
+            if (cell != null && !cell.isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,48 @@
+package ir.iau.library.repository;
+
+import ir.iau.library.entity.BlobRef;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface BlobRefRepository extends JpaRepository<BlobRef, String> {
+
+    /**
+     * افزایش اتمیک تعداد ارجاع؛ صفر یعنی ردیف هنوز وجود ندارد
+     */
+    @Modifying
+    @Query("UPDATE BlobRef r SET r.refCount = r.refCount + 1, r.lastReferenceChange = :now WHERE r.hash = :hash")
+    int incrementRefCount(@Param("hash") String hash, @Param("now") LocalDateTime now);
+
+    // INSERT ساده (نه merge) تا اگر درخواست دیگری هم‌زمان همین محتوا را ثبت کرده باشد، خطای کلید تکراری بگیریم
+    @Modifying
+    @Query(value = "INSERT INTO blob_refs (hash, size, content_type, ref_count, create_date, last_reference_change) " +
+            "VALUES (:hash, :size, :contentType, 0, :now, :now)", nativeQuery = true)
+    void insert(@Param("hash") String hash, @Param("size") long size, @Param("contentType") String contentType,
+                @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Query("UPDATE BlobRef r SET r.refCount = r.refCount - 1, r.lastReferenceChange = :now " +
+            "WHERE r.hash = :hash AND r.refCount > 0")
+    int decrementRefCount(@Param("hash") String hash, @Param("now") LocalDateTime now);
+
+    /**
+     * فایل‌هایی که از زمان مشخص بدون ارجاع مانده‌اند
+     */
+    @Query("SELECT r.hash FROM BlobRef r WHERE r.refCount = 0 AND r.lastReferenceChange < :before")
+    List<String> findOrphans(@Param("before") LocalDateTime before, Pageable pageable);
+
+    /**
+     * حذف ردیف فقط اگر هنوز بدون ارجاع باشد (ممکن است هم‌زمان دوباره استفاده شده باشد)
+     */
+    @Modifying
+    @Query("DELETE FROM BlobRef r WHERE r.hash = :hash AND r.refCount = 0")
+    int deleteIfOrphan(@Param("hash") String hash);
+}
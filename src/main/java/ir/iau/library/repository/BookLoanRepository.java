@@ -1,18 +1,55 @@
 package ir.iau.library.repository;
 
-import ir.iau.library.entity.Book;
 import ir.iau.library.entity.BookLoan;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 
 @Repository
 public interface BookLoanRepository extends JpaRepository<BookLoan, Long>, JpaSpecificationExecutor<BookLoan> {
-    // برای بررسی اینکه آیا کتابی در حال حاضر در امانت (یا دیرکرد) است یا خیر
-    @Query("SELECT bl FROM BookLoan bl WHERE bl.book = :book AND (bl.status = 'ON_LOAN' OR bl.status = 'OVERDUE')")
-    Optional<BookLoan> findActiveLoanByBook(Book book);
-}
\ No newline at end of file
+    // امانت همراه با عضو و کتاب در یک کوئری، برای ساخت DTO
+    @EntityGraph(attributePaths = {"person", "book"})
+    Optional<BookLoan> findWithPersonAndBookById(Long id);
+
+    @EntityGraph(attributePaths = {"person", "book"})
+    List<BookLoan> findWithPersonAndBookByIdIn(Collection<Long> ids);
+
+    // بازه id امانت‌هایی که سررسیدشان گذشته و هنوز ON_LOAN هستند: [min, max]
+    @Query("SELECT MIN(bl.id), MAX(bl.id) FROM BookLoan bl " +
+            "WHERE bl.dueDate < :today AND bl.status = ir.iau.library.entity.LoanStatus.ON_LOAN")
+    List<Object[]> findOverdueIdRange(@Param("today") LocalDate today);
+
+    // id امانت‌های دیرکرد یک بازه id که هنوز ON_LOAN هستند
+    @Query("SELECT bl.id FROM BookLoan bl WHERE bl.id > :afterId AND bl.id <= :toId AND bl.dueDate < :today " +
+            "AND bl.status = ir.iau.library.entity.LoanStatus.ON_LOAN")
+    List<Long> findOverdueIds(@Param("afterId") Long afterId, @Param("toId") Long toId, @Param("today") LocalDate today);
+
+    /**
+     * علامت‌گذاری دیرکردها با یک UPDATE؛ version هم افزایش می‌یابد تا بازگرداندن هم‌زمان با نسخه قدیمی رد شود.
+     */
+    @Modifying
+    @Query("UPDATE BookLoan bl SET bl.status = ir.iau.library.entity.LoanStatus.OVERDUE, bl.version = bl.version + 1 " +
+            "WHERE bl.id IN :ids AND bl.dueDate < :today AND bl.status = ir.iau.library.entity.LoanStatus.ON_LOAN")
+    int markOverdue(@Param("ids") Collection<Long> ids, @Param("today") LocalDate today);
+
+    /**
+     * ردیف‌های audit (REVTYPE=1، تغییر) امانت‌هایی که همین حالا با {@link #markOverdue} دیرکرد شدند، با یک
+     * INSERT ... SELECT در revision داده شده؛ UPDATE مستقیم از Envers عبور نمی‌کند.
+     */
+    @Modifying
+    @Query(value = "INSERT INTO book_loans_AUD (id, REV, REVTYPE, loan_date, due_date, return_date, status, notes, " +
+            "person_id, book_id) " +
+            "SELECT id, :rev, 1, loan_date, due_date, return_date, status, notes, person_id, book_id FROM book_loans " +
+            "WHERE id IN (:ids) AND status = 'OVERDUE'", nativeQuery = true)
+    int insertOverdueAuditRows(@Param("ids") Collection<Long> ids, @Param("rev") int rev);
+}
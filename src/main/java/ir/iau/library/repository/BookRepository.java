@@ -1,9 +1,69 @@
 package ir.iau.library.repository;
 
 import ir.iau.library.entity.Book;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.*;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
 @Repository
 public interface BookRepository extends JpaRepository<Book, Long>, JpaSpecificationExecutor<Book> {
+
+    // فقط ستون‌های متنی لازم برای ساخت ایندکس جستجو (بدون جلد کتاب)، به ترتیب id برای پیمایش دسته‌ای
+    @Query("SELECT b.id, b.title, b.author, b.translator, b.publisher, b.subject, b.summary " +
+            "FROM Book b WHERE b.id > :afterId ORDER BY b.id")
+    List<Object[]> findSearchableFields(@Param("afterId") Long afterId, Pageable pageable);
+
+    // فقط hash جلد، برای endpoint جداگانه‌ی /api/book/{id}/cover
+    @Query("SELECT b.coverHash FROM Book b WHERE b.id = :id")
+    Optional<String> findCoverHashById(@Param("id") Long id);
+
+    // کتاب‌هایی که جلد دارند ولی نسخه‌های کوچک‌شده آن هنوز ساخته نشده (برای backfill دسته‌ای)
+    @Query("SELECT b.id FROM Book b WHERE b.id > :afterId AND b.coverHash IS NOT NULL AND NOT EXISTS (" +
+            "SELECT v.id FROM ImageVariant v WHERE v.ownerType = ir.iau.library.entity.ImageOwnerType.BOOK_COVER " +
+            "AND v.ownerId = b.id) ORDER BY b.id")
+    List<Long> findIdsWithCoverWithoutVariants(@Param("afterId") Long afterId, Pageable pageable);
+
+    // مقداردهی اولیه شمارنده نسخه‌های موجود برای کتاب‌هایی که پیش از وجود این ستون ثبت شده‌اند
+    @Modifying
+    @Query("UPDATE Book b SET b.availableCopies = COALESCE(b.copyCount, 1) - (" +
+            "SELECT COUNT(l) FROM BookLoan l WHERE l.book = b AND l.status IN (" +
+            "ir.iau.library.entity.LoanStatus.ON_LOAN, ir.iau.library.entity.LoanStatus.OVERDUE)) " +
+            "WHERE b.availableCopies IS NULL")
+    int initializeAvailableCopies();
+
+    /**
+     * رزرو اتمی یک نسخه: شرط available_copies > 0 در خود UPDATE است، پس دو امانت هم‌زمان نمی‌توانند آخرین نسخه را
+     * هر دو بگیرند (ردیف تا پایان تراکنش قفل می‌ماند).
+     *
+     * @return 1 اگر نسخه‌ای رزرو شد، 0 اگر نسخه‌ای موجود نبود
+     */
+    @Modifying
+    @Query("UPDATE Book b SET b.availableCopies = b.availableCopies - 1 WHERE b.id = :id AND b.availableCopies > 0")
+    int takeCopy(@Param("id") Long id);
+
+    // کتاب‌های امانت دسته‌ای با قفل ردیف (SELECT ... FOR UPDATE)، به ترتیب id تا دو دسته هم‌زمان بن‌بست نسازند
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT b FROM Book b WHERE b.id IN :ids ORDER BY b.id")
+    List<Book> lockAllById(@Param("ids") Collection<Long> ids);
+
+    // کم کردن count نسخه از هر یک از کتاب‌ها با یک UPDATE (ردیف‌ها پیش‌تر با lockAllById قفل شده‌اند)
+    @Modifying
+    @Query("UPDATE Book b SET b.availableCopies = b.availableCopies - :count " +
+            "WHERE b.id IN :ids AND b.availableCopies >= :count")
+    int takeCopies(@Param("ids") Collection<Long> ids, @Param("count") int count);
+
+    // بازگرداندن نسخه یا تغییر تعداد نسخه‌ها
+    @Modifying
+    @Query("UPDATE Book b SET b.availableCopies = b.availableCopies + :delta WHERE b.id = :id")
+    int adjustAvailableCopies(@Param("id") Long id, @Param("delta") int delta);
+
+    @Modifying
+    @Query("UPDATE Book b SET b.availableCopies = b.availableCopies + :delta WHERE b.id IN :ids")
+    int adjustAvailableCopies(@Param("ids") Collection<Long> ids, @Param("delta") int delta);
 }
@@ -0,0 +1,35 @@
+package ir.iau.library.repository;
+
+import ir.iau.library.entity.ImageOwnerType;
+import ir.iau.library.entity.ImageSize;
+import ir.iau.library.entity.ImageVariant;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface ImageVariantRepository extends JpaRepository<ImageVariant, Long> {
+
+    /**
+     * hash محتوای یک نسخه تصویر در blob store
+     */
+    @Query("SELECT v.blobHash FROM ImageVariant v WHERE v.ownerType = :ownerType AND v.ownerId = :ownerId AND v.imageSize = :imageSize")
+    Optional<String> findBlobHash(@Param("ownerType") ImageOwnerType ownerType,
+                              @Param("ownerId") Long ownerId,
+                              @Param("imageSize") ImageSize imageSize);
+
+    @Query("SELECT v.blobHash FROM ImageVariant v WHERE v.ownerType = :ownerType AND v.ownerId = :ownerId")
+    List<String> findBlobHashesByOwner(@Param("ownerType") ImageOwnerType ownerType, @Param("ownerId") Long ownerId);
+
+    /**
+     * حذف همه نسخه‌های تصویر یک کتاب یا عضو
+     */
+    @Modifying
+    @Query("DELETE FROM ImageVariant v WHERE v.ownerType = :ownerType AND v.ownerId = :ownerId")
+    void deleteByOwner(@Param("ownerType") ImageOwnerType ownerType, @Param("ownerId") Long ownerId);
+}
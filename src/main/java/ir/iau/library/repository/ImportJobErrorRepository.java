@@ -0,0 +1,13 @@
+package ir.iau.library.repository;
+
+import ir.iau.library.entity.ImportJobError;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface ImportJobErrorRepository extends JpaRepository<ImportJobError, Long> {
+
+    Page<ImportJobError> findByJobIdOrderByRowNumber(Long jobId, Pageable pageable);
+}
@@ -0,0 +1,37 @@
+package ir.iau.library.repository;
+
+import ir.iau.library.entity.ImportJob;
+import ir.iau.library.entity.ImportJobStatus;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+
+@Repository
+public interface ImportJobRepository extends JpaRepository<ImportJob, Long> {
+
+    /**
+     * job های نیمه‌کاره‌ای که نودشان از {@code before} به بعد heartbeat نداده (خاموش شده یا از کار افتاده) متوقف‌شده
+     * علامت می‌خورند تا قابل ادامه باشند؛ job های نودهای زنده دست نمی‌خورند
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE ImportJob j SET j.status = ir.iau.library.entity.ImportJobStatus.FAILED, j.errorMessage = :message, " +
+            "j.finishedAt = :now WHERE j.status IN :statuses AND (j.heartbeatAt IS NULL OR j.heartbeatAt < :before)")
+    int failStale(@Param("statuses") Collection<ImportJobStatus> statuses,
+                  @Param("before") LocalDateTime before,
+                  @Param("message") String message,
+                  @Param("now") LocalDateTime now);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE ImportJob j SET j.heartbeatAt = :now WHERE j.owner = :owner AND j.status IN :statuses")
+    int heartbeat(@Param("owner") String owner,
+                  @Param("statuses") Collection<ImportJobStatus> statuses,
+                  @Param("now") LocalDateTime now);
+}
@@ -3,6 +3,8 @@ package ir.iau.library.repository;
 import ir.iau.library.entity.Message;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
 import org.springframework.data.jpa.repository.Query;
@@ -10,6 +12,7 @@ import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -17,6 +20,8 @@ import java.util.Optional;
 public interface MessageRepository extends JpaRepository<Message, Long>, JpaSpecificationExecutor<Message> {
 
     // پیام‌های مکالمه بین دو کاربر
+    // (در متدهای این مخزن پیام والد با EntityGraph در همان کوئری بارگذاری می‌شود تا نگاشت به DTO برای هر ردیف SELECT جدا نزند)
+    @EntityGraph(attributePaths = "parentMessage")
     @Query("SELECT m FROM Message m WHERE " +
             "((m.sender = :senderUsername AND m.recipient = :recipientUsername) OR " +
             "(m.sender = :recipientUsername AND m.recipient = :senderUsername)) " +
@@ -28,35 +33,67 @@ public interface MessageRepository extends JpaRepository<Message, Long>, JpaSpec
             Pageable pageable
     );
 
+    /**
+     * پیام‌های مکالمه با کلید مکالمه، روی ایندکس (conversation_key, create_date, id).
+     * شرط sender/recipient فقط ابهام نام‌هایی را که خودشان {@code _} دارند برطرف می‌کند.
+     */
+    @EntityGraph(attributePaths = "parentMessage")
+    @Query(value = "SELECT m FROM Message m WHERE m.conversationKey = :key " +
+            "AND m.sender IN (:user1, :user2) AND m.recipient IN (:user1, :user2) AND m.isActive = true " +
+            "ORDER BY m.createDate DESC, m.id DESC",
+            countQuery = "SELECT COUNT(m) FROM Message m WHERE m.conversationKey = :key " +
+                    "AND m.sender IN (:user1, :user2) AND m.recipient IN (:user1, :user2) AND m.isActive = true")
+    Page<Message> findConversationByKey(@Param("key") String key, @Param("user1") String user1,
+                                        @Param("user2") String user2, Pageable pageable);
+
+    // صفحه بعدی مکالمه (keyset): پیام‌های قدیمی‌تر از آخرین پیام صفحه قبل، بدون OFFSET و COUNT
+    @EntityGraph(attributePaths = "parentMessage")
+    @Query("SELECT m FROM Message m WHERE m.conversationKey = :key " +
+            "AND m.sender IN (:user1, :user2) AND m.recipient IN (:user1, :user2) AND m.isActive = true " +
+            "AND (m.createDate < :beforeDate OR (m.createDate = :beforeDate AND m.id < :beforeId)) " +
+            "ORDER BY m.createDate DESC, m.id DESC")
+    List<Message> findConversationBefore(@Param("key") String key, @Param("user1") String user1,
+                                         @Param("user2") String user2, @Param("beforeDate") LocalDateTime beforeDate,
+                                         @Param("beforeId") Long beforeId, Pageable limit);
+
+    // همان صفحه keyset بدون کلید مکالمه، تا پایان پر شدن conversation_key پیام‌های قدیمی
+    @EntityGraph(attributePaths = "parentMessage")
+    @Query("SELECT m FROM Message m WHERE " +
+            "((m.sender = :user1 AND m.recipient = :user2) OR (m.sender = :user2 AND m.recipient = :user1)) " +
+            "AND m.isActive = true " +
+            "AND (m.createDate < :beforeDate OR (m.createDate = :beforeDate AND m.id < :beforeId)) " +
+            "ORDER BY m.createDate DESC, m.id DESC")
+    List<Message> findConversationBeforeWithoutKey(@Param("user1") String user1, @Param("user2") String user2,
+                                                   @Param("beforeDate") LocalDateTime beforeDate,
+                                                   @Param("beforeId") Long beforeId, Pageable limit);
+
     // پیام‌های ارسال شده توسط کاربر
+    @EntityGraph(attributePaths = "parentMessage")
     @Query("SELECT m FROM Message m WHERE m.sender = :username AND m.isActive = true ORDER BY m.createDate DESC")
     Page<Message> findBySenderAndIsActiveTrue(@Param("username") String username, Pageable pageable);
 
     // پیام‌های دریافت شده توسط کاربر
+    @EntityGraph(attributePaths = "parentMessage")
     @Query("SELECT m FROM Message m WHERE m.recipient = :username AND m.isActive = true ORDER BY m.createDate DESC")
     Page<Message> findByRecipientAndIsActiveTrue(@Param("username") String username, Pageable pageable);
 
-    // جستجوی متنی در پیام‌ها (با فرض اینکه مشکل CLOB حل شده و ستون از نوع VARCHAR است)
-    @Query("SELECT m FROM Message m WHERE " +
-            "m.isActive = true AND " +
-            "(:query IS NULL OR LOWER(m.message) LIKE LOWER(CONCAT('%', :query, '%'))) AND " +
-            "(:sender IS NULL OR m.sender = :sender) AND " +
-            "(:subject IS NULL OR m.subject = :subject) AND " +
-            "(:priority IS NULL OR m.priority = :priority) AND " +
-            "(:startDate IS NULL OR m.createDate >= :startDate) AND " +
-            "(:endDate IS NULL OR m.createDate <= :endDate) " +
-            "ORDER BY m.createDate DESC")
-    Page<Message> searchMessages(
-            @Param("query") String query,
-            @Param("sender") String sender,
-            @Param("subject") String subject,
-            @Param("priority") String priority,
-            @Param("startDate") LocalDateTime startDate,
-            @Param("endDate") LocalDateTime endDate,
-            Pageable pageable
-    );
+    // جستجوی پیام‌ها با MessageSpecification؛ پیام والد در همان کوئری بارگذاری می‌شود
+    @Override
+    @EntityGraph(attributePaths = "parentMessage")
+    Page<Message> findAll(Specification<Message> spec, Pageable pageable);
+
+    // فقط ستون‌های لازم برای ساخت ایندکس جستجوی پیام‌ها، به ترتیب id برای پیمایش دسته‌ای
+    @Query("SELECT m.id, m.sender, m.recipient, m.subject, m.message, m.priority, m.createDate " +
+            "FROM Message m WHERE m.id > :afterId AND m.isActive = true ORDER BY m.id")
+    List<Object[]> findSearchableFields(@Param("afterId") Long afterId, Pageable pageable);
+
+    // پیام‌های یک صفحه از نتایج ایندکس جستجو (ترتیب رتبه را فراخواننده برمی‌گرداند)
+    @EntityGraph(attributePaths = "parentMessage")
+    @Query("SELECT m FROM Message m WHERE m.id IN :ids AND m.isActive = true")
+    List<Message> findActiveByIdIn(@Param("ids") Collection<Long> ids);
 
     // پیدا کردن پیام والد و فرزندان آن
+    @EntityGraph(attributePaths = "parentMessage")
     @Query("SELECT m FROM Message m WHERE m.parentMessage.id = :parentId AND m.isActive = true ORDER BY m.createDate ASC")
     List<Message> findRepliesByParentMessageId(@Param("parentId") Long parentId);
 
@@ -65,10 +102,15 @@ public interface MessageRepository extends JpaRepository<Message, Long>, JpaSpec
     Long countUnreadMessages(@Param("username") String username);
 
     // پیام‌های اولویت بالا
+    @Query("SELECT COUNT(m) FROM Message m WHERE m.priority IN ('high', 'urgent') AND m.isActive = true")
+    long countHighPriorityMessages();
+
+    @EntityGraph(attributePaths = "parentMessage")
     @Query("SELECT m FROM Message m WHERE m.priority IN ('high', 'urgent') AND m.isActive = true ORDER BY m.createDate DESC")
     Page<Message> findHighPriorityMessages(Pageable pageable);
 
     // پیام‌های حذف شده
+    @EntityGraph(attributePaths = "parentMessage")
     @Query("SELECT m FROM Message m WHERE m.deleteDate IS NOT NULL ORDER BY m.deleteDate DESC")
     Page<Message> findDeletedMessages(Pageable pageable);
 
@@ -78,14 +120,15 @@ public interface MessageRepository extends JpaRepository<Message, Long>, JpaSpec
             "COUNT(CASE WHEN m.recipient = :username THEN 1 END) as receivedCount, " +
             "COUNT(CASE WHEN m.recipient = :username AND m.messageStatus = 'SENT' THEN 1 END) as unreadCount " +
             "FROM Message m WHERE m.isActive = true AND (m.sender = :username OR m.recipient = :username)")
-    Object[] getMessageStats(@Param("username") String username);
+    List<Object[]> getMessageStats(@Param("username") String username);
 
     // پیام فعال بر اساس ID
+    @EntityGraph(attributePaths = "parentMessage")
     Optional<Message> findByIdAndIsActiveTrue(Long id);
 
-    // ** متد بهینه شده برای پیدا کردن پیام‌ها در یک بازه زمانی **
-    @Query("SELECT m FROM Message m WHERE m.createDate >= :startOfDay AND m.createDate < :endOfDay AND m.isActive = true ORDER BY m.createDate DESC")
-    List<Message> findMessagesBetween(
+    // تعداد پیام‌ها در یک بازه زمانی (مثلاً امروز)
+    @Query("SELECT COUNT(m) FROM Message m WHERE m.createDate >= :startOfDay AND m.createDate < :endOfDay AND m.isActive = true")
+    long countMessagesBetween(
             @Param("startOfDay") LocalDateTime startOfDay,
             @Param("endOfDay") LocalDateTime endOfDay
     );
@@ -1,12 +1,62 @@
 package ir.iau.library.repository;
 
+import ir.iau.library.dto.PersonLoanSummaryDto;
 import ir.iau.library.entity.Person;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
 @Repository
 public interface PersonRepository extends JpaRepository<Person, Long>, JpaSpecificationExecutor<Person> {
     boolean existsByEmail(String email);
     boolean existsByNationalId(String nationalId);
-}
\ No newline at end of file
+
+    /**
+     * ایمیل‌هایی از فهرست داده‌شده که قبلاً ثبت شده‌اند (بررسی تکراری بودن دسته‌ای در import)
+     */
+    @Query("SELECT p.email FROM Person p WHERE p.email IN :emails")
+    List<String> findExistingEmails(@Param("emails") Collection<String> emails);
+
+    @Query("SELECT p.nationalId FROM Person p WHERE p.nationalId IN :nationalIds")
+    List<String> findExistingNationalIds(@Param("nationalIds") Collection<String> nationalIds);
+
+    // فقط ستون‌های متنی لازم برای ساخت ایندکس جستجو (بدون عکس پروفایل)، به ترتیب id برای پیمایش دسته‌ای
+    @Query("SELECT p.id, p.firstName, p.lastName, p.email, p.nationalId, p.phone, p.address " +
+            "FROM Person p WHERE p.id > :afterId ORDER BY p.id")
+    List<Object[]> findSearchableFields(@Param("afterId") Long afterId, Pageable pageable);
+
+    // فقط hash عکس، برای endpoint جداگانه‌ی /api/person/{id}/picture
+    @Query("SELECT p.profilePictureHash FROM Person p WHERE p.id = :id")
+    Optional<String> findProfilePictureHashById(@Param("id") Long id);
+
+    // اعضایی که عکس دارند ولی نسخه‌های کوچک‌شده آن هنوز ساخته نشده (برای backfill دسته‌ای)
+    @Query("SELECT p.id FROM Person p WHERE p.id > :afterId AND p.profilePictureHash IS NOT NULL AND NOT EXISTS (" +
+            "SELECT v.id FROM ImageVariant v WHERE v.ownerType = ir.iau.library.entity.ImageOwnerType.PERSON_PICTURE " +
+            "AND v.ownerId = p.id) ORDER BY p.id")
+    List<Long> findIdsWithPictureWithoutVariants(@Param("afterId") Long afterId, Pageable pageable);
+
+    /**
+     * شمارش‌های پروفایل عضو در یک کوئری: امانت‌ها با یک پیمایش روی ایندکس (person_id, status, due_date) و رزروها
+     * با زیرکوئری روی ایندکس (person_id, status)؛ امانت‌ها هرگز بارگذاری نمی‌شوند.
+     */
+    @Query("SELECT new ir.iau.library.dto.PersonLoanSummaryDto(p.id, " +
+            "COALESCE(SUM(CASE WHEN l.status <> ir.iau.library.entity.LoanStatus.RETURNED THEN 1L ELSE 0L END), 0L), " +
+            "COALESCE(SUM(CASE WHEN l.status <> ir.iau.library.entity.LoanStatus.RETURNED AND l.dueDate < :today " +
+            "THEN 1L ELSE 0L END), 0L), " +
+            "COUNT(l), " +
+            "(SELECT COUNT(r) FROM Reservation r WHERE r.person.id = p.id " +
+            "AND r.status = ir.iau.library.entity.ReservationStatus.ACTIVE), " +
+            "(SELECT COUNT(r) FROM Reservation r WHERE r.person.id = p.id " +
+            "AND r.status = ir.iau.library.entity.ReservationStatus.READY)) " +
+            "FROM Person p LEFT JOIN BookLoan l ON l.person.id = p.id " +
+            "WHERE p.id = :id GROUP BY p.id")
+    Optional<PersonLoanSummaryDto> findLoanSummary(@Param("id") Long id, @Param("today") LocalDate today);
+}
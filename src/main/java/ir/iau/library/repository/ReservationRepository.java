@@ -2,14 +2,86 @@ package ir.iau.library.repository;
 
 import ir.iau.library.entity.Reservation;
 import ir.iau.library.entity.ReservationStatus;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
-public interface ReservationRepository extends JpaRepository<Reservation, Long> {
+public interface ReservationRepository extends JpaRepository<Reservation, Long>, JpaSpecificationExecutor<Reservation> {
     List<Reservation> findByStatus(ReservationStatus status);
-    List<Reservation> findByExpiryDateBeforeAndStatus(LocalDate date, ReservationStatus status);
-}
\ No newline at end of file
+
+    // id رزروهای فعالی که تاریخ انقضایشان گذشته، به ترتیب id و دسته‌ای (keyset)
+    @Query("SELECT r.id FROM Reservation r WHERE r.id > :afterId AND r.expiryDate < :today " +
+            "AND r.status = ir.iau.library.entity.ReservationStatus.ACTIVE ORDER BY r.id")
+    List<Long> findExpiredIds(@Param("today") LocalDate today, @Param("afterId") Long afterId, Pageable pageable);
+
+    @Modifying
+    @Query("UPDATE Reservation r SET r.status = ir.iau.library.entity.ReservationStatus.EXPIRED " +
+            "WHERE r.id IN :ids AND r.expiryDate < :today AND r.status = ir.iau.library.entity.ReservationStatus.ACTIVE")
+    int expireByIds(@Param("ids") Collection<Long> ids, @Param("today") LocalDate today);
+
+    /**
+     * ردیف‌های audit (REVTYPE=1، تغییر) رزروهایی که همین حالا با {@link #expireByIds} منقضی شدند، با یک INSERT ... SELECT
+     * در revision داده شده؛ UPDATE مستقیم از Envers عبور نمی‌کند.
+     */
+    @Modifying
+    @Query(value = "INSERT INTO reservations_AUD (id, REV, REVTYPE, reservation_date, expiry_date, status, person_id, book_id) " +
+            "SELECT id, :rev, 1, reservation_date, expiry_date, status, person_id, book_id FROM reservations " +
+            "WHERE id IN (:ids) AND status = 'EXPIRED'", nativeQuery = true)
+    int insertExpiredAuditRows(@Param("ids") Collection<Long> ids, @Param("rev") int rev);
+
+    /**
+     * رزرو با قفل ردیف، برای تحویل؛ با انقضای هم‌زمان نسخه کنار گذاشته شده ({@link #findUnclaimedHolds}) پشت سر هم
+     * اجرا می‌شود و وضعیت commit شده آخر را می‌بیند
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @EntityGraph(attributePaths = {"person", "book"})
+    @Query("SELECT r FROM Reservation r WHERE r.id = :id")
+    Optional<Reservation> lockWithPersonAndBookById(@Param("id") Long id);
+
+    // [id, bookId] رزروهای در انتظار به ترتیب id، برای ساختن HoldQueue
+    @Query("SELECT r.id, r.book.id FROM Reservation r WHERE r.id > :afterId " +
+            "AND r.status = ir.iau.library.entity.ReservationStatus.ACTIVE ORDER BY r.id")
+    List<Object[]> findWaitingQueueEntries(@Param("afterId") Long afterId, Pageable pageable);
+
+    /**
+     * سر صف انتظار یک کتاب (قدیمی‌ترین رزروها) با قفل ردیف؛ خواندن قفل‌دار آخرین داده commit شده را می‌بیند
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT r FROM Reservation r WHERE r.book.id = :bookId " +
+            "AND r.status = ir.iau.library.entity.ReservationStatus.ACTIVE ORDER BY r.id")
+    List<Reservation> lockQueueHead(@Param("bookId") Long bookId, Pageable pageable);
+
+    // کتاب‌هایی از ids که رزرو در انتظار دارند؛ پس از قفل ردیف کتاب‌ها فراخوانی می‌شود
+    @Query("SELECT DISTINCT r.book.id FROM Reservation r WHERE r.book.id IN :bookIds " +
+            "AND r.status = ir.iau.library.entity.ReservationStatus.ACTIVE")
+    List<Long> findBookIdsWithWaiting(@Param("bookIds") Collection<Long> bookIds);
+
+    // جایگاه در صف (وقتی HoldQueue هنوز آماده نیست) و اینکه رزرو تازه نفر اول صف است
+    @Query("SELECT COUNT(r) FROM Reservation r WHERE r.book.id = :bookId AND r.id < :id " +
+            "AND r.status = ir.iau.library.entity.ReservationStatus.ACTIVE")
+    long countWaitingAhead(@Param("bookId") Long bookId, @Param("id") Long id);
+
+    @Query("SELECT COUNT(r) FROM Reservation r WHERE r.book.id = :bookId " +
+            "AND r.status = ir.iau.library.entity.ReservationStatus.ACTIVE")
+    long countWaiting(@Param("bookId") Long bookId);
+
+    // نسخه‌های کنار گذاشته‌ای که عضو تا مهلتشان نیامده، با قفل ردیف تا با تحویل هم‌زمان هر دو اجرا نشوند
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @EntityGraph(attributePaths = {"person", "book"})
+    @Query("SELECT r FROM Reservation r WHERE r.expiryDate < :today " +
+            "AND r.status = ir.iau.library.entity.ReservationStatus.READY ORDER BY r.id")
+    List<Reservation> findUnclaimedHolds(@Param("today") LocalDate today, Pageable pageable);
+}
@@ -0,0 +1,36 @@
+package ir.iau.library.repository;
+
+import ir.iau.library.entity.SchedulerLease;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+
+@Repository
+public interface SchedulerLeaseRepository extends JpaRepository<SchedulerLease, String> {
+
+    // INSERT ساده (نه merge) تا اگر نود دیگری هم‌زمان ردیف را ساخته باشد، خطای کلید تکراری بگیریم نه بازنویسی lease آن
+    @Modifying
+    @Query(value = "INSERT INTO scheduler_leases (name, locked_until) VALUES (:name, :lockedUntil)", nativeQuery = true)
+    void insert(@Param("name") String name, @Param("lockedUntil") LocalDateTime lockedUntil);
+
+    /**
+     * گرفتن یا تمدید lease: فقط اگر منقضی شده یا از قبل متعلق به همین نود باشد.
+     *
+     * @return 1 اگر lease گرفته شد
+     */
+    @Modifying
+    @Query("UPDATE SchedulerLease l SET l.owner = :owner, l.lockedUntil = :until " +
+            "WHERE l.name = :name AND (l.lockedUntil < :now OR l.owner = :owner)")
+    int acquire(@Param("name") String name,
+                @Param("owner") String owner,
+                @Param("now") LocalDateTime now,
+                @Param("until") LocalDateTime until);
+
+    @Modifying
+    @Query("UPDATE SchedulerLease l SET l.lockedUntil = :now WHERE l.name = :name AND l.owner = :owner")
+    int release(@Param("name") String name, @Param("owner") String owner, @Param("now") LocalDateTime now);
+}
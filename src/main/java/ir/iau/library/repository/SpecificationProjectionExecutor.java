@@ -0,0 +1,96 @@
+package ir.iau.library.repository;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.TypedQuery;
+import jakarta.persistence.criteria.*;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.jpa.repository.query.QueryUtils;
+import org.springframework.data.support.PageableExecutionUtils;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * اجرای یک {@link Specification} با انتخاب فقط ستون‌های لازم در سازنده یک DTO
+ * ({@code SELECT new Dto(a, b, ...)})، تا فهرست‌ها هیچ‌وقت ستون‌های BLOB یا رابطه‌های بی‌استفاده را نخوانند.
+ * <p>
+ * {@code JpaSpecificationExecutor} همیشه کل entity را می‌خواند و این کلاس کوچک برای همین است.
+ */
+@Repository
+public class SpecificationProjectionExecutor {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    /**
+     * ستون‌های انتخابی، به ترتیب پارامترهای سازنده DTO.
+     */
+    @FunctionalInterface
+    public interface Selector<T> {
+        List<Selection<?>> select(Root<T> root, CriteriaBuilder cb);
+    }
+
+    public <T, R> Page<R> findPage(Class<T> entityType, Specification<T> spec, Pageable pageable,
+                                   Class<R> dtoType, Selector<T> selector) {
+        TypedQuery<R> query = createQuery(entityType, spec, pageable.getSort(), dtoType, selector);
+        if (pageable.isPaged()) {
+            query.setFirstResult((int) pageable.getOffset());
+            query.setMaxResults(pageable.getPageSize());
+        }
+        return PageableExecutionUtils.getPage(query.getResultList(), pageable, () -> count(entityType, spec));
+    }
+
+    public <T, R> List<R> findList(Class<T> entityType, Specification<T> spec, Sort sort, int limit,
+                                   Class<R> dtoType, Selector<T> selector) {
+        return createQuery(entityType, spec, sort, dtoType, selector)
+                .setMaxResults(limit)
+                .getResultList();
+    }
+
+    /**
+     * stream رو به جلوی همه ردیف‌های منطبق برای خروجی گرفتن. DTO ها entity مدیریت‌شده نیستند، پس persistence context
+     * هنگام خواندن stream بزرگ نمی‌شود. باید داخل تراکنش خوانده (و بسته) شود. روی MySQL اندازه fetch فقط با
+     * {@code useCursorFetch=true} در آدرس JDBC اثر دارد.
+     */
+    public <T, R> Stream<R> stream(Class<T> entityType, Specification<T> spec, Sort sort, int fetchSize,
+                                   Class<R> dtoType, Selector<T> selector) {
+        return createQuery(entityType, spec, sort, dtoType, selector)
+                .setHint(HibernateHints.HINT_FETCH_SIZE, fetchSize)
+                .setHint(HibernateHints.HINT_READ_ONLY, true)
+                .getResultStream();
+    }
+
+    private <T, R> TypedQuery<R> createQuery(Class<T> entityType, Specification<T> spec, Sort sort,
+                                             Class<R> dtoType, Selector<T> selector) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<R> query = cb.createQuery(dtoType);
+        Root<T> root = query.from(entityType);
+        query.select(cb.construct(dtoType, selector.select(root, cb).toArray(new Selection<?>[0])));
+        Predicate predicate = spec.toPredicate(root, query, cb);
+        if (predicate != null) {
+            query.where(predicate);
+        }
+        if (sort.isSorted()) {
+            query.orderBy(QueryUtils.toOrders(sort, root, cb));
+        }
+        return entityManager.createQuery(query);
+    }
+
+    private <T> long count(Class<T> entityType, Specification<T> spec) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Long> query = cb.createQuery(Long.class);
+        Root<T> root = query.from(entityType);
+        query.select(cb.count(root));
+        Predicate predicate = spec.toPredicate(root, query, cb);
+        if (predicate != null) {
+            query.where(predicate);
+        }
+        return entityManager.createQuery(query).getSingleResult();
+    }
+}
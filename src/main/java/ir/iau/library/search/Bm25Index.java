@@ -0,0 +1,222 @@
+package ir.iau.library.search;
+
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+
+/**
+ * ایندکس متن کامل رتبه‌بندی‌شده برای فیلدهای متنی بلند، با امتیاز Okapi BM25.
+ * <p>
+ * هر کلمه یک posting list دارد (id سند -> تکرار کلمه با وزن فیلد). یک عبارت با سندهایی منطبق است که همه توکن‌های آن
+ * را داشته باشند (AND)؛ توکن دو حرفی یا بلندتر با کلمه‌هایی که با آن شروع می‌شوند هم، با امتیاز کمتر، منطبق است تا
+ * کلمه نیمه‌تایپ‌شده هم پیام‌هایش را پیدا کند. هر سند یک داده ذخیره‌شده کوچک دارد که فراخواننده در حین جستجو و پیش
+ * از صفحه‌بندی روی آن فیلتر می‌کند، پس جستجوی فیلترشده هم تعداد کل دقیق برمی‌گرداند.
+ * <p>
+ * مثل {@link TrigramIndex}، حجم heap تخمین زده می‌شود و سندی که از بودجه عبور کند رد می‌شود تا مالک ایندکس به SQL
+ * برگردد.
+ */
+public class Bm25Index<T> {
+
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+    private static final double PREFIX_SCORE = 0.8;
+
+    // تخمین تقریبی سربار اشیاء جاوا (بایت)
+    private static final int DOCUMENT_OVERHEAD = 96;
+    private static final int POSTING_OVERHEAD = 48;
+    private static final int TERM_OVERHEAD = 96;
+
+    private final TextNormalizer normalizer;
+    private final Map<String, Float> fieldWeights;
+    private final long memoryBudgetBytes;
+
+    private final NavigableMap<String, Map<Long, Float>> postings = new TreeMap<>();
+    private final Map<Long, Document<T>> documents = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private double totalLength;
+    private long estimatedBytes;
+
+    private record Document<T>(T stored, Set<String> terms, float length, long cost) {
+    }
+
+    public record Hit<T>(Long id, double score, T stored) {
+    }
+
+    public Bm25Index(TextNormalizer normalizer, Map<String, Float> fieldWeights, long memoryBudgetBytes) {
+        this.normalizer = normalizer;
+        this.fieldWeights = fieldWeights;
+        this.memoryBudgetBytes = memoryBudgetBytes;
+    }
+
+    /**
+     * افزودن یا جایگزینی یک سند.
+     *
+     * @param storedCost حجم تخمینی {@code stored} به بایت
+     * @return false اگر سند به خاطر عبور از بودجه حافظه رد شد
+     */
+    public boolean index(Long id, Map<String, String> fields, T stored, long storedCost) {
+        Map<String, Float> termFrequencies = new HashMap<>();
+        float length = 0;
+        for (Map.Entry<String, String> field : fields.entrySet()) {
+            float weight = fieldWeights.getOrDefault(field.getKey(), 1f);
+            for (String term : normalizer.tokenize(field.getValue())) {
+                termFrequencies.merge(term, weight, Float::sum);
+                length += weight;
+            }
+        }
+        long cost = DOCUMENT_OVERHEAD + storedCost + (long) POSTING_OVERHEAD * termFrequencies.size();
+
+        lock.writeLock().lock();
+        try {
+            removeInternal(id);
+            long termsCost = 0;
+            for (String term : termFrequencies.keySet()) {
+                if (!postings.containsKey(term)) {
+                    termsCost += termCost(term);
+                }
+            }
+            if (estimatedBytes + cost + termsCost > memoryBudgetBytes) {
+                return false;
+            }
+            termFrequencies.forEach((term, frequency) ->
+                    postings.computeIfAbsent(term, t -> new HashMap<>()).put(id, frequency));
+            documents.put(id, new Document<>(stored, termFrequencies.keySet(), length, cost));
+            totalLength += length;
+            estimatedBytes += cost + termsCost;
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(Long id) {
+        lock.writeLock().lock();
+        try {
+            removeInternal(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * همه سندهایی که همه توکن‌های {@code query} را دارند و از {@code filter} رد می‌شوند، بهترین اول (در امتیاز برابر،
+     * id جدیدتر اول).
+     */
+    public List<Hit<T>> search(String query, Predicate<T> filter) {
+        List<String> queryTokens = normalizer.tokenize(query).stream().distinct().toList();
+        if (queryTokens.isEmpty()) {
+            return List.of();
+        }
+        lock.readLock().lock();
+        try {
+            double averageLength = documents.isEmpty() ? 1 : Math.max(totalLength / documents.size(), 1);
+            Map<Long, Double> scores = null;
+            for (String token : queryTokens) {
+                // سندهایی که با همه توکن‌های قبلی منطبق بوده‌اند؛ فقط همین‌ها برای توکن بعدی امتیاز می‌گیرند
+                Map<Long, Double> candidates = scores;
+                Map<Long, Double> tokenScores = new HashMap<>();
+                for (Map.Entry<String, Map<Long, Float>> entry : matchingTerms(token).entrySet()) {
+                    String term = entry.getKey();
+                    double boost = term.equals(token) ? 1 : PREFIX_SCORE * (0.5 + 0.5 * token.length() / term.length());
+                    double idf = idf(entry.getValue().size());
+                    entry.getValue().forEach((id, frequency) -> {
+                        if (candidates == null || candidates.containsKey(id)) {
+                            double score = boost * idf * termScore(frequency, documents.get(id).length(), averageLength);
+                            tokenScores.merge(id, score, Math::max);
+                        }
+                    });
+                }
+                if (candidates == null) {
+                    tokenScores.keySet().removeIf(id -> !filter.test(documents.get(id).stored()));
+                    scores = tokenScores;
+                } else {
+                    candidates.keySet().retainAll(tokenScores.keySet());
+                    tokenScores.forEach((id, score) -> candidates.merge(id, score, Double::sum));
+                }
+                if (scores.isEmpty()) {
+                    return List.of();
+                }
+            }
+            return scores.entrySet().stream()
+                    .sorted(Map.Entry.<Long, Double>comparingByValue().reversed()
+                            .thenComparing(Map.Entry.<Long, Double>comparingByKey().reversed()))
+                    .map(e -> new Hit<>(e.getKey(), e.getValue(), documents.get(e.getKey()).stored()))
+                    .toList();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * آیا {@code word} (نرمال‌شده) همان‌طور که {@link #search} تطبیق می‌دهد با {@code token} منطبق است.
+     */
+    public static boolean matches(String word, String token) {
+        return word.equals(token) || (token.length() >= 2 && word.startsWith(token));
+    }
+
+    public long getEstimatedBytes() {
+        return estimatedBytes;
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return documents.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            postings.clear();
+            documents.clear();
+            totalLength = 0;
+            estimatedBytes = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private Map<String, Map<Long, Float>> matchingTerms(String token) {
+        if (token.length() < 2) {
+            Map<Long, Float> exact = postings.get(token);
+            return exact == null ? Map.of() : Map.of(token, exact);
+        }
+        return postings.subMap(token, true, token + Character.MAX_VALUE, false);
+    }
+
+    private double idf(int documentFrequency) {
+        return Math.log(1 + (documents.size() - documentFrequency + 0.5) / (documentFrequency + 0.5));
+    }
+
+    private static double termScore(float frequency, float length, double averageLength) {
+        return frequency * (K1 + 1) / (frequency + K1 * (1 - B + B * length / averageLength));
+    }
+
+    private void removeInternal(Long id) {
+        Document<T> document = documents.remove(id);
+        if (document == null) {
+            return;
+        }
+        totalLength -= document.length();
+        estimatedBytes -= document.cost();
+        for (String term : document.terms()) {
+            Map<Long, Float> docs = postings.get(term);
+            if (docs == null) {
+                continue;
+            }
+            docs.remove(id);
+            if (docs.isEmpty()) {
+                postings.remove(term);
+                estimatedBytes -= termCost(term);
+            }
+        }
+    }
+
+    private static long termCost(String term) {
+        return TERM_OVERHEAD + 2L * term.length();
+    }
+}
@@ -0,0 +1,87 @@
+package ir.iau.library.search;
+
+import ir.iau.library.dto.BookFilterDto;
+import ir.iau.library.entity.Book;
+import ir.iau.library.repository.BookRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.util.*;
+
+/**
+ * ایندکس جستجوی حافظه روی ستون‌های متنی {@link Book} (عنوان، نویسنده، مترجم، ناشر، موضوع، خلاصه).
+ * <p>
+ * هم برای پیدا کردن معیارهای متنی {@link BookFilterDto} و هم برای جستجوی رتبه‌بندی‌شده {@code /api/book/search}.
+ */
+@Component
+public class BookSearchIndex extends EntitySearchIndex {
+
+    private static final List<String> FIELDS = List.of("title", "author", "translator", "publisher", "subject", "summary");
+
+    private final BookRepository bookRepository;
+
+    // اگر تعداد شناسه‌های منطبق بیشتر از این مقدار باشد، ارسال آن‌ها در IN به صرفه نیست
+    private final int maxIdFilter;
+
+    public BookSearchIndex(BookRepository bookRepository,
+                           TextNormalizer normalizer,
+                           @Value("${app.search.book.memory-budget-mb:256}") long memoryBudgetMb,
+                           @Value("${app.search.book.build-batch-size:1000}") int buildBatchSize,
+                           @Value("${app.search.book.max-id-filter:5000}") int maxIdFilter) {
+        super(normalizer, FIELDS,
+                Map.of("title", 3f, "author", 2f, "translator", 1f, "publisher", 1f, "subject", 1.5f, "summary", 0.5f),
+                Set.of("title", "author", "translator", "publisher"),
+                memoryBudgetMb * 1024 * 1024, buildBatchSize);
+        this.bookRepository = bookRepository;
+        this.maxIdFilter = maxIdFilter;
+    }
+
+    @Override
+    protected String name() {
+        return "Book";
+    }
+
+    @Override
+    protected List<Object[]> loadBatch(Long afterId, int batchSize) {
+        return bookRepository.findSearchableFields(afterId, PageRequest.ofSize(batchSize));
+    }
+
+    /**
+     * تبدیل معیارهای متنی ایندکس‌شده {@code filter} به مجموعه id کتاب‌های منطبق.
+     *
+     * @return empty اگر فیلتر معیار متنی ایندکس‌شده ندارد، ایندکس هنوز آماده نیست یا تعداد نتایج برای فرستادن به
+     * صورت فهرست id به پایگاه داده زیاد است؛ در این حالت فراخواننده از همان Specification استفاده می‌کند.
+     */
+    public Optional<Set<Long>> resolve(BookFilterDto filter) {
+        if (!isReady() || !hasIndexedCriteria(filter)) {
+            return Optional.empty();
+        }
+        Set<Long> ids = match(indexedCriteria(filter));
+        if (ids == null || ids.size() > maxIdFilter) {
+            return Optional.empty();
+        }
+        return Optional.of(ids);
+    }
+
+    public static boolean hasIndexedCriteria(BookFilterDto filter) {
+        return indexedCriteria(filter).values().stream().anyMatch(StringUtils::hasText);
+    }
+
+    public void indexAfterCommit(Book book) {
+        indexAfterCommit(book.getId(), book.getTitle(), book.getAuthor(), book.getTranslator(),
+                book.getPublisher(), book.getSubject(), book.getSummary());
+    }
+
+    private static Map<String, String> indexedCriteria(BookFilterDto filter) {
+        Map<String, String> criteria = new LinkedHashMap<>();
+        criteria.put("title", filter.getTitle());
+        criteria.put("author", filter.getAuthor());
+        criteria.put("translator", filter.getTranslator());
+        criteria.put("publisher", filter.getPublisher());
+        criteria.put("subject", filter.getSubject());
+        criteria.put("summary", filter.getSummary());
+        return criteria;
+    }
+}
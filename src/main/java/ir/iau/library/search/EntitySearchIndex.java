@@ -0,0 +1,200 @@
+package ir.iau.library.search;
+
+import ir.iau.library.dto.SearchResultDto;
+import ir.iau.library.support.AfterCommit;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.util.StringUtils;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * زیرساخت مشترک ایندکس‌های جستجوی حافظه یک موجودیت: یک {@link InvertedIndex} در سطح فیلد برای پیدا کردن معیارهای
+ * فیلتر و یک {@link TrigramIndex} برای جستجوی رتبه‌بندی‌شده و تقریبی؛ هر دو از یک {@link TextNormalizer} استفاده
+ * می‌کنند.
+ * <p>
+ * ایندکس هنگام بالا آمدن برنامه از ردیف‌های {@link #loadBatch(Long, int)} (اول id، سپس مقادیر {@link #fields()} به
+ * ترتیب) ساخته و پس از commit توسط سرویس مالک به‌روز می‌شود. تا پایان ساخت، یا اگر از بودجه حافظه عبور کند،
+ * {@link #isReady()} false است و فراخواننده باید از پایگاه داده استفاده کند؛ پس از سرریز، ایندکس هر
+ * {@code app.search.rebuild-retry-interval} دوباره ساخته می‌شود تا وقتی که جا شود. تغییراتی که حین ساخت commit
+ * می‌شوند در صف می‌مانند و پس از پایان ساخت اعمال می‌شوند، تا نه گم شوند و نه با مقادیر قدیمی‌تری که ساخت خوانده
+ * بازنویسی شوند.
+ */
+@Slf4j
+public abstract class EntitySearchIndex {
+
+    private final List<String> fields;
+    private final InvertedIndex fieldIndex;
+    private final TrigramIndex rankedIndex;
+    private final int buildBatchSize;
+    private volatile boolean ready;
+    private volatile boolean overBudget;
+    private boolean building;
+    // id -> مقادیر فیلدهایی که حین ساخت commit شده‌اند؛ Optional خالی یعنی ردیف حذف شده است
+    private final Map<Long, Optional<Map<String, String>>> changedDuringBuild = new ConcurrentHashMap<>();
+
+    protected EntitySearchIndex(TextNormalizer normalizer, List<String> fields, Map<String, Float> fieldWeights,
+                                Set<String> storedFields, long memoryBudgetBytes, int buildBatchSize) {
+        this.fields = fields;
+        this.fieldIndex = new InvertedIndex(normalizer);
+        this.rankedIndex = new TrigramIndex(normalizer, fieldWeights, storedFields, memoryBudgetBytes);
+        this.buildBatchSize = buildBatchSize;
+    }
+
+    protected abstract String name();
+
+    /**
+     * خواندن حداکثر {@code batchSize} ردیف با {@code id > afterId} به ترتیب id؛ هر ردیف
+     * {@code [id, field1, field2, ...]} به ترتیب {@link #fields()} است.
+     */
+    protected abstract List<Object[]> loadBatch(Long afterId, int batchSize);
+
+    public List<String> fields() {
+        return fields;
+    }
+
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        long start = System.currentTimeMillis();
+        synchronized (this) {
+            ready = false;
+            overBudget = false;
+            building = true;
+            changedDuringBuild.clear();
+            fieldIndex.clear();
+            rankedIndex.clear();
+        }
+        try {
+            long lastId = 0L;
+            List<Object[]> rows;
+            do {
+                rows = loadBatch(lastId, buildBatchSize);
+                for (Object[] row : rows) {
+                    lastId = (Long) row[0];
+                    if (!add(lastId, toFieldMap(row))) {
+                        return;
+                    }
+                }
+            } while (rows.size() == buildBatchSize);
+            synchronized (this) {
+                for (Map.Entry<Long, Optional<Map<String, String>>> change : changedDuringBuild.entrySet()) {
+                    if (change.getValue().isEmpty()) {
+                        remove(change.getKey());
+                    } else if (!add(change.getKey(), change.getValue().get())) {
+                        return;
+                    }
+                }
+                ready = true;
+            }
+        } finally {
+            synchronized (this) {
+                building = false;
+                changedDuringBuild.clear();
+            }
+        }
+        log.info("{} search index built with {} documents (~{} KB) in {} ms", name(), rankedIndex.size(),
+                rankedIndex.getEstimatedBytes() / 1024, System.currentTimeMillis() - start);
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    @Scheduled(fixedDelayString = "${app.search.rebuild-retry-interval:PT10M}",
+            initialDelayString = "${app.search.rebuild-retry-interval:PT10M}")
+    public void retryAfterOverflow() {
+        if (overBudget) {
+            rebuild();
+        }
+    }
+
+    public List<SearchResultDto> search(String query, int limit) {
+        return rankedIndex.search(query, limit);
+    }
+
+    /**
+     * اشتراک نتایج همه معیارهای غیرخالی (فیلد -> متن).
+     *
+     * @return null اگر هیچ معیاری متن نداشته باشد
+     */
+    protected Set<Long> match(Map<String, String> criteria) {
+        Set<Long> ids = null;
+        for (Map.Entry<String, String> criterion : criteria.entrySet()) {
+            if (!StringUtils.hasText(criterion.getValue())) {
+                continue;
+            }
+            Set<Long> matches = fieldIndex.match(criterion.getKey(), criterion.getValue());
+            if (ids == null) {
+                ids = new HashSet<>(matches);
+            } else {
+                ids.retainAll(matches);
+            }
+            if (ids.isEmpty()) {
+                break;
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * @param values مقادیر {@link #fields()} به ترتیب
+     */
+    public void indexAfterCommit(Long id, Object... values) {
+        Object[] row = new Object[values.length + 1];
+        row[0] = id;
+        System.arraycopy(values, 0, row, 1, values.length);
+        Map<String, String> fieldMap = toFieldMap(row);
+        AfterCommit.run(() -> apply(id, fieldMap));
+    }
+
+    public void removeAfterCommit(Long id) {
+        AfterCommit.run(() -> apply(id, null));
+    }
+
+    private synchronized void apply(Long id, Map<String, String> fieldMap) {
+        if (building) {
+            changedDuringBuild.put(id, Optional.ofNullable(fieldMap));
+        } else if (ready) {
+            if (fieldMap == null) {
+                remove(id);
+            } else {
+                add(id, fieldMap);
+            }
+        }
+    }
+
+    private void remove(Long id) {
+        fieldIndex.remove(id);
+        rankedIndex.remove(id);
+    }
+
+    private boolean add(Long id, Map<String, String> fieldMap) {
+        if (!rankedIndex.index(id, fieldMap)) {
+            // از بودجه حافظه عبور کردیم؛ ایندکس رها می‌شود، جستجو به پایگاه داده برمی‌گردد و ساخت دوباره زمان‌بندی می‌شود
+            log.error("{} search index exceeded its memory budget at {} documents; falling back to database search "
+                    + "until a rebuild fits", name(), rankedIndex.size());
+            ready = false;
+            overBudget = true;
+            fieldIndex.clear();
+            rankedIndex.clear();
+            return false;
+        }
+        fieldIndex.index(id, fieldMap);
+        return true;
+    }
+
+    private Map<String, String> toFieldMap(Object[] row) {
+        Map<String, String> fieldMap = new HashMap<>();
+        for (int i = 0; i < fields.size(); i++) {
+            if (row[i + 1] != null) {
+                fieldMap.put(fields.get(i), row[i + 1].toString());
+            }
+        }
+        return fieldMap;
+    }
+}
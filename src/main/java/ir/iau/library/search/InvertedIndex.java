@@ -0,0 +1,105 @@
+package ir.iau.library.search;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * ایندکس معکوس در سطح توکن و به تفکیک فیلد، که کامل در حافظه نگه داشته می‌شود.
+ * <p>
+ * هر فیلد سند توکن‌بندی می‌شود و هر توکن به مجموعه id سندهایی که آن را دارند اشاره می‌کند. جستجو پیشوندی است: هر
+ * توکن عبارت با همه توکن‌های ایندکس‌شده‌ای که با آن شروع می‌شوند منطبق است و عبارت چند توکنی فقط با سندهایی منطبق
+ * است که همه آن‌ها را داشته باشند (AND).
+ * <p>
+ * خواندن و نوشتن هم‌زمان بی‌خطر است؛ یک نگاشت مستقیم (id -> توکن‌ها) حذف یا ایندکس دوباره سند را بدون پیمایش
+ * posting ها ممکن می‌کند.
+ */
+public class InvertedIndex {
+
+    private final Map<String, ConcurrentSkipListMap<String, Set<Long>>> fields = new ConcurrentHashMap<>();
+    private final Map<Long, Map<String, Set<String>>> forward = new ConcurrentHashMap<>();
+    private final TextNormalizer normalizer;
+
+    public InvertedIndex(TextNormalizer normalizer) {
+        this.normalizer = normalizer;
+    }
+
+    /**
+     * افزودن (یا جایگزینی) یک سند؛ فیلدهای null یا خالی نادیده گرفته می‌شوند.
+     */
+    public void index(Long id, Map<String, String> fieldValues) {
+        remove(id);
+        Map<String, Set<String>> docTokens = new HashMap<>();
+        fieldValues.forEach((field, value) -> {
+            Set<String> tokens = tokenize(value);
+            if (tokens.isEmpty()) {
+                return;
+            }
+            ConcurrentSkipListMap<String, Set<Long>> postings = fields.computeIfAbsent(field, f -> new ConcurrentSkipListMap<>());
+            for (String token : tokens) {
+                postings.computeIfAbsent(token, t -> ConcurrentHashMap.newKeySet()).add(id);
+            }
+            docTokens.put(field, tokens);
+        });
+        forward.put(id, docTokens);
+    }
+
+    public void remove(Long id) {
+        Map<String, Set<String>> docTokens = forward.remove(id);
+        if (docTokens == null) {
+            return;
+        }
+        docTokens.forEach((field, tokens) -> {
+            ConcurrentSkipListMap<String, Set<Long>> postings = fields.get(field);
+            if (postings == null) {
+                return;
+            }
+            for (String token : tokens) {
+                postings.computeIfPresent(token, (t, ids) -> {
+                    ids.remove(id);
+                    return ids.isEmpty() ? null : ids;
+                });
+            }
+        });
+    }
+
+    /**
+     * id سندهایی که {@code field} آن‌ها همه توکن‌های {@code text} را (به صورت پیشوند توکن) دارد.
+     */
+    public Set<Long> match(String field, String text) {
+        Set<String> queryTokens = tokenize(text);
+        ConcurrentSkipListMap<String, Set<Long>> postings = fields.get(field);
+        if (queryTokens.isEmpty() || postings == null) {
+            return Collections.emptySet();
+        }
+        Set<Long> result = null;
+        for (String token : queryTokens) {
+            Set<Long> ids = new HashSet<>();
+            for (Set<Long> posting : postings.subMap(token, true, token + Character.MAX_VALUE, false).values()) {
+                ids.addAll(posting);
+            }
+            if (result == null) {
+                result = ids;
+            } else {
+                result.retainAll(ids);
+            }
+            if (result.isEmpty()) {
+                break;
+            }
+        }
+        return result;
+    }
+
+    public int size() {
+        return forward.size();
+    }
+
+    public void clear() {
+        fields.clear();
+        forward.clear();
+    }
+
+    private Set<String> tokenize(String text) {
+        return new LinkedHashSet<>(normalizer.tokenize(text));
+    }
+}
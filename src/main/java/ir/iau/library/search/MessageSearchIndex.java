@@ -0,0 +1,276 @@
+package ir.iau.library.search;
+
+import ir.iau.library.dto.SearchCriteria;
+import ir.iau.library.entity.Message;
+import ir.iau.library.repository.MessageRepository;
+import ir.iau.library.support.AfterCommit;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * ایندکس متن کامل در حافظه روی موضوع و متن {@link Message} های فعال، با رتبه‌بندی BM25، پشت جستجوی متنی
+ * {@code /api/messages/search}.
+ * <p>
+ * فرستنده، گیرنده، موضوع، اولویت و تاریخ هر پیام کنار کلمه‌هایش نگه داشته می‌شود، پس بقیه معیارهای جستجو و بررسی
+ * دسترسی هر کاربر (فرستنده یا گیرنده) داخل ایندکس اعمال می‌شوند و از پایگاه داده فقط پیام‌های صفحه خواسته‌شده خوانده
+ * می‌شوند. متن پیام‌ها ذخیره نمی‌شود؛ {@link #highlight} روی متنی کار می‌کند که برای همان صفحه خوانده شده است.
+ * <p>
+ * مثل {@link EntitySearchIndex} هنگام بالا آمدن برنامه ساخته و پس از commit توسط {@code MessageService} به‌روز می‌شود:
+ * تا پایان ساخت، یا اگر از بودجه حافظه عبور کند، {@link #isReady()} false است و جستجوی SQL استفاده می‌شود؛ پس از
+ * سرریز، ایندکس هر {@code app.search.rebuild-retry-interval} دوباره ساخته می‌شود تا وقتی که جا شود.
+ */
+@Component
+@Slf4j
+public class MessageSearchIndex {
+
+    private static final Map<String, Float> FIELD_WEIGHTS = Map.of("subject", 2f, "message", 1f);
+    private static final int STORED_OVERHEAD = 96;
+    private static final int SNIPPET_LENGTH = 200;
+    private static final int SNIPPET_LEAD = 60;
+    // کاراکترهای یک کلمه در متن اصلی؛ نیم‌فاصله، کشیده و اعراب جزو کلمه‌اند چون normalizer آن‌ها را حذف می‌کند
+    private static final Pattern WORD = Pattern.compile("[\\p{L}\\p{N}\\p{M}\\u200C\\u200D\\u0640]+");
+
+    private final MessageRepository messageRepository;
+    private final TextNormalizer normalizer;
+    private final Bm25Index<Indexed> index;
+    private final int buildBatchSize;
+    private volatile boolean ready;
+    private volatile boolean overBudget;
+    private boolean building;
+    // id -> پیامی که حین ساخت commit شده؛ Optional خالی یعنی پیام حذف شده است
+    private final Map<Long, Optional<Indexed>> changedDuringBuild = new LinkedHashMap<>();
+
+    /**
+     * فیلدهایی از پیام که جستجو یا فیلتر می‌شوند؛ {@code message} فقط تا ایندکس شدن نگه داشته می‌شود.
+     */
+    public record Indexed(String sender, String recipient, String subject, String priority, LocalDateTime createDate,
+                          String message) {
+
+        static Indexed of(Object[] row) {
+            return new Indexed((String) row[1], (String) row[2], (String) row[3], (String) row[5],
+                    (LocalDateTime) row[6], (String) row[4]);
+        }
+
+        Indexed withoutMessage() {
+            return new Indexed(sender, recipient, subject, priority, createDate, null);
+        }
+    }
+
+    public MessageSearchIndex(MessageRepository messageRepository,
+                              TextNormalizer normalizer,
+                              @Value("${app.search.message.memory-budget-mb:128}") long memoryBudgetMb,
+                              @Value("${app.search.message.build-batch-size:1000}") int buildBatchSize) {
+        this.messageRepository = messageRepository;
+        this.normalizer = normalizer;
+        this.index = new Bm25Index<>(normalizer, FIELD_WEIGHTS, memoryBudgetMb * 1024 * 1024);
+        this.buildBatchSize = buildBatchSize;
+    }
+
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        long start = System.currentTimeMillis();
+        synchronized (this) {
+            ready = false;
+            overBudget = false;
+            building = true;
+            changedDuringBuild.clear();
+            index.clear();
+        }
+        try {
+            long lastId = 0L;
+            List<Object[]> rows;
+            do {
+                rows = messageRepository.findSearchableFields(lastId, PageRequest.ofSize(buildBatchSize));
+                for (Object[] row : rows) {
+                    lastId = (Long) row[0];
+                    if (!add(lastId, Indexed.of(row))) {
+                        return;
+                    }
+                }
+            } while (rows.size() == buildBatchSize);
+            synchronized (this) {
+                for (Map.Entry<Long, Optional<Indexed>> change : changedDuringBuild.entrySet()) {
+                    if (change.getValue().isEmpty()) {
+                        index.remove(change.getKey());
+                    } else if (!add(change.getKey(), change.getValue().get())) {
+                        return;
+                    }
+                }
+                ready = true;
+            }
+        } finally {
+            synchronized (this) {
+                building = false;
+                changedDuringBuild.clear();
+            }
+        }
+        log.info("Message search index built with {} documents (~{} KB) in {} ms", index.size(),
+                index.getEstimatedBytes() / 1024, System.currentTimeMillis() - start);
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    @Scheduled(fixedDelayString = "${app.search.rebuild-retry-interval:PT10M}",
+            initialDelayString = "${app.search.rebuild-retry-interval:PT10M}")
+    public void retryAfterOverflow() {
+        if (overBudget) {
+            rebuild();
+        }
+    }
+
+    /**
+     * آیا {@code criteria} از ایندکس قابل پاسخ است: عبارت متنی دارد و پیام‌های فعال را می‌خواهد (پیام‌های حذف‌شده
+     * ایندکس نمی‌شوند).
+     */
+    public boolean canSearch(SearchCriteria criteria) {
+        return ready && StringUtils.hasText(criteria.getQuery()) && !Boolean.FALSE.equals(criteria.getIsActive());
+    }
+
+    /**
+     * یک صفحه از پیام‌های منطبق با {@code criteria.query}، بهترین اول، محدود به بقیه معیارها و اگر
+     * {@code criteria.username} داده شده باشد، به پیام‌هایی که آن کاربر فرستاده یا دریافت کرده است.
+     */
+    public Page<Bm25Index.Hit<Indexed>> search(SearchCriteria criteria, Pageable pageable) {
+        List<Bm25Index.Hit<Indexed>> hits = index.search(criteria.getQuery(), filter(criteria));
+        int from = (int) Math.min(pageable.getOffset(), hits.size());
+        int to = Math.min(from + pageable.getPageSize(), hits.size());
+        return new PageImpl<>(hits.subList(from, to), pageable, hits.size());
+    }
+
+    /**
+     * تکه‌ای از {@code text} اطراف اولین کلمه منطبق با {@code query}، escape شده برای HTML، که هر کلمه منطبق در آن
+     * داخل {@code <mark>} است.
+     */
+    public String highlight(String text, String query) {
+        if (!StringUtils.hasText(text)) {
+            return text;
+        }
+        List<String> tokens = normalizer.tokenize(query);
+        List<int[]> matches = new ArrayList<>();
+        Matcher word = WORD.matcher(text);
+        while (word.find()) {
+            String normalized = normalizer.normalize(word.group());
+            if (tokens.stream().anyMatch(token -> Bm25Index.matches(normalized, token))) {
+                matches.add(new int[]{word.start(), word.end()});
+            }
+        }
+        int start = matches.isEmpty() ? 0 : Math.max(0, matches.get(0)[0] - SNIPPET_LEAD);
+        int end = Math.min(text.length(), start + SNIPPET_LENGTH);
+        StringBuilder snippet = new StringBuilder(start > 0 ? "…" : "");
+        int position = start;
+        for (int[] match : matches) {
+            if (match[0] < start || match[1] > end) {
+                continue;
+            }
+            escape(snippet, text, position, match[0]);
+            snippet.append("<mark>");
+            escape(snippet, text, match[0], match[1]);
+            snippet.append("</mark>");
+            position = match[1];
+        }
+        escape(snippet, text, position, end);
+        return end < text.length() ? snippet.append('…').toString() : snippet.toString();
+    }
+
+    public void indexAfterCommit(Message message) {
+        Indexed indexed = new Indexed(message.getSender(), message.getRecipient(), message.getSubject(),
+                message.getPriority(), message.getCreateDate(), message.getMessage());
+        Long id = message.getId();
+        AfterCommit.run(() -> apply(id, indexed));
+    }
+
+    public void removeAfterCommit(Long id) {
+        AfterCommit.run(() -> apply(id, null));
+    }
+
+    private static Predicate<Indexed> filter(SearchCriteria criteria) {
+        String username = criteria.getUsername();
+        String sender = criteria.getSender();
+        String recipient = criteria.getRecipient();
+        String subject = criteria.getSubject();
+        String priority = criteria.getPriority();
+        LocalDateTime startDate = criteria.getStartDate();
+        LocalDateTime endDate = criteria.getEndDate();
+        // معیار خالی یا فقط فاصله نادیده گرفته می‌شود، مثل MessageSpecification
+        return message -> (!StringUtils.hasText(username) || username.equals(message.sender())
+                || username.equals(message.recipient()))
+                && (!StringUtils.hasText(sender) || sender.equals(message.sender()))
+                && (!StringUtils.hasText(recipient) || recipient.equals(message.recipient()))
+                && (!StringUtils.hasText(subject) || subject.equals(message.subject()))
+                && (!StringUtils.hasText(priority) || priority.equals(message.priority()))
+                && (startDate == null || (message.createDate() != null && !message.createDate().isBefore(startDate)))
+                && (endDate == null || (message.createDate() != null && !message.createDate().isAfter(endDate)));
+    }
+
+    private synchronized void apply(Long id, Indexed indexed) {
+        if (building) {
+            changedDuringBuild.remove(id);
+            changedDuringBuild.put(id, Optional.ofNullable(indexed));
+        } else if (ready) {
+            if (indexed == null) {
+                index.remove(id);
+            } else {
+                add(id, indexed);
+            }
+        }
+    }
+
+    private boolean add(Long id, Indexed indexed) {
+        Map<String, String> fields = new HashMap<>();
+        if (indexed.subject() != null) {
+            fields.put("subject", indexed.subject());
+        }
+        if (indexed.message() != null) {
+            fields.put("message", indexed.message());
+        }
+        Indexed stored = indexed.withoutMessage();
+        long storedCost = STORED_OVERHEAD + 2L * (length(stored.sender()) + length(stored.recipient())
+                + length(stored.subject()) + length(stored.priority()));
+        if (!index.index(id, fields, stored, storedCost)) {
+            // از بودجه حافظه عبور کردیم؛ ایندکس رها می‌شود و جستجو به پایگاه داده برمی‌گردد
+            log.error("Message search index exceeded its memory budget at {} documents; falling back to database search "
+                    + "until a rebuild fits", index.size());
+            ready = false;
+            overBudget = true;
+            index.clear();
+            return false;
+        }
+        return true;
+    }
+
+    private static void escape(StringBuilder out, String text, int from, int to) {
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '<' -> out.append("&lt;");
+                case '>' -> out.append("&gt;");
+                case '&' -> out.append("&amp;");
+                case '"' -> out.append("&quot;");
+                default -> out.append(c);
+            }
+        }
+    }
+
+    private static int length(String value) {
+        return value != null ? value.length() : 0;
+    }
+}
@@ -0,0 +1,121 @@
+package ir.iau.library.search;
+
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.Expression;
+import org.springframework.stereotype.Component;
+
+import java.text.Normalizer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * نرمال‌ساز آگاه از فارسی و عربی:
+ * <ul>
+ *     <li>شکل‌های عربی حروف به معادل فارسی تبدیل می‌شوند (ي/ى/ئ→ی، ك→ک، ة/ۀ→ه، أ/إ/آ→ا، ؤ→و)</li>
+ *     <li>اعراب، کشیده و نویسه‌های عرض صفر (نیم‌فاصله و اتصال) حذف می‌شوند تا «کتاب‌ها» و «کتابها» یکی شوند</li>
+ *     <li>ارقام فارسی و عربی به ارقام لاتین تبدیل می‌شوند</li>
+ *     <li>بقیه حروف کوچک می‌شوند</li>
+ * </ul>
+ */
+@Component
+public class PersianTextNormalizer implements TextNormalizer {
+
+    // نسخه SQL از خود isIgnorable و fold ساخته می‌شود تا با تغییر آن‌ها عقب نماند
+    private static final String SQL_IGNORABLE = sqlIgnorable();
+    private static final Map<String, String> SQL_FOLDS = sqlFolds();
+
+    @Override
+    public String normalize(String text) {
+        if (text == null || text.isEmpty()) {
+            return "";
+        }
+        // NFKC حروف presentation form را به حروف پایه تبدیل می‌کند
+        String composed = Normalizer.normalize(text, Normalizer.Form.NFKC);
+        StringBuilder sb = new StringBuilder(composed.length());
+        for (int i = 0; i < composed.length(); i++) {
+            char c = composed.charAt(i);
+            if (isIgnorable(c)) {
+                continue;
+            }
+            sb.append(fold(c));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * حذف نویسه‌های نادیده‌گرفتنی و یکسان‌سازی حروف و ارقام مثل {@link #normalize(String)}؛ NFKC اعمال نمی‌شود، پس
+     * حروف presentation form ذخیره‌شده در ستون یکسان نمی‌شوند.
+     */
+    @Override
+    public Expression<String> normalize(CriteriaBuilder cb, Expression<String> column) {
+        Expression<String> stripped = cb.function("REGEXP_REPLACE", String.class, column,
+                cb.literal(SQL_IGNORABLE), cb.literal(""));
+        // TRANSLATE در MySQL نیست، پس هر حرف با یک REPLACE جدا یکسان می‌شود
+        Expression<String> folded = TextNormalizer.super.normalize(cb, stripped);
+        for (Map.Entry<String, String> fold : SQL_FOLDS.entrySet()) {
+            folded = cb.function("REPLACE", String.class, folded,
+                    cb.literal(fold.getKey()), cb.literal(fold.getValue()));
+        }
+        return folded;
+    }
+
+    private static String sqlIgnorable() {
+        StringBuilder sb = new StringBuilder("[\u200C\u200D");
+        for (char c = '\u0600'; c <= '\u06FF'; c++) {
+            if (isIgnorable(c)) {
+                sb.append(c);
+            }
+        }
+        return sb.append(']').toString();
+    }
+
+    private static Map<String, String> sqlFolds() {
+        Map<String, String> folds = new LinkedHashMap<>();
+        for (char c = '\u0600'; c <= '\u06FF'; c++) {
+            if (!isIgnorable(c) && fold(c) != c) {
+                folds.put(String.valueOf(c), String.valueOf(fold(c)));
+            }
+        }
+        return folds;
+    }
+
+    private static boolean isIgnorable(char c) {
+        return c == '\u200C' || c == '\u200D'       // ZWNJ / ZWJ
+                || c == '\u0640'                         // کشیده
+                || (c >= '\u064B' && c <= '\u065F')   // اعراب
+                || c == '\u0670'                         // الف خنجری
+                || (c >= '\u06D6' && c <= '\u06ED');  // علائم قرآنی
+    }
+
+    private static char fold(char c) {
+        switch (c) {
+            case '\u064A': // ي
+            case '\u0649': // ى
+            case '\u0626': // ئ
+                return '\u06CC'; // ی
+            case '\u0643': // ك
+                return '\u06A9'; // ک
+            case '\u0629': // ة
+            case '\u06C0': // ۀ
+            case '\u06D5': // ە
+            case '\u06BE': // ھ
+                return '\u0647'; // ه
+            case '\u0623': // أ
+            case '\u0625': // إ
+            case '\u0622': // آ
+            case '\u0671': // ٱ
+                return '\u0627'; // ا
+            case '\u0624': // ؤ
+                return '\u0648'; // و
+            default:
+                break;
+        }
+        if (c >= '\u06F0' && c <= '\u06F9') { // ارقام فارسی
+            return (char) ('0' + (c - '\u06F0'));
+        }
+        if (c >= '\u0660' && c <= '\u0669') { // ارقام عربی
+            return (char) ('0' + (c - '\u0660'));
+        }
+        return Character.toLowerCase(c);
+    }
+}
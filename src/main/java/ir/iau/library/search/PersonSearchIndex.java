@@ -0,0 +1,80 @@
+package ir.iau.library.search;
+
+import ir.iau.library.dto.PersonFilterDto;
+import ir.iau.library.entity.Person;
+import ir.iau.library.repository.PersonRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.util.*;
+
+/**
+ * ایندکس جستجوی حافظه روی ستون‌های نام، تماس و نشانی {@link Person}.
+ * <p>
+ * معیارهای نام و نشانی {@link PersonFilterDto} را پیدا می‌کند و پشت جستجوی رتبه‌بندی‌شده {@code /api/person/search}
+ * است. فیلترهای ایمیل، تلفن و کد ملی روی SQL می‌مانند چون به صورت زیررشته خام تطبیق داده می‌شوند.
+ */
+@Component
+public class PersonSearchIndex extends EntitySearchIndex {
+
+    private static final List<String> FIELDS = List.of("firstName", "lastName", "email", "nationalId", "phone", "address");
+
+    private final PersonRepository personRepository;
+    private final int maxIdFilter;
+
+    public PersonSearchIndex(PersonRepository personRepository,
+                             TextNormalizer normalizer,
+                             @Value("${app.search.person.memory-budget-mb:64}") long memoryBudgetMb,
+                             @Value("${app.search.person.build-batch-size:1000}") int buildBatchSize,
+                             @Value("${app.search.person.max-id-filter:5000}") int maxIdFilter) {
+        super(normalizer, FIELDS,
+                Map.of("firstName", 2f, "lastName", 2.5f, "email", 1f, "nationalId", 1f, "phone", 0.5f, "address", 0.3f),
+                Set.of("firstName", "lastName", "email", "nationalId"),
+                memoryBudgetMb * 1024 * 1024, buildBatchSize);
+        this.personRepository = personRepository;
+        this.maxIdFilter = maxIdFilter;
+    }
+
+    @Override
+    protected String name() {
+        return "Person";
+    }
+
+    @Override
+    protected List<Object[]> loadBatch(Long afterId, int batchSize) {
+        return personRepository.findSearchableFields(afterId, PageRequest.ofSize(batchSize));
+    }
+
+    /**
+     * @see BookSearchIndex#resolve(ir.iau.library.dto.BookFilterDto)
+     */
+    public Optional<Set<Long>> resolve(PersonFilterDto filter) {
+        if (!isReady() || !hasIndexedCriteria(filter)) {
+            return Optional.empty();
+        }
+        Set<Long> ids = match(indexedCriteria(filter));
+        if (ids == null || ids.size() > maxIdFilter) {
+            return Optional.empty();
+        }
+        return Optional.of(ids);
+    }
+
+    public static boolean hasIndexedCriteria(PersonFilterDto filter) {
+        return indexedCriteria(filter).values().stream().anyMatch(StringUtils::hasText);
+    }
+
+    public void indexAfterCommit(Person person) {
+        indexAfterCommit(person.getId(), person.getFirstName(), person.getLastName(), person.getEmail(),
+                person.getNationalId(), person.getPhone(), person.getAddress());
+    }
+
+    private static Map<String, String> indexedCriteria(PersonFilterDto filter) {
+        Map<String, String> criteria = new LinkedHashMap<>();
+        criteria.put("firstName", filter.getFirstName());
+        criteria.put("lastName", filter.getLastName());
+        criteria.put("address", filter.getAddress());
+        return criteria;
+    }
+}
@@ -0,0 +1,58 @@
+package ir.iau.library.search;
+
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.Expression;
+import jakarta.persistence.criteria.Predicate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * نرمال‌سازی متن آزاد پیش از ایندکس یا جستجو، تا املاهایی که یکسان دیده می‌شوند به یک توکن برسند. پیاده‌سازی
+ * پیش‌فرض {@link PersianTextNormalizer} است؛ پیاده‌سازی دیگر را می‌توان به صورت bean با {@code @Primary} تعریف کرد.
+ * <p>
+ * {@link #normalize(CriteriaBuilder, Expression)} و {@link #matchesWords} نسخه SQL همین قواعدند و تا آماده نبودن
+ * ایندکس استفاده می‌شوند، تا یک فیلتر چه از حافظه جواب داده شود چه از پایگاه داده، همان ردیف‌ها را برگرداند.
+ */
+public interface TextNormalizer {
+
+    String normalize(String text);
+
+    default List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null || text.isBlank()) {
+            return tokens;
+        }
+        for (String token : normalize(text).split("[^\\p{L}\\p{N}]+")) {
+            if (!token.isEmpty()) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * {@code column} نرمال‌شده توسط پایگاه داده: حروف کوچک، و هر دنباله از نویسه‌هایی که {@link #tokenize} روی آن‌ها
+     * جدا می‌کند با یک فاصله جایگزین می‌شود. پیاده‌سازی‌هایی که در {@link #normalize(String)} نویسه‌های بیشتری را
+     * یکسان می‌کنند باید همان‌ها را اینجا هم یکسان کنند.
+     */
+    default Expression<String> normalize(CriteriaBuilder cb, Expression<String> column) {
+        return cb.lower(cb.function("REGEXP_REPLACE", String.class, column,
+                cb.literal("[^\\p{L}\\p{N}]+"), cb.literal(" ")));
+    }
+
+    /**
+     * نسخه SQL {@link InvertedIndex#match}: هر توکن {@code text} باید ابتدای یکی از کلمه‌های {@code column} باشد.
+     * متن بدون توکن، مثل ایندکس، با هیچ ردیفی منطبق نیست.
+     */
+    default Predicate matchesWords(CriteriaBuilder cb, Expression<String> column, String text) {
+        List<String> tokens = tokenize(text);
+        if (tokens.isEmpty()) {
+            return cb.disjunction();
+        }
+        Expression<String> words = cb.concat(" ", normalize(cb, column));
+        return cb.and(tokens.stream()
+                .map(token -> cb.like(words, "% " + token + "%"))
+                .toArray(Predicate[]::new));
+    }
+}
@@ -0,0 +1,271 @@
+package ir.iau.library.search;
+
+import ir.iau.library.dto.SearchResultDto;
+
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * جستجوی رتبه‌بندی‌شده و مقاوم به غلط تایپی در حافظه، روی فیلدهای متنی کوتاه.
+ * <p>
+ * سندها به کلمه‌های نرمال‌شده شکسته می‌شوند؛ هر کلمه یک posting list دارد (id سند -> بیشترین وزن فیلد) و خودش با
+ * سه‌حرفی‌هایش (trigram) ایندکس می‌شود. هر توکن عبارت به سه شکل با واژگان تطبیق داده می‌شود: کلمه کامل، پیشوند کلمه و
+ * تقریبی (شباهت Dice سه‌حرفی‌ها)؛ پس پیدا کردن نامزدها هرگز به پایگاه داده نمی‌رود و هزینه‌اش به تعداد واژه‌های منطبق
+ * بستگی دارد، نه به تعداد ردیف‌ها.
+ * <p>
+ * ایندکس تخمینی از حجم heap خود نگه می‌دارد. وقتی افزودن یک سند از بودجه تعیین‌شده عبور کند، سند رد و
+ * {@link #isOverBudget()} true می‌شود تا مالک ایندکس به SQL برگردد.
+ */
+public class TrigramIndex {
+
+    private static final float EXACT_SCORE = 1.0f;
+    private static final float PREFIX_SCORE = 0.8f;
+    private static final float FUZZY_SCORE = 0.6f;
+    private static final double MIN_SIMILARITY = 0.45;
+    private static final int MAX_FUZZY_TERMS = 50;
+
+    // تخمین تقریبی سربار اشیاء جاوا (بایت)
+    private static final int DOCUMENT_OVERHEAD = 128;
+    private static final int POSTING_OVERHEAD = 48;
+    private static final int TERM_OVERHEAD = 96;
+    private static final int TRIGRAM_OVERHEAD = 40;
+
+    private final TextNormalizer normalizer;
+    private final Map<String, Float> fieldWeights;
+    private final Set<String> storedFields;
+    private final long memoryBudgetBytes;
+
+    private final NavigableMap<String, Map<Long, Float>> postings = new TreeMap<>();
+    private final Map<String, Set<String>> trigramTerms = new HashMap<>();
+    private final Map<Long, Document> documents = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private long estimatedBytes;
+    private volatile boolean overBudget;
+
+    private record Document(Map<String, String> stored, Set<String> terms, long cost) {
+    }
+
+    public TrigramIndex(TextNormalizer normalizer, Map<String, Float> fieldWeights, Set<String> storedFields,
+                        long memoryBudgetBytes) {
+        this.normalizer = normalizer;
+        this.fieldWeights = fieldWeights;
+        this.storedFields = storedFields;
+        this.memoryBudgetBytes = memoryBudgetBytes;
+    }
+
+    /**
+     * افزودن یا جایگزینی یک سند.
+     *
+     * @return false اگر سند به خاطر عبور از بودجه حافظه رد شد
+     */
+    public boolean index(Long id, Map<String, String> fields) {
+        Map<String, Float> termWeights = new HashMap<>();
+        Map<String, String> stored = new HashMap<>();
+        long cost = DOCUMENT_OVERHEAD;
+        for (Map.Entry<String, String> field : fields.entrySet()) {
+            if (field.getValue() == null) {
+                continue;
+            }
+            float weight = fieldWeights.getOrDefault(field.getKey(), 1f);
+            for (String term : normalizer.tokenize(field.getValue())) {
+                termWeights.merge(term, weight, Math::max);
+            }
+            if (storedFields.contains(field.getKey())) {
+                stored.put(field.getKey(), field.getValue());
+                cost += 2L * field.getValue().length();
+            }
+        }
+        cost += (long) POSTING_OVERHEAD * termWeights.size();
+
+        lock.writeLock().lock();
+        try {
+            removeInternal(id);
+            long termsCost = 0;
+            for (String term : termWeights.keySet()) {
+                if (!postings.containsKey(term)) {
+                    termsCost += termCost(term);
+                }
+            }
+            if (estimatedBytes + cost + termsCost > memoryBudgetBytes) {
+                overBudget = true;
+                return false;
+            }
+            termWeights.forEach((term, weight) -> {
+                Map<Long, Float> docs = postings.get(term);
+                if (docs == null) {
+                    docs = new HashMap<>();
+                    postings.put(term, docs);
+                    for (String trigram : trigrams(term)) {
+                        trigramTerms.computeIfAbsent(trigram, t -> new HashSet<>()).add(term);
+                    }
+                }
+                docs.put(id, weight);
+            });
+            documents.put(id, new Document(stored, termWeights.keySet(), cost));
+            estimatedBytes += cost + termsCost;
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(Long id) {
+        lock.writeLock().lock();
+        try {
+            removeInternal(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * {@code limit} سند برتر برای {@code query}، بیشترین امتیاز اول. سندهایی که فقط با بخشی از توکن‌ها منطبق‌اند هم
+     * برگردانده می‌شوند، ولی امتیازشان به نسبت توکن‌های منطبق کم می‌شود.
+     */
+    public List<SearchResultDto> search(String query, int limit) {
+        List<String> queryTokens = normalizer.tokenize(query).stream().distinct().toList();
+        if (queryTokens.isEmpty() || limit <= 0) {
+            return List.of();
+        }
+        lock.readLock().lock();
+        try {
+            Map<Long, Double> scores = new HashMap<>();
+            Map<Long, Integer> matchedTokens = new HashMap<>();
+            for (String token : queryTokens) {
+                Map<Long, Float> best = new HashMap<>();
+                for (Map.Entry<String, Map<Long, Float>> entry : postings.subMap(token, true, token + Character.MAX_VALUE, false).entrySet()) {
+                    String term = entry.getKey();
+                    float termScore = term.equals(token)
+                            ? EXACT_SCORE
+                            : PREFIX_SCORE * (0.5f + 0.5f * token.length() / term.length());
+                    accumulate(best, entry.getValue(), termScore);
+                }
+                if (token.length() >= 3) {
+                    for (Map.Entry<String, Double> fuzzy : fuzzyTerms(token).entrySet()) {
+                        if (!fuzzy.getKey().startsWith(token)) {
+                            accumulate(best, postings.get(fuzzy.getKey()), (float) (FUZZY_SCORE * fuzzy.getValue()));
+                        }
+                    }
+                }
+                best.forEach((id, score) -> {
+                    scores.merge(id, (double) score, Double::sum);
+                    matchedTokens.merge(id, 1, Integer::sum);
+                });
+            }
+
+            return scores.entrySet().stream()
+                    .map(e -> Map.entry(e.getKey(), e.getValue() * matchedTokens.get(e.getKey()) / queryTokens.size()))
+                    .sorted(Map.Entry.<Long, Double>comparingByValue().reversed()
+                            .thenComparing(Map.Entry.<Long, Double>comparingByKey().reversed()))
+                    .limit(limit)
+                    .map(e -> SearchResultDto.builder()
+                            .id(e.getKey())
+                            .score(Math.round(e.getValue() * 1000) / 1000.0)
+                            .fields(documents.get(e.getKey()).stored())
+                            .build())
+                    .toList();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public boolean isOverBudget() {
+        return overBudget;
+    }
+
+    public long getEstimatedBytes() {
+        return estimatedBytes;
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return documents.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            postings.clear();
+            trigramTerms.clear();
+            documents.clear();
+            estimatedBytes = 0;
+            overBudget = false;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void removeInternal(Long id) {
+        Document document = documents.remove(id);
+        if (document == null) {
+            return;
+        }
+        estimatedBytes -= document.cost();
+        for (String term : document.terms()) {
+            Map<Long, Float> docs = postings.get(term);
+            if (docs == null) {
+                continue;
+            }
+            docs.remove(id);
+            if (docs.isEmpty()) {
+                postings.remove(term);
+                for (String trigram : trigrams(term)) {
+                    Set<String> terms = trigramTerms.get(trigram);
+                    if (terms != null && terms.remove(term) && terms.isEmpty()) {
+                        trigramTerms.remove(trigram);
+                    }
+                }
+                estimatedBytes -= termCost(term);
+            }
+        }
+    }
+
+    /**
+     * کلمه‌هایی از واژگان که شباهت Dice سه‌حرفی‌هایشان با {@code token} دست‌کم {@link #MIN_SIMILARITY} است.
+     */
+    private Map<String, Double> fuzzyTerms(String token) {
+        Set<String> queryTrigrams = trigrams(token);
+        Map<String, Integer> shared = new HashMap<>();
+        for (String trigram : queryTrigrams) {
+            Set<String> terms = trigramTerms.get(trigram);
+            if (terms != null) {
+                for (String term : terms) {
+                    shared.merge(term, 1, Integer::sum);
+                }
+            }
+        }
+        Map<String, Double> result = new LinkedHashMap<>();
+        shared.entrySet().stream()
+                .map(e -> Map.entry(e.getKey(), 2.0 * e.getValue() / (queryTrigrams.size() + trigrams(e.getKey()).size())))
+                .filter(e -> e.getValue() >= MIN_SIMILARITY)
+                .sorted(Map.Entry.<String, Double>comparingByValue().reversed())
+                .limit(MAX_FUZZY_TERMS)
+                .forEach(e -> result.put(e.getKey(), e.getValue()));
+        return result;
+    }
+
+    private static void accumulate(Map<Long, Float> best, Map<Long, Float> docs, float termScore) {
+        if (docs == null) {
+            return;
+        }
+        docs.forEach((id, weight) -> best.merge(id, termScore * weight, Math::max));
+    }
+
+    private static Set<String> trigrams(String term) {
+        String padded = "$" + term + "$";
+        Set<String> trigrams = new HashSet<>();
+        for (int i = 0; i + 3 <= padded.length(); i++) {
+            trigrams.add(padded.substring(i, i + 3));
+        }
+        return trigrams;
+    }
+
+    private static long termCost(String term) {
+        return TERM_OVERHEAD + 2L * term.length() + (long) TRIGRAM_OVERHEAD * term.length();
+    }
+}
@@ -0,0 +1,204 @@
+package ir.iau.library.service;
+
+import ir.iau.library.entity.BlobRef;
+import ir.iau.library.repository.BlobRefRepository;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+/**
+ * ذخیره‌سازی محتوای دودویی (جلد کتاب، عکس پروفایل و اندازه‌های دیگر آن‌ها) بر اساس hash محتوا.
+ * <p>
+ * هر blob یک بار روی دیسک با hash SHA-256 خود ذخیره می‌شود ({@code <dir>/ab/cd/abcd...})، پس بارگذاری‌های یکسان فقط
+ * یک نسخه دارند و entity ها (و ردیف‌های audit آن‌ها در Envers) فقط hash ۶۴ کاراکتری را نگه می‌دارند. برای هر blob یک
+ * ردیف {@link BlobRef} تعداد ارجاع‌ها را می‌شمارد؛ {@link #put} یکی اضافه می‌کند (بار اول ردیف را در تراکنش جداگانه
+ * می‌سازد تا دو بارگذاری هم‌زمان اول از یک محتوا هر دو موفق شوند)، {@link #release} یکی کم می‌کند و blob هایی که
+ * بیش از {@code app.blob.orphan-grace-hours} بدون ارجاع مانده‌اند در پاکسازی شبانه حذف می‌شوند. این مهلت blob را تا
+ * پایان یک بارگذاری هم‌زمان از همان محتوا زنده نگه می‌دارد.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class BlobStore {
+
+    private static final Pattern HASH = Pattern.compile("[0-9a-f]{64}");
+
+    private final BlobRefRepository blobRefRepository;
+    private final PlatformTransactionManager transactionManager;
+
+    @Value("${app.blob.dir:${user.home}/library-blobs}")
+    private String blobDir;
+
+    @Value("${app.blob.orphan-grace-hours:24}")
+    private long orphanGraceHours;
+
+    private Path root;
+
+    @PostConstruct
+    void init() throws IOException {
+        root = Paths.get(blobDir).toAbsolutePath().normalize();
+        Files.createDirectories(root);
+    }
+
+    /**
+     * ذخیره محتوا (در صورت تکراری نبودن) و افزودن یک ارجاع به آن.
+     *
+     * @return SHA-256 محتوا به صورت hex
+     */
+    @Transactional
+    public String put(byte[] data) {
+        String hash = sha256(data);
+        LocalDateTime now = LocalDateTime.now();
+        // ابتدا ردیف ارجاع قفل/ایجاد می‌شود تا sweep هم‌زمان نتواند فایل را حذف کند
+        if (blobRefRepository.incrementRefCount(hash, now) == 0) {
+            // ردیف بدون ارجاع در تراکنش جداگانه ساخته و commit می‌شود؛ اگر آپلود هم‌زمانی از همین محتوا زودتر ساخته
+            // باشد خطای کلید تکراری می‌گیریم. در هر دو حالت ارجاع با همان UPDATE اتمیک اضافه می‌شود.
+            try {
+                newTransaction().executeWithoutResult(status ->
+                        blobRefRepository.insert(hash, data.length, detectContentType(data), now));
+            } catch (DataIntegrityViolationException e) {
+                log.debug("Blob {} was registered concurrently", hash);
+            }
+            blobRefRepository.incrementRefCount(hash, now);
+        }
+        Path path = pathOf(hash);
+        if (!Files.exists(path)) {
+            write(path, data);
+        }
+        return hash;
+    }
+
+    /**
+     * حذف یک ارجاع؛ فایل تا پایان مهلت {@code orphan-grace-hours} باقی می‌ماند.
+     */
+    @Transactional
+    public void release(String hash) {
+        if (hash != null) {
+            blobRefRepository.decrementRefCount(hash, LocalDateTime.now());
+        }
+    }
+
+    @Transactional(readOnly = true)
+    public Optional<BlobRef> describe(String hash) {
+        return blobRefRepository.findById(hash);
+    }
+
+    public Path pathOf(String hash) {
+        if (hash == null || !HASH.matcher(hash).matches()) {
+            throw new IllegalArgumentException("Invalid blob hash: " + hash);
+        }
+        return root.resolve(hash.substring(0, 2)).resolve(hash.substring(2, 4)).resolve(hash);
+    }
+
+    public byte[] read(String hash) {
+        try {
+            return Files.readAllBytes(pathOf(hash));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read blob " + hash, e);
+        }
+    }
+
+    /**
+     * خواندن کل فایل در یک بافر direct (خارج از heap)، برای نگهداری در کش تصاویر.
+     */
+    public ByteBuffer readDirect(String hash) {
+        try (FileChannel channel = FileChannel.open(pathOf(hash), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect((int) channel.size());
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    break;
+                }
+            }
+            return buffer.flip();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read blob " + hash, e);
+        }
+    }
+
+    /**
+     * حذف فایل‌هایی که بیش از مهلت تعیین‌شده بدون ارجاع مانده‌اند
+     */
+    @Scheduled(cron = "${app.blob.sweep-cron:0 30 3 * * *}")
+    public void sweepOrphans() {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        LocalDateTime before = LocalDateTime.now().minusHours(orphanGraceHours);
+        int deleted = 0;
+        List<String> orphans;
+        do {
+            orphans = blobRefRepository.findOrphans(before, PageRequest.ofSize(500));
+            for (String hash : orphans) {
+                Integer removed = transaction.execute(status -> blobRefRepository.deleteIfOrphan(hash));
+                if (removed != null && removed == 1) {
+                    try {
+                        Files.deleteIfExists(pathOf(hash));
+                        deleted++;
+                    } catch (IOException e) {
+                        log.warn("Could not delete orphan blob {}: {}", hash, e.getMessage());
+                    }
+                }
+            }
+        } while (orphans.size() == 500);
+        if (deleted > 0) {
+            log.info("Deleted {} orphan blobs", deleted);
+        }
+    }
+
+    private TransactionTemplate newTransaction() {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        return transaction;
+    }
+
+    private static void write(Path path, byte[] data) {
+        try {
+            Files.createDirectories(path.getParent());
+            // نوشتن در فایل موقت و جابه‌جایی اتمیک، تا خواننده‌ها هرگز فایل نیمه‌کاره نبینند
+            Path temp = Files.createTempFile(path.getParent(), path.getFileName().toString(), ".tmp");
+            Files.write(temp, data);
+            Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not store blob " + path.getFileName(), e);
+        }
+    }
+
+    private static String sha256(byte[] data) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(data));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String detectContentType(byte[] data) {
+        try {
+            String contentType = URLConnection.guessContentTypeFromStream(new ByteArrayInputStream(data));
+            return contentType != null ? contentType : "application/octet-stream";
+        } catch (IOException e) {
+            return "application/octet-stream";
+        }
+    }
+}
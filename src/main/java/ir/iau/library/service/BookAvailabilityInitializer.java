@@ -0,0 +1,30 @@
+package ir.iau.library.service;
+
+import ir.iau.library.repository.BookRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * مقداردهی ستون {@code books.available_copies} برای کتاب‌هایی که پیش از وجود آن ثبت شده‌اند (یک UPDATE با زیرکوئری
+ * روی امانت‌های فعال). پس از آن شمارنده فقط در {@link BookLoanService} و ویرایش تعداد نسخه‌ها تغییر می‌کند.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class BookAvailabilityInitializer {
+
+    private final BookRepository bookRepository;
+
+    @Transactional
+    @EventListener(ApplicationReadyEvent.class)
+    public void initialize() {
+        int updated = bookRepository.initializeAvailableCopies();
+        if (updated > 0) {
+            log.info("Initialized available copies for {} books", updated);
+        }
+    }
+}
@@ -1,24 +1,44 @@
 package ir.iau.library.service;
 
+import ir.iau.library.dto.BatchLoanResult;
 import ir.iau.library.dto.BookLoanDto;
 import ir.iau.library.dto.BookLoanFilterDto;
 import ir.iau.library.dto.CreateLoanRequestDto;
+import ir.iau.library.dto.CursorPage;
 import ir.iau.library.entity.Book;
 import ir.iau.library.entity.BookLoan;
 import ir.iau.library.entity.LoanStatus;
 import ir.iau.library.entity.Person;
+import ir.iau.library.exception.BookNotAvailableException;
 import ir.iau.library.repository.BookLoanRepository;
 import ir.iau.library.repository.BookRepository;
 import ir.iau.library.repository.PersonRepository;
+import ir.iau.library.repository.SpecificationProjectionExecutor;
 import ir.iau.library.specification.BookLoanSpecification;
+import ir.iau.library.specification.KeysetSpecification;
 import jakarta.persistence.EntityNotFoundException;
 import jakarta.transaction.Transactional;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 @Transactional
@@ -28,6 +48,11 @@ public class BookLoanService {
     private BookLoanRepository loanRepository;
     @Autowired private PersonRepository personRepository;
     @Autowired private BookRepository bookRepository;
+    @Autowired private SpecificationProjectionExecutor projectionExecutor;
+    @Autowired private ReservationHoldService reservationHoldService;
+
+    @Value("${app.loans.batch.max-items:500}")
+    private int maxBatchItems;
 
     private static final int LOAN_DURATION_DAYS = 14;
 
@@ -42,10 +67,12 @@ public class BookLoanService {
             throw new IllegalStateException("Person is not active and cannot borrow books.");
         }
 
-        // Business rule: Book must be available
-        loanRepository.findActiveLoanByBook(book).ifPresent(loan -> {
-            throw new IllegalStateException("Book is currently on loan and not available.");
-        });
+        // Business rule: Book must have a copy available.
+        // بررسی و کم کردن در یک UPDATE شرطی انجام می‌شود (نه خواندن و سپس نوشتن) تا امانت‌های هم‌زمان، حتی روی
+        // چند نمونه برنامه، بیش از copyCount نسخه امانت ندهند
+        if (bookRepository.takeCopy(book.getId()) == 0) {
+            throw new BookNotAvailableException(book.getId());
+        }
 
         BookLoan newLoan = BookLoan.builder()
                 .person(person)
@@ -60,7 +87,7 @@ public class BookLoanService {
     }
 
     public BookLoanDto returnBook(Long loanId) {
-        BookLoan loan = loanRepository.findById(loanId)
+        BookLoan loan = loanRepository.findWithPersonAndBookById(loanId)
                 .orElseThrow(() -> new EntityNotFoundException("Loan not found"));
 
         if (loan.getStatus() == LoanStatus.RETURNED) {
@@ -69,15 +96,186 @@ public class BookLoanService {
 
         loan.setStatus(LoanStatus.RETURNED);
         loan.setReturnDate(LocalDate.now());
+        // بازگرداندن هم‌زمان همین امانت با @Version آن رد می‌شود و نسخه دو بار برنمی‌گردد.
+        // نسخه اول به سر صف رزرو کتاب می‌رسد و اگر کسی منتظر نباشد به قفسه برمی‌گردد
+        reservationHoldService.releaseCopy(loan.getBook().getId());
 
         return convertToDto(loanRepository.save(loan));
     }
 
+    /**
+     * امانت نسخه‌ای که برای رزرو کنار گذاشته شده بود؛ نسخه هنگام تخصیص از شمارنده کم شده است.
+     */
+    public BookLoanDto createLoanForHold(Person person, Book book) {
+        if (!person.getActive()) {
+            throw new IllegalStateException("Person is not active and cannot borrow books.");
+        }
+        BookLoan newLoan = BookLoan.builder()
+                .person(person)
+                .book(book)
+                .loanDate(LocalDate.now())
+                .dueDate(LocalDate.now().plusDays(LOAN_DURATION_DAYS))
+                .status(LoanStatus.ON_LOAN)
+                .build();
+        return convertToDto(loanRepository.save(newLoan));
+    }
+
+    /**
+     * امانت دسته‌ای (مثلاً یک سبد اسکن شده در میز امانت) در یک تراکنش.
+     * <p>
+     * عضوها و کتاب‌ها (با قفل ردیف) هر کدام با یک کوئری IN خوانده می‌شوند، نسخه‌ها با یک UPDATE برای هر تعداد
+     * متمایز رزرو می‌شوند و امانت‌ها با JDBC batch درج می‌شوند. قلم‌های نامعتبر بقیه را متوقف نمی‌کنند و خطایشان در نتیجه همان قلم می‌آید.
+     */
+    public BatchLoanResult createLoans(List<CreateLoanRequestDto> requests) {
+        checkBatchSize(requests);
+        Map<Long, Person> persons = personRepository.findAllById(requests.stream()
+                        .map(CreateLoanRequestDto::getPersonId).filter(Objects::nonNull).collect(Collectors.toSet()))
+                .stream().collect(Collectors.toMap(Person::getId, Function.identity()));
+        // ردیف کتاب‌ها تا پایان تراکنش قفل می‌مانند، پس نسخه‌های موجود خوانده شده معتبر می‌مانند
+        Map<Long, Book> books = bookRepository.lockAllById(requests.stream()
+                        .map(CreateLoanRequestDto::getBookId).filter(Objects::nonNull).collect(Collectors.toSet()))
+                .stream().collect(Collectors.toMap(Book::getId, Function.identity()));
+
+        BatchLoanResult.Item[] items = new BatchLoanResult.Item[requests.size()];
+        Map<Long, List<Integer>> indexesByBook = new LinkedHashMap<>();
+        for (int i = 0; i < requests.size(); i++) {
+            CreateLoanRequestDto request = requests.get(i);
+            Person person = persons.get(request.getPersonId());
+            Book book = books.get(request.getBookId());
+            if (person == null) {
+                items[i] = failedItem(i, "Person not found");
+            } else if (book == null) {
+                items[i] = failedItem(i, "Book not found");
+            } else if (!Boolean.TRUE.equals(person.getActive())) {
+                items[i] = failedItem(i, "Person is not active and cannot borrow books.");
+            } else {
+                indexesByBook.computeIfAbsent(book.getId(), id -> new ArrayList<>()).add(i);
+            }
+        }
+
+        List<BookLoan> loans = new ArrayList<>();
+        List<Integer> loanIndexes = new ArrayList<>();
+        Map<Integer, List<Long>> booksByGranted = new HashMap<>();
+        indexesByBook.forEach((bookId, indexes) -> {
+            Integer available = books.get(bookId).getAvailableCopies();
+            int granted = Math.min(indexes.size(), Math.max(available != null ? available : 0, 0));
+            if (granted > 0) {
+                booksByGranted.computeIfAbsent(granted, n -> new ArrayList<>()).add(bookId);
+            }
+            for (int n = 0; n < indexes.size(); n++) {
+                int i = indexes.get(n);
+                if (n >= granted) {
+                    items[i] = failedItem(i, new BookNotAvailableException(bookId).getMessage());
+                    continue;
+                }
+                CreateLoanRequestDto request = requests.get(i);
+                loans.add(BookLoan.builder()
+                        .person(persons.get(request.getPersonId()))
+                        .book(books.get(bookId))
+                        .loanDate(LocalDate.now())
+                        .dueDate(LocalDate.now().plusDays(LOAN_DURATION_DAYS))
+                        .status(LoanStatus.ON_LOAN)
+                        .notes(request.getNotes())
+                        .build());
+                loanIndexes.add(i);
+            }
+        });
+        // معمولاً از هر کتاب یک نسخه: یک UPDATE برای همه کتاب‌ها
+        booksByGranted.forEach((count, bookIds) -> {
+            if (bookRepository.takeCopies(bookIds, count) != bookIds.size()) {
+                throw new IllegalStateException("Available copies changed while the books were locked");
+            }
+        });
+        loanRepository.saveAll(loans);
+        for (int n = 0; n < loans.size(); n++) {
+            int i = loanIndexes.get(n);
+            items[i] = BatchLoanResult.Item.builder().index(i).success(true).loan(convertToDto(loans.get(n))).build();
+        }
+        return toBatchResult(items);
+    }
+
+    /**
+     * بازگرداندن دسته‌ای: امانت‌ها با یک کوئری (همراه عضو و کتاب) خوانده می‌شوند، UPDATE ها با JDBC batch فرستاده
+     * می‌شوند و نسخه‌ها به صف رزرو کتاب‌هایشان یا (با یک UPDATE برای هر تعداد متمایز) به قفسه برمی‌گردند.
+     */
+    public BatchLoanResult returnBooks(List<Long> loanIds) {
+        checkBatchSize(loanIds);
+        Map<Long, BookLoan> loans = loanRepository.findWithPersonAndBookByIdIn(
+                        loanIds.stream().filter(Objects::nonNull).collect(Collectors.toSet()))
+                .stream().collect(Collectors.toMap(BookLoan::getId, Function.identity()));
+
+        BatchLoanResult.Item[] items = new BatchLoanResult.Item[loanIds.size()];
+        Set<Long> seen = new HashSet<>();
+        Map<Long, Integer> returnedByBook = new LinkedHashMap<>();
+        for (int i = 0; i < loanIds.size(); i++) {
+            Long loanId = loanIds.get(i);
+            BookLoan loan = loans.get(loanId);
+            if (loan == null) {
+                items[i] = failedItem(i, "Loan not found");
+            } else if (!seen.add(loanId)) {
+                items[i] = failedItem(i, "Duplicate loan id in request");
+            } else if (loan.getStatus() == LoanStatus.RETURNED) {
+                items[i] = failedItem(i, "This book has already been returned.");
+            } else {
+                loan.setStatus(LoanStatus.RETURNED);
+                loan.setReturnDate(LocalDate.now());
+                returnedByBook.merge(loan.getBook().getId(), 1, Integer::sum);
+                items[i] = BatchLoanResult.Item.builder().index(i).success(true).loan(convertToDto(loan)).build();
+            }
+        }
+        if (!returnedByBook.isEmpty()) {
+            reservationHoldService.releaseCopies(returnedByBook);
+        }
+        return toBatchResult(items);
+    }
+
     public Page<BookLoanDto> findAllFiltered(BookLoanFilterDto filter, Pageable pageable) {
-        // You might want a scheduled task to update ON_LOAN to OVERDUE daily
-        // For now, we are not changing the status automatically in this method.
-        Page<BookLoan> loanPage = loanRepository.findAll(BookLoanSpecification.filter(filter), pageable);
-        return loanPage.map(this::convertToDto);
+        // وضعیت OVERDUE هر شب توسط OverdueLoanSweeper تنظیم می‌شود
+        // ستون‌های عضو و کتاب در همان کوئری (join) انتخاب می‌شوند
+        return projectionExecutor.findPage(BookLoan.class, BookLoanSpecification.filter(filter), pageable,
+                BookLoanDto.class, BookLoanSpecification.dtoSelection());
+    }
+
+    /**
+     * صفحه‌بندی keyset: به جای OFFSET و COUNT، از آخرین کلید مرتب‌سازی و id صفحه قبل ادامه می‌دهد.
+     */
+    public CursorPage<BookLoanDto> findAllFilteredAfter(BookLoanFilterDto filter, String after, int size, Sort.Order order) {
+        List<BookLoanDto> rows = projectionExecutor.findList(BookLoan.class,
+                BookLoanSpecification.filter(filter).and(KeysetSpecification.after(order, after)),
+                KeysetSpecification.sort(order), size + 1, BookLoanDto.class, BookLoanSpecification.dtoSelection());
+        return KeysetSpecification.page(rows, size, order, Function.identity());
+    }
+
+    /**
+     * همه امانت‌های منطبق به ترتیب id و به صورت جریانی، برای خروجی اکسل/CSV؛ باید داخل همین تراکنش مصرف شوند.
+     */
+    public void streamFiltered(BookLoanFilterDto filter, int fetchSize, Consumer<BookLoanDto> consumer) {
+        try (Stream<BookLoanDto> rows = projectionExecutor.stream(BookLoan.class, BookLoanSpecification.filter(filter),
+                Sort.by("id"), fetchSize, BookLoanDto.class, BookLoanSpecification.dtoSelection())) {
+            rows.forEach(consumer);
+        }
+    }
+
+    private void checkBatchSize(List<?> items) {
+        if (items == null || items.isEmpty()) {
+            throw new IllegalArgumentException("Batch is empty");
+        }
+        if (items.size() > maxBatchItems) {
+            throw new IllegalArgumentException("Batch has " + items.size() + " items; the limit is " + maxBatchItems);
+        }
+    }
+
+    private static BatchLoanResult.Item failedItem(int index, String error) {
+        return BatchLoanResult.Item.builder().index(index).success(false).error(error).build();
+    }
+
+    private static BatchLoanResult toBatchResult(BatchLoanResult.Item[] items) {
+        int succeeded = (int) Arrays.stream(items).filter(BatchLoanResult.Item::isSuccess).count();
+        return BatchLoanResult.builder()
+                .succeeded(succeeded)
+                .failed(items.length - succeeded)
+                .items(Arrays.asList(items))
+                .build();
     }
 
     private BookLoanDto convertToDto(BookLoan loan) {
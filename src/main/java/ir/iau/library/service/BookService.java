@@ -1,19 +1,37 @@
 package ir.iau.library.service;
 
 import ir.iau.library.dto.BookFilterDto;
+import ir.iau.library.dto.BookSummaryDto;
+import ir.iau.library.dto.CursorPage;
+import ir.iau.library.dto.SearchResultDto;
 import ir.iau.library.entity.Book;
+import ir.iau.library.entity.ImageOwnerType;
+import ir.iau.library.entity.ImageSize;
 import ir.iau.library.repository.BookRepository;
+import ir.iau.library.repository.SpecificationProjectionExecutor;
+import ir.iau.library.search.BookSearchIndex;
+import ir.iau.library.search.TextNormalizer;
 import ir.iau.library.specification.BookSpecification;
+import ir.iau.library.specification.KeysetSpecification;
 import jakarta.persistence.EntityNotFoundException;
 import jakarta.transaction.Transactional;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
 
 @Service
 @Transactional
@@ -22,15 +40,104 @@ public class BookService {
     @Autowired
     private BookRepository bookRepository;
 
-    public Page<Book> findAllFiltered(BookFilterDto filter, Pageable pageable) { // تغییر نوع فیلتر
-        return bookRepository.findAll(BookSpecification.filter(filter), pageable);
+    @Autowired
+    private BookSearchIndex bookSearchIndex;
+
+    @Autowired
+    private TextNormalizer textNormalizer;
+
+    @Autowired
+    private SpecificationProjectionExecutor projectionExecutor;
+
+    @Autowired
+    private ImageService imageService;
+
+    @Autowired
+    private BlobStore blobStore;
+
+    @Autowired
+    private ReservationHoldService reservationHoldService;
+
+    public Page<BookSummaryDto> findAllFiltered(BookFilterDto filter, Pageable pageable) { // تغییر نوع فیلتر
+        // فقط ستون‌های نمای فهرستی انتخاب می‌شوند؛ فایل جلد هرگز در فهرست خوانده نمی‌شود
+        return toSpecification(filter)
+                .map(spec -> projectionExecutor.findPage(Book.class, spec, pageable,
+                        BookSummaryDto.class, BookSpecification.summarySelection()))
+                .orElseGet(() -> Page.empty(pageable));
+    }
+
+    /**
+     * صفحه‌بندی keyset: به جای OFFSET و COUNT، از آخرین کلید مرتب‌سازی و id صفحه قبل ادامه می‌دهد.
+     */
+    public CursorPage<BookSummaryDto> findAllFilteredAfter(BookFilterDto filter, String after, int size, Sort.Order order) {
+        List<BookSummaryDto> rows = toSpecification(filter)
+                .map(spec -> projectionExecutor.findList(Book.class, spec.and(KeysetSpecification.after(order, after)),
+                        KeysetSpecification.sort(order), size + 1, BookSummaryDto.class, BookSpecification.summarySelection()))
+                .orElseGet(List::of);
+        return KeysetSpecification.page(rows, size, order, Function.identity());
+    }
+
+    /**
+     * همه کتاب‌های منطبق به ترتیب id و به صورت جریانی، برای خروجی اکسل/CSV؛ باید داخل همین تراکنش مصرف شوند.
+     */
+    public void streamFiltered(BookFilterDto filter, int fetchSize, Consumer<BookSummaryDto> consumer) {
+        toSpecification(filter).ifPresent(spec -> {
+            try (Stream<BookSummaryDto> rows = projectionExecutor.stream(Book.class, spec, Sort.by("id"), fetchSize,
+                    BookSummaryDto.class, BookSpecification.summarySelection())) {
+                rows.forEach(consumer);
+            }
+        });
+    }
+
+    /**
+     * فیلترهای متنی از طریق ایندکس حافظه حل می‌شوند؛ اگر ایندکس هنوز آماده نیست Specification همان کلمه‌ها را با
+     * همان normalizer در پایگاه داده تطبیق می‌دهد.
+     *
+     * @return empty اگر ایندکس نشان دهد هیچ کتابی منطبق نیست
+     */
+    private Optional<Specification<Book>> toSpecification(BookFilterDto filter) {
+        Optional<Set<Long>> indexedIds = bookSearchIndex.resolve(filter);
+        if (indexedIds.isEmpty()) {
+            return Optional.of(BookSpecification.filter(filter, textNormalizer));
+        }
+        if (indexedIds.get().isEmpty()) {
+            return Optional.empty();
+        }
+        return Optional.of(BookSpecification.filter(filter, indexedIds.get()));
+    }
+
+    /**
+     * جستجوی رتبه‌بندی شده (پیشوندی و تقریبی) روی عنوان، نویسنده، مترجم، ناشر، موضوع و خلاصه.
+     * کاندیداها کاملاً از ایندکس حافظه تولید می‌شوند؛ تا زمانی که ایندکس آماده نیست، از جستجوی عنوان در پایگاه داده استفاده می‌شود.
+     */
+    public List<SearchResultDto> search(String query, int limit) {
+        if (bookSearchIndex.isReady()) {
+            return bookSearchIndex.search(query, limit);
+        }
+        BookFilterDto filter = new BookFilterDto();
+        filter.setTitle(query);
+        return bookRepository.findAll(BookSpecification.filter(filter, textNormalizer), PageRequest.of(0, limit))
+                .map(b -> SearchResultDto.builder()
+                        .id(b.getId())
+                        .score(0.0)
+                        .fields(Map.of("title", String.valueOf(b.getTitle()), "author", String.valueOf(b.getAuthor())))
+                        .build())
+                .getContent();
     }
 
     public Book createBook(Book book, MultipartFile bookCoverFile) throws IOException {
+        byte[] cover = null;
+        book.setCoverHash(null); // hash فقط از روی فایل آپلود شده تعیین می‌شود
         if (bookCoverFile != null && !bookCoverFile.isEmpty()) {
-            book.setBookCoverFile(bookCoverFile.getBytes());
+            cover = bookCoverFile.getBytes();
+            book.setCoverHash(blobStore.put(cover));
+        }
+        Book saved = bookRepository.save(book);
+        if (cover != null) {
+            imageService.replaceVariants(ImageOwnerType.BOOK_COVER, saved.getId(), cover);
         }
-        return bookRepository.save(book);
+        bookSearchIndex.indexAfterCommit(saved);
+        return saved;
     }
 
     public Book updateBook(Long id, Book bookDetails, MultipartFile bookCoverFile) throws IOException {
@@ -52,6 +159,13 @@ public class BookService {
         book.setPageCount(bookDetails.getPageCount());
         book.setLanguage(bookDetails.getLanguage());
         book.setEdition(bookDetails.getEdition());
+        // نسخه‌های اضافه/کم شده به صورت اتمی روی شمارنده نسخه‌های موجود اعمال می‌شوند؛ نسخه‌های تازه اول به صف رزرو می‌رسند
+        int copyDelta = bookDetails.totalCopies() - book.totalCopies();
+        if (copyDelta > 0) {
+            reservationHoldService.releaseCopies(Map.of(id, copyDelta));
+        } else if (copyDelta < 0) {
+            bookRepository.adjustAvailableCopies(id, copyDelta);
+        }
         book.setCopyCount(bookDetails.getCopyCount()); // اضافه شده
         book.setLibrarySection(bookDetails.getLibrarySection()); // اضافه شده
         book.setShelfCode(bookDetails.getShelfCode()); // اضافه شده
@@ -60,14 +174,22 @@ public class BookService {
         book.setPositionNote(bookDetails.getPositionNote()); // اضافه شده
         book.setActive(bookDetails.getActive()); // اضافه شده
 
+        String previousCover = book.getCoverHash();
         if (bookCoverFile != null && !bookCoverFile.isEmpty()) {
-            book.setBookCoverFile(bookCoverFile.getBytes());
-        } else if (bookDetails.getBookCoverFile() == null) { // اگر bookCoverFile null فرستاده شده بود و فایل جدیدی هم نبود، یعنی حذف جلد
-            book.setBookCoverFile(null);
+            byte[] cover = bookCoverFile.getBytes();
+            book.setCoverHash(blobStore.put(cover));
+            blobStore.release(previousCover);
+            imageService.replaceVariants(ImageOwnerType.BOOK_COVER, id, cover);
+        } else if (bookDetails.getCoverHash() == null && previousCover != null) { // اگر coverHash null فرستاده شده بود و فایل جدیدی هم نبود، یعنی حذف جلد
+            book.setCoverHash(null);
+            blobStore.release(previousCover);
+            imageService.replaceVariants(ImageOwnerType.BOOK_COVER, id, null);
         }
-        // اگر bookDetails.getBookCoverFile() مقداری داشت و فایل جدیدی هم آپلود نشده بود، جلد قبلی باقی می‌ماند
+        // اگر bookDetails.getCoverHash() مقداری داشت و فایل جدیدی هم آپلود نشده بود، جلد قبلی باقی می‌ماند
 
-        return bookRepository.save(book);
+        Book saved = bookRepository.save(book);
+        bookSearchIndex.indexAfterCommit(saved);
+        return saved;
     }
 
 //    public void softDeleteBook(Long id) {
@@ -78,7 +200,10 @@ public class BookService {
 //    }
 
     public void deleteBookById(Long id) {
+        bookRepository.findCoverHashById(id).ifPresent(blobStore::release);
         bookRepository.deleteById(id);
+        imageService.replaceVariants(ImageOwnerType.BOOK_COVER, id, null);
+        bookSearchIndex.removeAfterCommit(id);
     }
 
     public Optional<Book> getBookById(Long id) {
@@ -87,4 +212,8 @@ public class BookService {
         // اما چون ممکن است برای ویرایش کتاب غیرفعال هم به آن نیاز باشد، فعلا بدون فیلتر فعال بودن
         return bookRepository.findById(id);
     }
-}
\ No newline at end of file
+
+    public Optional<ImageContent> getCover(Long id, ImageSize size) {
+        return imageService.getImage(ImageOwnerType.BOOK_COVER, id, size, () -> bookRepository.findCoverHashById(id));
+    }
+}
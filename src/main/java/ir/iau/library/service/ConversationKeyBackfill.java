@@ -0,0 +1,71 @@
+package ir.iau.library.service;
+
+import ir.iau.library.entity.Message;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * پر کردن {@code messages.conversation_key} برای پیام‌هایی که پیش از وجود این ستون ذخیره شده‌اند.
+ * <p>
+ * پس از بالا آمدن برنامه در پس‌زمینه و به ترتیب id و دسته‌ای اجرا می‌شود (هر دسته یک تراکنش با JDBC batch). کلید در
+ * جاوا با {@link Message#conversationKey} ساخته می‌شود تا ترتیب نام‌ها به collation پایگاه داده وابسته نباشد.
+ * تا پایان کار {@link #isComplete()} false است و مکالمه‌ها با کوئری قدیمی (بدون کلید) خوانده می‌شوند.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ConversationKeyBackfill {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
+
+    @Value("${app.messages.conversation-key.backfill-batch-size:1000}")
+    private int batchSize;
+
+    private volatile boolean complete;
+
+    public boolean isComplete() {
+        return complete;
+    }
+
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfill() {
+        long start = System.currentTimeMillis();
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        int updated = 0;
+        long lastId = 0L;
+        List<Map<String, Object>> rows;
+        do {
+            rows = jdbcTemplate.queryForList("SELECT id, sender, recipient FROM messages WHERE id > ? "
+                    + "AND conversation_key IS NULL AND recipient IS NOT NULL ORDER BY id LIMIT ?", lastId, batchSize);
+            if (rows.isEmpty()) {
+                break;
+            }
+            List<Object[]> args = rows.stream()
+                    .map(row -> new Object[]{
+                            Message.conversationKey((String) row.get("sender"), (String) row.get("recipient")),
+                            row.get("id")})
+                    .toList();
+            lastId = ((Number) rows.get(rows.size() - 1).get("id")).longValue();
+            transaction.executeWithoutResult(status -> jdbcTemplate.batchUpdate(
+                    "UPDATE messages SET conversation_key = ? WHERE id = ? AND conversation_key IS NULL", args));
+            updated += args.size();
+        } while (rows.size() == batchSize);
+        complete = true;
+        if (updated > 0) {
+            log.info("Filled conversation_key for {} messages in {} ms", updated, System.currentTimeMillis() - start);
+        }
+    }
+}
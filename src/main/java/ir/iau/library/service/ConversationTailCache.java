@@ -0,0 +1,345 @@
+package ir.iau.library.service;
+
+import ir.iau.library.dto.ConversationCacheStats;
+import ir.iau.library.dto.MessageDto;
+import ir.iau.library.support.AfterCommit;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * آخرین پیام‌های مکالمه‌هایی که اخیراً باز شده‌اند («اتاق‌ها»)، تا باز کردن چت بدون کوئری جواب داده شود.
+ * <p>
+ * هر اتاق یک بافر حلقوی از {@code app.messages.tail-cache.size} پیام آخر (جدیدترین اول) و تعداد کل پیام‌های مکالمه
+ * را نگه می‌دارد. {@link MessageService} اتاق را پس از یک خواندن ناموفق (miss) پر می‌کند و پس از commit ارسال، ویرایش،
+ * خواندن یا حذف پیام آن را هم‌گام نگه می‌دارد. وقتی حجم تخمینی همه بافرها از {@code app.messages.tail-cache.max-mb}
+ * بگذرد، اتاق‌هایی که دیرتر از همه استفاده شده‌اند (LRU) بیرون می‌روند.
+ * <p>
+ * مثل {@link ImageCache}، خواننده پیش از کوئری یک {@link #readToken} می‌گیرد و به {@link #put} می‌دهد؛ اگر در این
+ * فاصله تغییری در اتاق commit شده باشد، put کاری نمی‌کند.
+ * <p>
+ * مثل {@link MessageStatsStore}، هر {@code app.messages.tail-cache.reconcile-interval} همه اتاق‌ها دور ریخته می‌شوند
+ * تا بافری که با پایگاه داده ناهمخوان شده (مثلاً ردیف‌هایی که بیرون از برنامه تغییر کرده‌اند) در باز کردن بعدی دوباره
+ * خوانده شود.
+ */
+@Component
+public class ConversationTailCache {
+
+    private static final Comparator<MessageDto> NEWEST_FIRST = Comparator
+            .comparing(MessageDto::getCreateDate, Comparator.nullsFirst(Comparator.<LocalDateTime>naturalOrder()))
+            .thenComparing(MessageDto::getId)
+            .reversed();
+    private static final int STRIPES = 64;
+
+    private final int capacity;
+    private final long maxBytes;
+    private final LinkedHashMap<Room, Tail> rooms = new LinkedHashMap<>(256, 0.75f, true);
+    // شمارنده تغییر هر گروه از اتاق‌ها (بر اساس hash)؛ put با آن fill های هم‌زمان با یک commit را کنار می‌گذارد
+    private final long[] generations = new long[STRIPES];
+    private long usedBytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long invalidations;
+
+    public ConversationTailCache(@Value("${app.messages.tail-cache.size:15}") int capacity,
+                                 @Value("${app.messages.tail-cache.max-mb:16}") long maxMb) {
+        this.capacity = capacity;
+        this.maxBytes = maxMb * 1024 * 1024;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * {@code count} پیام آخر مکالمه (کمتر فقط اگر مکالمه کمتر پیام دارد)، یا empty اگر اتاق در کش نیست یا بافرش
+     * کوتاه‌تر است.
+     */
+    public synchronized Optional<Slice> latest(String user1, String user2, int count) {
+        Tail tail = rooms.get(new Room(user1, user2));
+        if (tail == null || (tail.size < count && tail.size < tail.total)) {
+            misses++;
+            return Optional.empty();
+        }
+        hits++;
+        return Optional.of(new Slice(tail.newest(count), tail.total));
+    }
+
+    public synchronized long readToken(String user1, String user2) {
+        return generations[stripe(new Room(user1, user2))];
+    }
+
+    /**
+     * @param newestFirst صفحه اول مکالمه به ترتیب نمایش (حداکثر {@link #capacity()} پیام نگه داشته می‌شود)
+     * @param total       تعداد پیام‌های مکالمه
+     * @param readToken   مقدار {@link #readToken} که پیش از خواندن صفحه گرفته شده
+     */
+    public synchronized void put(String user1, String user2, List<MessageDto> newestFirst, long total, long readToken) {
+        Room room = new Room(user1, user2);
+        if (readToken != generations[stripe(room)]) {
+            return;
+        }
+        Tail tail = new Tail(capacity);
+        for (int i = Math.min(newestFirst.size(), capacity) - 1; i >= 0; i--) {
+            tail.push(newestFirst.get(i));
+        }
+        tail.total = total;
+        Tail previous = rooms.remove(room);
+        if (previous != null) {
+            usedBytes -= previous.bytes;
+        }
+        if (tail.bytes > maxBytes / 4) {
+            return;
+        }
+        Iterator<Tail> eldest = rooms.values().iterator();
+        while (usedBytes + tail.bytes > maxBytes && eldest.hasNext()) {
+            usedBytes -= eldest.next().bytes;
+            eldest.remove();
+            evictions++;
+        }
+        rooms.put(room, tail);
+        usedBytes += tail.bytes;
+    }
+
+    public void sentAfterCommit(MessageDto message) {
+        AfterCommit.run(() -> sent(message));
+    }
+
+    /**
+     * پیامی که متن یا وضعیتش تغییر کرده (ویرایش، خواندن)؛ اتاق‌هایی که پاسخی با نقل قول آن دارند دور ریخته می‌شوند.
+     */
+    public void updatedAfterCommit(MessageDto message) {
+        AfterCommit.run(() -> updated(message));
+    }
+
+    public void deletedAfterCommit(Long messageId, String sender, String recipient) {
+        AfterCommit.run(() -> deleted(messageId, new Room(sender, recipient)));
+    }
+
+    @Scheduled(fixedDelayString = "${app.messages.tail-cache.reconcile-interval:PT10M}",
+            initialDelayString = "${app.messages.tail-cache.reconcile-interval:PT10M}")
+    public synchronized void reconcile() {
+        rooms.clear();
+        usedBytes = 0;
+        // fill هایی که پیش از پاک شدن شروع شده‌اند هم کنار گذاشته می‌شوند
+        for (int i = 0; i < STRIPES; i++) {
+            generations[i]++;
+        }
+    }
+
+    public synchronized ConversationCacheStats getStats() {
+        return ConversationCacheStats.builder()
+                .rooms(rooms.size())
+                .estimatedBytes(usedBytes)
+                .maxBytes(maxBytes)
+                .hits(hits)
+                .misses(misses)
+                .evictions(evictions)
+                .invalidations(invalidations)
+                .build();
+    }
+
+    private synchronized void sent(MessageDto message) {
+        Room room = new Room(message.getSender(), message.getRecipient());
+        generations[stripe(room)]++;
+        Tail tail = rooms.get(room);
+        if (tail == null) {
+            return;
+        }
+        int index = tail.indexOf(message.getId());
+        if (index >= 0) {
+            // یک fill هم‌زمان پیام را از پایگاه داده خوانده است
+            replace(tail, index, message);
+        } else if (tail.size > 0 && NEWEST_FIRST.compare(message, tail.get(0)) > 0) {
+            // کهنه‌تر از جدیدترین پیام کش (commit خارج از ترتیب)؛ جایش در بافر معلوم نیست
+            invalidate(room);
+        } else {
+            usedBytes -= tail.bytes;
+            tail.push(message);
+            tail.total++;
+            usedBytes += tail.bytes;
+        }
+    }
+
+    private synchronized void updated(MessageDto message) {
+        Room room = new Room(message.getSender(), message.getRecipient());
+        generations[stripe(room)]++;
+        Tail tail = rooms.get(room);
+        int index = tail != null ? tail.indexOf(message.getId()) : -1;
+        if (index >= 0) {
+            replace(tail, index, message);
+        }
+        invalidateQuoting(message.getId());
+    }
+
+    private synchronized void deleted(Long messageId, Room room) {
+        generations[stripe(room)]++;
+        Tail tail = rooms.get(room);
+        if (tail != null) {
+            int index = tail.indexOf(messageId);
+            if (index >= 0) {
+                usedBytes -= tail.bytes;
+                tail.removeAt(index);
+                tail.total--;
+                usedBytes += tail.bytes;
+            } else {
+                // معلوم نیست پیام در total شمرده شده بود یا نه (خواندن هم‌زمان با حذف)
+                invalidate(room);
+            }
+        }
+        invalidateQuoting(messageId);
+    }
+
+    private void replace(Tail tail, int index, MessageDto message) {
+        usedBytes -= tail.bytes;
+        tail.set(index, message);
+        usedBytes += tail.bytes;
+    }
+
+    // پیش‌نمایش پیام والد در پاسخ‌ها کپی است؛ مکالمه‌هایی که آن را دارند دوباره از پایگاه داده خوانده می‌شوند
+    private void invalidateQuoting(Long messageId) {
+        List<Room> stale = new ArrayList<>();
+        rooms.forEach((room, tail) -> {
+            if (tail.quotes(messageId)) {
+                stale.add(room);
+            }
+        });
+        stale.forEach(this::invalidate);
+    }
+
+    private void invalidate(Room room) {
+        Tail removed = rooms.remove(room);
+        if (removed != null) {
+            usedBytes -= removed.bytes;
+            invalidations++;
+        }
+    }
+
+    private static int stripe(Room room) {
+        return Math.floorMod(room.hashCode(), STRIPES);
+    }
+
+    /**
+     * @param content جدیدترین اول
+     * @param total   تعداد پیام‌های کل مکالمه
+     */
+    public record Slice(List<MessageDto> content, long total) {
+    }
+
+    // دو نام کاربری با ترتیب ثابت، تا هر دو طرف مکالمه یک اتاق مشترک داشته باشند
+    private record Room(String first, String second) {
+        Room {
+            if (first != null && second != null && first.compareTo(second) > 0) {
+                String swap = first;
+                first = second;
+                second = swap;
+            }
+        }
+    }
+
+    /**
+     * بافر حلقوی با اندازه ثابت، جدیدترین پیام در {@code start}؛ push در بافر پر، قدیمی‌ترین پیام را بازنویسی می‌کند.
+     */
+    private static class Tail {
+        private static final long OVERHEAD = 64;
+
+        private final MessageDto[] slots;
+        private int start;
+        private int size;
+        private long total;
+        private long bytes;
+
+        Tail(int capacity) {
+            this.slots = new MessageDto[capacity];
+            this.bytes = OVERHEAD + 8L * capacity;
+        }
+
+        MessageDto get(int index) {
+            return slots[(start + index) % slots.length];
+        }
+
+        void set(int index, MessageDto message) {
+            int slot = (start + index) % slots.length;
+            bytes += estimate(message) - estimate(slots[slot]);
+            slots[slot] = message;
+        }
+
+        void push(MessageDto message) {
+            start = (start - 1 + slots.length) % slots.length;
+            if (size == slots.length) {
+                bytes -= estimate(slots[start]);
+            } else {
+                size++;
+            }
+            slots[start] = message;
+            bytes += estimate(message);
+        }
+
+        // پیام‌های قدیمی‌تر یک خانه جلو می‌آیند؛ انتهای بافر خالی می‌ماند
+        void removeAt(int index) {
+            bytes -= estimate(get(index));
+            for (int i = index; i < size - 1; i++) {
+                slots[(start + i) % slots.length] = get(i + 1);
+            }
+            slots[(start + size - 1) % slots.length] = null;
+            size--;
+        }
+
+        int indexOf(Long id) {
+            for (int i = 0; i < size; i++) {
+                if (get(i).getId().equals(id)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        boolean quotes(Long id) {
+            for (int i = 0; i < size; i++) {
+                if (id.equals(get(i).getParentMessageId())) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        List<MessageDto> newest(int count) {
+            List<MessageDto> content = new ArrayList<>(Math.min(count, size));
+            for (int i = 0; i < size && i < count; i++) {
+                content.add(get(i));
+            }
+            return content;
+        }
+
+        // حجم تقریبی یک DTO در heap: فیلدهای ثابت به اضافه دو بایت برای هر کاراکتر رشته‌ها
+        private static long estimate(MessageDto message) {
+            if (message == null) {
+                return 0;
+            }
+            long size = 200 + 2L * (length(message.getSender()) + length(message.getSenderFarsiTitle())
+                    + length(message.getRecipient()) + length(message.getRecipientFarsiTitle())
+                    + length(message.getSubject()) + length(message.getMessage()) + length(message.getCreateUser())
+                    + length(message.getModifyUser()) + length(message.getPriority()) + length(message.getNationalCode())
+                    + length(message.getRecipients()) + length(message.getMessageStatus()) + length(message.getRoomId()));
+            MessageDto parent = message.getParentMessage();
+            if (parent != null) {
+                size += 120 + 2L * (length(parent.getSender()) + length(parent.getSenderFarsiTitle())
+                        + length(parent.getMessage()));
+            }
+            return size;
+        }
+
+        private static int length(String value) {
+            return value != null ? value.length() : 0;
+        }
+    }
+}
@@ -1,236 +1,189 @@
 package ir.iau.library.service;
 
-import com.fasterxml.jackson.databind.exc.InvalidFormatException;
-import ir.iau.library.dto.BookFilterDto;
-import ir.iau.library.dto.PersonFilterDto;
-import ir.iau.library.entity.Book;
-import ir.iau.library.entity.Person;
-import ir.iau.library.repository.BookRepository;
-import ir.iau.library.repository.PersonRepository;
-import ir.iau.library.specification.DuplicateFieldException;
-import jakarta.transaction.Transactional;
-import org.apache.poi.ss.usermodel.*;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import ir.iau.library.dto.ImportRowError;
+import ir.iau.library.entity.ImportJobType;
+import ir.iau.library.importer.*;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Service;
-import org.springframework.web.multipart.MultipartFile;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.io.File;
 import java.io.IOException;
-import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Comparator;
 import java.util.List;
-
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * ورود کتاب‌ها و اعضا از فایل اکسل.
+ * <p>
+ * هر import یک pipeline سه مرحله‌ای است: یک thread فایل را به صورت جریانی می‌خواند و ردیف‌ها را دسته می‌کند،
+ * تبدیل و اعتبارسنجی دسته‌ها به صورت موازی روی {@code app.import.parse-threads} thread انجام می‌شود و thread فراخواننده
+ * به‌تنهایی دسته‌ها را به ترتیب فایل ذخیره می‌کند (هر دسته یک تراکنش). بین مراحل حداکثر
+ * {@code 2 × parse-threads} دسته در جریان است؛ اگر ذخیره عقب بماند خواندن فایل متوقف می‌شود.
+ */
 @Service
 public class ExcelImportService {
 
-    private final BookRepository bookRepository;
-    private final PersonRepository personRepository;
-
-    @Autowired
-    public ExcelImportService(BookRepository bookRepository, PersonRepository personRepository) {
-        this.bookRepository = bookRepository;
-        this.personRepository = personRepository;
-    }
-
-    // متد اصلی برای خواندن فایل اکسل
-    @Transactional // عملیات ذخیره را در یک تراکنش قرار می‌دهد
-    public List<BookFilterDto> importBooksFromExcel(MultipartFile file) throws IOException {
-        List<BookFilterDto> bookDtos = new ArrayList<>();
-        List<Book> booksToSave = new ArrayList<>();
-        DataFormatter dataFormatter = new DataFormatter(); // برای تبدیل انواع داده به رشته
-
-        try (Workbook workbook = new XSSFWorkbook(file.getInputStream())) {
-            Sheet sheet = workbook.getSheetAt(0);
-            Iterator<Row> rowIterator = sheet.iterator();
+    private final BookImportHandler bookImportHandler;
+    private final PersonImportHandler personImportHandler;
+    private final TransactionTemplate transactionTemplate;
+    private final ThreadPoolTaskExecutor parseExecutor = new ThreadPoolTaskExecutor();
+    private final SimpleAsyncTaskExecutor readerExecutor = new SimpleAsyncTaskExecutor("excel-import-reader-");
 
-            // از روی هدر رد شو
-            if (rowIterator.hasNext()) {
-                rowIterator.next();
-            }
+    @PersistenceContext
+    private EntityManager entityManager;
 
-            while (rowIterator.hasNext()) {
-                Row row = rowIterator.next();
+    @Value("${app.import.batch-size:500}")
+    private int batchSize;
 
-                // اگر ردیف خالی بود، از آن عبور کن
-                if (isRowEmpty(row)) {
-                    continue;
-                }
+    @Value("${app.import.parse-threads:0}") // 0 یعنی تعداد هسته‌ها
+    private int parseThreads;
 
-                BookFilterDto bookDto = new BookFilterDto();
-
-                // خواندن داده‌ها با استفاده از متد کمکی امن
-                bookDto.setIsbn10(getCellValueAsString(row.getCell(0), dataFormatter));
-                bookDto.setTitle(getCellValueAsString(row.getCell(1), dataFormatter));
-                bookDto.setAuthor(getCellValueAsString(row.getCell(2), dataFormatter));
-                bookDto.setTranslator(getCellValueAsString(row.getCell(3), dataFormatter));
-                bookDto.setDescription(getCellValueAsString(row.getCell(4), dataFormatter));
-                bookDto.setPublisher(getCellValueAsString(row.getCell(5), dataFormatter));
-                bookDto.setIsbn13(getCellValueAsString(row.getCell(6), dataFormatter));
-                bookDto.setDeweyDecimal(getCellValueAsString(row.getCell(7), dataFormatter));
-                bookDto.setCongressClassification(getCellValueAsString(row.getCell(8), dataFormatter));
-                bookDto.setSubject(getCellValueAsString(row.getCell(9), dataFormatter));
-                bookDto.setSummary(getCellValueAsString(row.getCell(10), dataFormatter));
-
-                // مدیریت امن تاریخ، اعداد و مقادیر بولی
-                String publicationDateStr = getCellValueAsString(row.getCell(11), dataFormatter);
-                if (publicationDateStr != null && !publicationDateStr.isEmpty()) {
-                    try {
-                        // فرمت‌های مختلف تاریخ را امتحان کنید
-                        bookDto.setPublicationDate(LocalDate.parse(publicationDateStr, DateTimeFormatter.ISO_LOCAL_DATE)); // YYYY-MM-DD
-                    } catch (Exception e) {
-                        // اینجا می‌توانید لاگ بزنید یا فرمت دیگری را امتحان کنید
-                        System.err.println("Could not parse date: " + publicationDateStr + " at row " + row.getRowNum());
-                    }
-                }
+    @Autowired
+    public ExcelImportService(BookImportHandler bookImportHandler, PersonImportHandler personImportHandler,
+                              PlatformTransactionManager transactionManager) {
+        this.bookImportHandler = bookImportHandler;
+        this.personImportHandler = personImportHandler;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
 
-                String pageCountStr = getCellValueAsString(row.getCell(12), dataFormatter);
-                if (pageCountStr != null && !pageCountStr.isEmpty()) {
-                    bookDto.setPageCount((int) Double.parseDouble(pageCountStr));
-                }
+    @PostConstruct
+    void init() {
+        if (parseThreads <= 0) {
+            parseThreads = Runtime.getRuntime().availableProcessors();
+        }
+        parseExecutor.setCorePoolSize(parseThreads);
+        parseExecutor.setMaxPoolSize(parseThreads);
+        parseExecutor.setThreadNamePrefix("excel-import-parse-");
+        parseExecutor.initialize();
+        readerExecutor.setDaemon(true);
+    }
 
-                bookDto.setLanguage(getCellValueAsString(row.getCell(13), dataFormatter));
-                bookDto.setEdition(getCellValueAsString(row.getCell(14), dataFormatter));
+    @PreDestroy
+    void shutdown() {
+        parseExecutor.shutdown();
+    }
 
-                String activeStr = getCellValueAsString(row.getCell(15), dataFormatter);
-                if (activeStr != null) {
-                    bookDto.setActive(activeStr.equalsIgnoreCase("TRUE") || activeStr.equalsIgnoreCase("فعال") || activeStr.equals("1"));
-                }
+    /**
+     * خواندن و ذخیره دسته‌ای فایل.
+     *
+     * @param skipRows تعداد ردیف‌هایی که در اجرای قبلی پردازش شده‌اند (برای ادامه import)
+     * @param listener پس از هر دسته، به ترتیب فایل و داخل تراکنش آن دسته صدا زده می‌شود
+     */
+    public void process(File file, ImportJobType type, long skipRows, ChunkListener listener) throws IOException {
+        if (type == ImportJobType.BOOKS) {
+            process(file, skipRows, bookImportHandler, listener);
+        } else {
+            process(file, skipRows, personImportHandler, listener);
+        }
+    }
 
-                String copyCountStr = getCellValueAsString(row.getCell(16), dataFormatter);
-                if (copyCountStr != null && !copyCountStr.isEmpty()) {
-                    bookDto.setCopyCount((int) Double.parseDouble(copyCountStr));
+    private <T> void process(File file, long skipRows, ImportHandler<T> handler, ChunkListener listener) throws IOException {
+        // دسته‌ها به ترتیب فایل در صف قرار می‌گیرند، پس ترتیب ذخیره و گزارش خطا حفظ می‌شود
+        BlockingQueue<Future<ParsedChunk<T>>> pending = new ArrayBlockingQueue<>(2 * parseThreads);
+        Future<ParsedChunk<T>> end = CompletableFuture.completedFuture(null);
+        AtomicBoolean cancelled = new AtomicBoolean();
+        Future<?> reader = readerExecutor.submit(() -> {
+            try {
+                List<SpreadsheetRow> chunk = new ArrayList<>(batchSize);
+                SpreadsheetReader.read(file, skipRows, row -> {
+                    chunk.add(row);
+                    if (chunk.size() == batchSize) {
+                        List<SpreadsheetRow> rows = List.copyOf(chunk);
+                        enqueue(pending, parseExecutor.submit(() -> parse(rows, handler)), cancelled);
+                        chunk.clear();
+                    }
+                });
+                if (!chunk.isEmpty()) {
+                    List<SpreadsheetRow> rows = List.copyOf(chunk);
+                    enqueue(pending, parseExecutor.submit(() -> parse(rows, handler)), cancelled);
                 }
-
-                bookDto.setLibrarySection(getCellValueAsString(row.getCell(17), dataFormatter));
-                bookDto.setShelfCode(getCellValueAsString(row.getCell(18), dataFormatter));
-                bookDto.setRowNumbers(getCellValueAsString(row.getCell(19), dataFormatter));
-                bookDto.setColumnNumber(getCellValueAsString(row.getCell(20), dataFormatter));
-                bookDto.setPositionNote(getCellValueAsString(row.getCell(21), dataFormatter));
-
-                bookDtos.add(bookDto);
-                booksToSave.add(new Book(bookDto));
+            } finally {
+                enqueue(pending, end, cancelled);
+            }
+            return null;
+        });
+        try {
+            for (Future<ParsedChunk<T>> next = pending.take(); next != end; next = pending.take()) {
+                writeChunk(await(next), handler, listener);
+            }
+            await(reader);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Import interrupted", e);
+        } finally {
+            if (cancelled.compareAndSet(false, true)) {
+                pending.forEach(future -> future.cancel(true));
+                pending.clear();
             }
         }
+    }
 
-        // ذخیره تمام کتاب‌ها به صورت یکجا برای بهینگی
-        if (!booksToSave.isEmpty()) {
-            bookRepository.saveAll(booksToSave);
+    private static <T> ParsedChunk<T> parse(List<SpreadsheetRow> rows, ImportHandler<T> handler) {
+        List<ImportRowError> errors = new ArrayList<>();
+        List<ParsedRow<T>> parsed = new ArrayList<>(rows.size());
+        for (SpreadsheetRow row : rows) {
+            try {
+                parsed.add(new ParsedRow<>(row.rowNumber(), handler.parse(row)));
+            } catch (IllegalArgumentException e) {
+                errors.add(new ImportRowError(row.rowNumber(), e.getMessage()));
+            }
         }
-
-        return bookDtos;
+        return new ParsedChunk<>(rows.size(), parsed, errors);
     }
 
-    /**
-     * متد کمکی برای خواندن امن مقدار یک سلول به صورت رشته.
-     * این متد از NullPointerException جلوگیری کرده و انواع داده مختلف را مدیریت می‌کند.
-     */
-    private String getCellValueAsString(Cell cell, DataFormatter dataFormatter) {
-        if (cell == null) {
-            return null; // یا "" اگر می‌خواهید رشته خالی برگردد
-        }
-        // از DataFormatter برای تبدیل امن هر نوع داده به رشته استفاده می‌کنیم
-        return dataFormatter.formatCellValue(cell).trim();
+    private <T> void writeChunk(ParsedChunk<T> chunk, ImportHandler<T> handler, ChunkListener listener) {
+        transactionTemplate.executeWithoutResult(status -> {
+            List<ImportRowError> errors = new ArrayList<>(chunk.errors());
+            int imported = handler.write(chunk.parsed(), errors);
+            errors.sort(Comparator.comparingInt(ImportRowError::getRowNumber));
+            listener.onChunk(new ChunkResult(chunk.rows(), imported, errors));
+            entityManager.flush();
+            entityManager.clear();
+        });
     }
 
     /**
-     * بررسی می‌کند که آیا یک ردیف کاملاً خالی است یا خیر.
+     * قرار دادن در صف با انتظار (backpressure)؛ اگر ذخیره متوقف شده باشد خواندن فایل لغو می‌شود.
      */
-    private boolean isRowEmpty(Row row) {
-        if (row == null) {
-            return true;
-        }
-        if (row.getLastCellNum() <= 0) {
-            return true;
-        }
-        for (int cellNum = row.getFirstCellNum(); cellNum < row.getLastCellNum(); cellNum++) {
-            Cell cell = row.getCell(cellNum);
-            if (cell != null && cell.getCellType() != CellType.BLANK && !getCellValueAsString(cell, new DataFormatter()).isEmpty()) {
-                return false;
+    private static <T> void enqueue(BlockingQueue<Future<T>> queue, Future<T> future, AtomicBoolean cancelled) {
+        try {
+            while (!queue.offer(future, 100, TimeUnit.MILLISECONDS)) {
+                if (cancelled.get()) {
+                    future.cancel(true);
+                    throw new CancellationException("Import cancelled");
+                }
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Import cancelled");
         }
-        return true;
     }
 
-
-
-    @Transactional // عملیات ذخیره را در یک تراکنش قرار می‌دهد
-    public List<PersonFilterDto> importPersonsFromExcel(MultipartFile file) throws IOException, InvalidFormatException {
-        List<PersonFilterDto> personDtos = new ArrayList<>();
-        DataFormatter dataFormatter = new DataFormatter(); // برای تبدیل انواع داده به رشته
-
-        try (Workbook workbook = new XSSFWorkbook(file.getInputStream())) {
-            Sheet sheet = workbook.getSheetAt(0);
-            Iterator<Row> rowIterator = sheet.iterator();
-
-            while (rowIterator.hasNext()) {
-                Row row = rowIterator.next();
-                if (row.getRowNum() == 0) continue;  // Skip header row
-
-                // Read data from each cell and convert to DTO
-                PersonFilterDto personDto = new PersonFilterDto();
-                personDto.setFirstName(getCellValueAsString(row.getCell(0), dataFormatter));
-                personDto.setLastName(getCellValueAsString(row.getCell(1), dataFormatter));
-                personDto.setEmail(getCellValueAsString(row.getCell(2), dataFormatter));
-                personDto.setPhone(getCellValueAsString(row.getCell(3), dataFormatter));
-                personDto.setNationalId(getCellValueAsString(row.getCell(4), dataFormatter));
-                personDto.setMembershipType(getCellValueAsString(row.getCell(5), dataFormatter));
-                personDto.setAddress(getCellValueAsString(row.getCell(6), dataFormatter));
-                String activeStr = getCellValueAsString(row.getCell(7), dataFormatter);
-
-                // Check for duplicate fields
-                if (personRepository.existsByEmail(personDto.getEmail())) {
-                    throw new DuplicateFieldException("Email", personDto.getEmail());
-                }
-
-                if (personRepository.existsByNationalId(personDto.getNationalId())) {
-                    throw new DuplicateFieldException("National ID", personDto.getNationalId());
-                }
-                if (activeStr != null) {
-                    personDto.setActive(activeStr.equalsIgnoreCase("TRUE") || activeStr.equalsIgnoreCase("فعال") || activeStr.equals("1"));
-                }
-                // Handle birthDate and membershipDate fields
-                String birthDateStr = getCellValueAsString(row.getCell(8), dataFormatter);
-                if (birthDateStr != null && !birthDateStr.isEmpty()) {
-                    try {
-                        personDto.setBirthDate(LocalDate.parse(birthDateStr, DateTimeFormatter.ISO_LOCAL_DATE)); // YYYY-MM-DD
-                    } catch (Exception e) {
-                        // Handle invalid date format, log it if necessary
-                        System.err.println("Could not parse birth date: " + birthDateStr + " at row " + row.getRowNum());
-                    }
-                }
-
-                String membershipDateFromStr = getCellValueAsString(row.getCell(9), dataFormatter);
-                if (membershipDateFromStr != null && !membershipDateFromStr.isEmpty()) {
-                    try {
-                        personDto.setMembershipDateFrom(LocalDate.parse(membershipDateFromStr, DateTimeFormatter.ISO_LOCAL_DATE)); // YYYY-MM-DD
-                    } catch (Exception e) {
-                        // Handle invalid date format, log it if necessary
-                        System.err.println("Could not parse membership date from: " + membershipDateFromStr + " at row " + row.getRowNum());
-                    }
-                }
-
-                String membershipDateToStr = getCellValueAsString(row.getCell(10), dataFormatter);
-                if (membershipDateToStr != null && !membershipDateToStr.isEmpty()) {
-                    try {
-                        personDto.setMembershipDateTo(LocalDate.parse(membershipDateToStr, DateTimeFormatter.ISO_LOCAL_DATE)); // YYYY-MM-DD
-                    } catch (Exception e) {
-                        // Handle invalid date format, log it if necessary
-                        System.err.println("Could not parse membership date to: " + membershipDateToStr + " at row " + row.getRowNum());
-                    }
-                }
-
-                // Add DTO to the list
-                personDtos.add(personDto);
-
-                // Save to DB (if necessary)
-                Person person = new Person(personDto);
-                personRepository.save(person);
+    private static <T> T await(Future<T> future) throws IOException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
             }
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IllegalStateException(e.getCause());
         }
-
-        return personDtos;
     }
 
+    private record ParsedChunk<T>(int rows, List<ParsedRow<T>> parsed, List<ImportRowError> errors) {
+    }
 }
@@ -0,0 +1,76 @@
+package ir.iau.library.service;
+
+import ir.iau.library.dto.BookFilterDto;
+import ir.iau.library.dto.BookLoanFilterDto;
+import ir.iau.library.dto.PersonFilterDto;
+import ir.iau.library.exporter.ExportFormat;
+import ir.iau.library.exporter.RowWriter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.OutputStream;
+
+/**
+ * خروجی اکسل/CSV کتاب‌ها، اعضا و امانت‌ها با همان فیلترهای فهرست‌ها.
+ * <p>
+ * ردیف‌ها با یک پرس‌وجوی forward-only (fetch size برابر {@code app.export.fetch-size}) خوانده و بلافاصله در خروجی
+ * نوشته می‌شوند، پس حافظه مصرفی به تعداد ردیف‌ها بستگی ندارد. ترتیب ستون‌های کتاب و عضو همان قالب فایل import است
+ * (شناسه و ستون‌های اضافه در انتها)، پس خروجی دوباره قابل import است.
+ */
+@Service
+@RequiredArgsConstructor
+public class ExportService {
+
+    private static final String[] BOOK_COLUMNS = {
+            "ISBN-10", "Title", "Author", "Translator", "Description", "Publisher", "ISBN-13", "Dewey Decimal",
+            "Congress Classification", "Subject", "Summary", "Publication Date", "Page Count", "Language", "Edition",
+            "Active", "Copy Count", "Library Section", "Shelf Code", "Row Numbers", "Column Number", "Position Note",
+            "ID", "Has Cover"};
+
+    private static final String[] PERSON_COLUMNS = {
+            "First Name", "Last Name", "Email", "Phone", "National ID", "Membership Type", "Address", "Active",
+            "Birth Date", "Membership Date", "ID", "Notes", "Has Profile Picture"};
+
+    private static final String[] LOAN_COLUMNS = {
+            "ID", "Loan Date", "Due Date", "Return Date", "Status", "Notes", "Person ID", "Person First Name",
+            "Person Last Name", "Book ID", "Book Title"};
+
+    private final BookService bookService;
+    private final PersonService personService;
+    private final BookLoanService bookLoanService;
+
+    @Value("${app.export.fetch-size:1000}")
+    private int fetchSize;
+
+    public void exportBooks(BookFilterDto filter, ExportFormat format, OutputStream out) {
+        try (RowWriter writer = format.open(out, "books", BOOK_COLUMNS)) {
+            bookService.streamFiltered(filter, fetchSize, book -> writer.row(
+                    book.getIsbn10(), book.getTitle(), book.getAuthor(), book.getTranslator(), book.getDescription(),
+                    book.getPublisher(), book.getIsbn13(), book.getDeweyDecimal(), book.getCongressClassification(),
+                    book.getSubject(), book.getSummary(), book.getPublicationDate(), book.getPageCount(),
+                    book.getLanguage(), book.getEdition(), book.getActive(), book.getCopyCount(),
+                    book.getLibrarySection(), book.getShelfCode(), book.getRowNumbers(), book.getColumnNumber(),
+                    book.getPositionNote(), book.getId(), book.getHasCover()));
+        }
+    }
+
+    public void exportPersons(PersonFilterDto filter, ExportFormat format, OutputStream out) {
+        try (RowWriter writer = format.open(out, "persons", PERSON_COLUMNS)) {
+            personService.streamFiltered(filter, fetchSize, person -> writer.row(
+                    person.getFirstName(), person.getLastName(), person.getEmail(), person.getPhone(),
+                    person.getNationalId(), person.getMembershipType(), person.getAddress(), person.getActive(),
+                    person.getBirthDate(), person.getMembershipDate(), person.getId(), person.getNotes(),
+                    person.getHasProfilePicture()));
+        }
+    }
+
+    public void exportLoans(BookLoanFilterDto filter, ExportFormat format, OutputStream out) {
+        try (RowWriter writer = format.open(out, "loans", LOAN_COLUMNS)) {
+            bookLoanService.streamFiltered(filter, fetchSize, loan -> writer.row(
+                    loan.getId(), loan.getLoanDate(), loan.getDueDate(), loan.getReturnDate(), loan.getStatus(),
+                    loan.getNotes(), loan.getPersonId(), loan.getPersonFirstName(), loan.getPersonLastName(),
+                    loan.getBookId(), loan.getBookTitle()));
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package ir.iau.library.service;
+
+import ir.iau.library.repository.ReservationRepository;
+import ir.iau.library.support.AfterCommit;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.*;
+
+/**
+ * صف FIFO درون حافظه از رزروهای ACTIVE (هنوز در انتظار) هر کتاب به ترتیب شناسه رزرو، تا «نوبت شما در صف» بدون
+ * پیمایش جدول جواب داده شود.
+ * <p>
+ * صف هنگام شروع برنامه از پایگاه داده ساخته می‌شود و {@link ReservationHoldService} و {@link ReservationService} آن را
+ * به‌روز نگه می‌دارند (افزودن درست پیش از commit و حذف بعد از آن). تا پایان ساخت، {@link #isReady()} برابر false است و
+ * فراخواننده‌ها باید از پایگاه داده استفاده کنند. تغییراتی که حین ساخت commit می‌شوند پس از پایان آن اعمال می‌شوند.
+ * <p>
+ * صف فقط برای نمایش است؛ اینکه نسخه برگشتی به منتظر صف برسد یا به قفسه برگردد همیشه از پایگاه داده و زیر قفل ردیف
+ * کتاب تعیین می‌شود.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class HoldQueue {
+
+    private final ReservationRepository reservationRepository;
+
+    @Value("${app.reservations.hold-queue.build-batch-size:5000}")
+    private int buildBatchSize;
+
+    // bookId -> شناسه رزروهای در انتظار، از کوچک‌ترین (قدیمی‌ترین)
+    private final Map<Long, NavigableSet<Long>> queues = new HashMap<>();
+    // reservationId -> bookId
+    private final Map<Long, Long> bookByReservation = new HashMap<>();
+    // reservationId -> bookId (افزوده) یا null (حذف‌شده)، برای تغییرات commit شده حین ساخت
+    private final Map<Long, Long> changedDuringBuild = new LinkedHashMap<>();
+    private volatile boolean ready;
+    private boolean building;
+
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        long start = System.currentTimeMillis();
+        synchronized (this) {
+            ready = false;
+            building = true;
+            changedDuringBuild.clear();
+            queues.clear();
+            bookByReservation.clear();
+        }
+        try {
+            long lastId = 0L;
+            List<Object[]> rows;
+            do {
+                rows = reservationRepository.findWaitingQueueEntries(lastId, PageRequest.ofSize(buildBatchSize));
+                synchronized (this) {
+                    for (Object[] row : rows) {
+                        lastId = (Long) row[0];
+                        add(lastId, (Long) row[1]);
+                    }
+                }
+            } while (rows.size() == buildBatchSize);
+            synchronized (this) {
+                changedDuringBuild.forEach((reservationId, bookId) -> {
+                    if (bookId == null) {
+                        remove(reservationId);
+                    } else {
+                        add(reservationId, bookId);
+                    }
+                });
+                ready = true;
+            }
+        } finally {
+            synchronized (this) {
+                building = false;
+                changedDuringBuild.clear();
+            }
+        }
+        log.info("Reservation hold queue built with {} waiting reservations in {} ms", bookByReservation.size(),
+                System.currentTimeMillis() - start);
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * نوبت (از ۱) یک رزرو در صف کتابش؛ اگر رزرو در انتظار نباشد (یا صف آماده نباشد) خالی.
+     */
+    public synchronized OptionalInt position(Long reservationId) {
+        Long bookId = bookByReservation.get(reservationId);
+        if (!ready || bookId == null) {
+            return OptionalInt.empty();
+        }
+        return OptionalInt.of(queues.get(bookId).headSet(reservationId, false).size() + 1);
+    }
+
+    public synchronized int length(Long bookId) {
+        NavigableSet<Long> queue = queues.get(bookId);
+        return queue == null ? 0 : queue.size();
+    }
+
+    /**
+     * رزرو تازه به جای بعد از commit، درست پیش از آن افزوده می‌شود (و در rollback دوباره برداشته می‌شود) تا نوبتی که
+     * بلافاصله پس از ثبت رزرو خوانده می‌شود آن را هم بشمارد.
+     */
+    public void addBeforeCommit(Long reservationId, Long bookId) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            apply(reservationId, bookId);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void beforeCommit(boolean readOnly) {
+                apply(reservationId, bookId);
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                if (status != STATUS_COMMITTED) {
+                    apply(reservationId, null);
+                }
+            }
+        });
+    }
+
+    public void removeAfterCommit(Long reservationId) {
+        AfterCommit.run(() -> apply(reservationId, null));
+    }
+
+    public void removeAfterCommit(Collection<Long> reservationIds) {
+        List<Long> ids = List.copyOf(reservationIds);
+        AfterCommit.run(() -> ids.forEach(id -> apply(id, null)));
+    }
+
+    private synchronized void apply(Long reservationId, Long bookId) {
+        if (building) {
+            changedDuringBuild.remove(reservationId);
+            changedDuringBuild.put(reservationId, bookId);
+        } else if (ready) {
+            if (bookId == null) {
+                remove(reservationId);
+            } else {
+                add(reservationId, bookId);
+            }
+        }
+    }
+
+    private void add(Long reservationId, Long bookId) {
+        bookByReservation.put(reservationId, bookId);
+        queues.computeIfAbsent(bookId, id -> new TreeSet<>()).add(reservationId);
+    }
+
+    private void remove(Long reservationId) {
+        Long bookId = bookByReservation.remove(reservationId);
+        if (bookId == null) {
+            return;
+        }
+        NavigableSet<Long> queue = queues.get(bookId);
+        queue.remove(reservationId);
+        if (queue.isEmpty()) {
+            queues.remove(bookId);
+        }
+    }
+}
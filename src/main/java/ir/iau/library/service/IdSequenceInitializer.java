@@ -0,0 +1,115 @@
+package ir.iau.library.service;
+
+import ir.iau.library.entity.BookLoan;
+import ir.iau.library.entity.Person;
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.Id;
+import jakarta.persistence.SequenceGenerator;
+import jakarta.persistence.Table;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * هم‌تراز کردن sequence های {@code person_seq} و {@code book_loan_seq} با ردیف‌های موجود.
+ * <p>
+ * شناسه این جدول‌ها قبلاً IDENTITY بود و {@code ddl-auto=update} sequence تازه را از ۱ می‌سازد، پس روی پایگاه داده‌ای
+ * که از قبل ردیف دارد اولین insert ها با کلید تکراری شکست می‌خورند. پیش از پذیرفتن درخواست‌ها (بعد از ساخته شدن
+ * schema) اگر بازه بعدی sequence به {@code max(id)} برسد، از {@code max(id) + allocationSize} ادامه می‌دهد تا کل
+ * بازه‌ای که optimizer pooled برمی‌دارد بالاتر از ردیف‌های موجود باشد. اجرای دوباره بی‌اثر است.
+ * <p>
+ * روی MySQL که sequence ندارد، Hibernate هر sequence را با جدولی هم‌نام و ستون {@code next_val} شبیه‌سازی می‌کند و
+ * همان ستون جابه‌جا می‌شود؛ sequence واقعی فقط روی H2 خوانده می‌شود. اگر هیچ‌کدام قابل بررسی نباشد برنامه بالا
+ * نمی‌آید، چون ادامه دادن یعنی خطای کلید تکراری در اولین درج‌ها.
+ */
+@Component
+@DependsOn("entityManagerFactory")
+@RequiredArgsConstructor
+@Slf4j
+public class IdSequenceInitializer {
+
+    private static final List<Class<?>> ENTITIES = List.of(Person.class, BookLoan.class);
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @PostConstruct
+    public void initialize() {
+        ENTITIES.forEach(this::align);
+    }
+
+    private void align(Class<?> entity) {
+        String table = entity.getAnnotation(Table.class).name();
+        SequenceGenerator generator = sequenceGenerator(entity);
+        String sequence = generator.sequenceName();
+        long increment = generator.allocationSize();
+        Long maxId = jdbcTemplate.queryForObject("SELECT MAX(id) FROM " + table, Long.class);
+        if (maxId == null) {
+            return;
+        }
+        // بازه بعدی (next - increment, next] است؛ اگر به ردیف‌های موجود برسد جابه‌جا می‌شود
+        long target = maxId + increment;
+        if (tableExists(sequence)) {
+            Long next = jdbcTemplate.queryForObject("SELECT MAX(next_val) FROM " + sequence, Long.class);
+            if (next == null || next - increment < maxId) {
+                jdbcTemplate.update("UPDATE " + sequence + " SET next_val = ?", target);
+                log.info("Moved table sequence {} to {} (max {}.id is {})", sequence, target, table, maxId);
+            }
+            return;
+        }
+        Long next;
+        try {
+            // H2 نام‌ها را با حروف بزرگ نگه می‌دارد
+            next = jdbcTemplate.queryForList("SELECT BASE_VALUE FROM INFORMATION_SCHEMA.SEQUENCES WHERE SEQUENCE_NAME = ?",
+                    Long.class, sequence.toUpperCase(Locale.ROOT)).stream().findFirst().orElse(null);
+        } catch (DataAccessException e) {
+            throw new IllegalStateException("Cannot check sequence " + sequence + " against " + table
+                    + ".id on this database; align it with max(id) + " + increment + " by hand", e);
+        }
+        if (next == null) {
+            throw new IllegalStateException("Sequence " + sequence + " for " + table + ".id was not found");
+        }
+        if (next - increment < maxId) {
+            jdbcTemplate.execute("ALTER SEQUENCE " + sequence + " RESTART WITH " + target);
+            log.info("Moved sequence {} to {} (max {}.id is {})", sequence, target, table, maxId);
+        }
+    }
+
+    private static SequenceGenerator sequenceGenerator(Class<?> entity) {
+        return Arrays.stream(entity.getDeclaredFields())
+                .filter(field -> field.isAnnotationPresent(Id.class) && field.isAnnotationPresent(SequenceGenerator.class))
+                .map(field -> field.getAnnotation(SequenceGenerator.class))
+                .findFirst()
+                .orElseThrow(() -> new IllegalStateException(entity.getSimpleName() + " has no sequence id"));
+    }
+
+    private boolean tableExists(String table) {
+        Boolean exists = jdbcTemplate.execute((ConnectionCallback<Boolean>) connection -> {
+            DatabaseMetaData metaData = connection.getMetaData();
+            // H2 نام‌ها را با حروف بزرگ و MySQL همان‌طور که ساخته شده‌اند نگه می‌دارد
+            for (String name : List.of(table, table.toUpperCase(Locale.ROOT))) {
+                if (hasTable(metaData, connection.getCatalog(), name)) {
+                    return true;
+                }
+            }
+            return false;
+        });
+        return Boolean.TRUE.equals(exists);
+    }
+
+    private static boolean hasTable(DatabaseMetaData metaData, String catalog, String table) throws SQLException {
+        try (ResultSet tables = metaData.getTables(catalog, null, table, new String[]{"TABLE"})) {
+            return tables.next();
+        }
+    }
+}
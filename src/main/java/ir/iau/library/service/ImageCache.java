@@ -0,0 +1,86 @@
+package ir.iau.library.service;
+
+import ir.iau.library.entity.ImageOwnerType;
+import ir.iau.library.entity.ImageSize;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Optional;
+
+/**
+ * کش LRU تصاویر (جلد کتاب، عکس پروفایل و اندازه‌های دیگر آن‌ها) که بایت‌هایشان در {@link ByteBuffer} های direct، یعنی
+ * بیرون از heap جاوا، نگه داشته می‌شود تا چند صد مگابایت تصویر پرکاربرد فشاری روی GC نیاورد.
+ * <p>
+ * اندازه کش با {@code app.images.cache.max-mb} محدود می‌شود و {@code -XX:MaxDirectMemorySize} در JVM باید دست‌کم همین
+ * اندازه باشد. تصویرهای بزرگ‌تر از یک‌چهارم این بودجه کش نمی‌شوند.
+ * <p>
+ * برای اینکه بایت‌هایی که درست پیش از یک تغییر خوانده شده‌اند کش نشوند، فراخواننده پیش از خواندن از پایگاه داده
+ * {@link #generation()} را می‌گیرد و به {@link #put} می‌دهد؛ هر حذفی در این فاصله put را بی‌اثر می‌کند.
+ */
+@Component
+public class ImageCache {
+
+    private final long maxBytes;
+    private final LinkedHashMap<Key, ImageContent> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private long usedBytes;
+    private long generation;
+
+    public ImageCache(@Value("${app.images.cache.max-mb:128}") long maxMb) {
+        this.maxBytes = maxMb * 1024 * 1024;
+    }
+
+    public synchronized Optional<ImageContent> get(ImageOwnerType ownerType, Long ownerId, ImageSize size) {
+        return Optional.ofNullable(entries.get(new Key(ownerType, ownerId, size)));
+    }
+
+    public boolean fits(long size) {
+        return size > 0 && size <= maxBytes / 4;
+    }
+
+    public synchronized long generation() {
+        return generation;
+    }
+
+    /**
+     * @param image          محتوایی که {@code data} آن بافر direct است؛ بین خواننده‌ها مشترک است و فقط باید از
+     *                       {@link ByteBuffer#duplicate()} آن خوانده شود
+     * @param readGeneration مقدار {@link #generation()} پیش از خواندن تصویر
+     */
+    public synchronized void put(ImageOwnerType ownerType, Long ownerId, ImageSize size, ImageContent image,
+                                 long readGeneration) {
+        if (readGeneration != generation || image.data() == null || !fits(image.size())) {
+            return;
+        }
+        Key key = new Key(ownerType, ownerId, size);
+        ImageContent previous = entries.remove(key);
+        if (previous != null) {
+            usedBytes -= previous.size();
+        }
+        Iterator<ImageContent> eldest = entries.values().iterator();
+        while (usedBytes + image.size() > maxBytes && eldest.hasNext()) {
+            usedBytes -= eldest.next().size();
+            eldest.remove();
+        }
+        entries.put(key, image);
+        usedBytes += image.size();
+    }
+
+    /**
+     * حذف همه اندازه‌های تصویر یک کتاب یا عضو (پس از تغییر یا حذف تصویر)
+     */
+    public synchronized void evict(ImageOwnerType ownerType, Long ownerId) {
+        generation++;
+        for (ImageSize size : ImageSize.values()) {
+            ImageContent removed = entries.remove(new Key(ownerType, ownerId, size));
+            if (removed != null) {
+                usedBytes -= removed.size();
+            }
+        }
+    }
+
+    private record Key(ImageOwnerType ownerType, Long ownerId, ImageSize size) {
+    }
+}
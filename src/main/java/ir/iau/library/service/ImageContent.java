@@ -0,0 +1,38 @@
+package ir.iau.library.service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * تصویر آماده نوشتن در پاسخ: یا در {@link ImageCache} بیرون از heap نگه داشته شده ({@code data})، یا برای تصویرهای
+ * بزرگ‌تر از اندازه کش، با {@link FileChannel#transferTo} مستقیم از فایل blob store فرستاده می‌شود تا هرگز در heap
+ * بارگذاری نشود.
+ *
+ * @param hash SHA-256 محتوا که ETag هم هست
+ */
+public record ImageContent(String hash, String contentType, long size, ByteBuffer data, Path file) {
+
+    public void writeTo(OutputStream out) throws IOException {
+        WritableByteChannel target = Channels.newChannel(out);
+        if (data != null) {
+            ByteBuffer buffer = data.duplicate();
+            while (buffer.hasRemaining()) {
+                target.write(buffer);
+            }
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long position = 0;
+            long length = channel.size();
+            while (position < length) {
+                position += channel.transferTo(position, length - position, target);
+            }
+        }
+    }
+}
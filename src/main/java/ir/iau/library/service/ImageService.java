@@ -0,0 +1,203 @@
+package ir.iau.library.service;
+
+import ir.iau.library.entity.ImageOwnerType;
+import ir.iau.library.entity.ImageSize;
+import ir.iau.library.entity.ImageVariant;
+import ir.iau.library.repository.ImageVariantRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+/**
+ * ساخت و ارائه اندازه‌های مختلف جلد کتاب و عکس پروفایل.
+ * <p>
+ * هنگام آپلود، نسخه‌های thumbnail و medium با ImageIO ساخته و مانند فایل اصلی در {@link BlobStore} ذخیره می‌شوند؛
+ * جدول image_variants فقط hash آن‌ها را نگه می‌دارد. تصاویر کوچک از طریق {@link ImageCache} (خارج از heap) و
+ * تصاویر بزرگ مستقیماً از فایل سرو می‌شوند.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ImageService {
+
+    private final ImageVariantRepository imageVariantRepository;
+    private final ImageCache imageCache;
+    private final BlobStore blobStore;
+
+    @Value("${app.images.thumbnail-size:160}") // بزرگ‌ترین ضلع بر حسب پیکسل
+    private int thumbnailSize;
+
+    @Value("${app.images.medium-size:480}")
+    private int mediumSize;
+
+    @Value("${app.images.jpeg-quality:0.85}")
+    private float jpegQuality;
+
+    /**
+     * نسخه‌های کوچک‌شده تصویر را دوباره می‌سازد و جایگزین نسخه‌های قبلی می‌کند.
+     *
+     * @param original فایل اصلی؛ null یعنی تصویر حذف شده و فقط نسخه‌های قبلی پاک می‌شوند
+     */
+    @Transactional
+    public void replaceVariants(ImageOwnerType ownerType, Long ownerId, byte[] original) {
+        imageVariantRepository.findBlobHashesByOwner(ownerType, ownerId).forEach(blobStore::release);
+        imageVariantRepository.deleteByOwner(ownerType, ownerId);
+        if (original != null && original.length > 0) {
+            BufferedImage source = decode(original);
+            if (source != null) {
+                imageVariantRepository.save(createVariant(ownerType, ownerId, ImageSize.THUMBNAIL, source, thumbnailSize));
+                imageVariantRepository.save(createVariant(ownerType, ownerId, ImageSize.MEDIUM, source, mediumSize));
+            } else {
+                // فرمت ناشناخته؛ برای همه اندازه‌ها فایل اصلی سرو می‌شود
+                log.warn("Could not decode image of {} {}; only the original will be served", ownerType, ownerId);
+            }
+        }
+        evictAfterCommit(ownerType, ownerId);
+    }
+
+    /**
+     * تصویر با اندازه خواسته شده؛ اگر نسخه آن هنوز ساخته نشده (مثلاً پیش از backfill) فایل اصلی برگردانده می‌شود.
+     *
+     * @param originalHash خواندن hash فایل اصلی از پایگاه داده، فقط در صورت نبودن در کش
+     */
+    @Transactional(readOnly = true)
+    public Optional<ImageContent> getImage(ImageOwnerType ownerType, Long ownerId, ImageSize size,
+                                           Supplier<Optional<String>> originalHash) {
+        Optional<ImageContent> cached = imageCache.get(ownerType, ownerId, size);
+        if (cached.isPresent()) {
+            return cached;
+        }
+        long generation = imageCache.generation();
+        Optional<String> hash = size == ImageSize.ORIGINAL
+                ? originalHash.get()
+                : imageVariantRepository.findBlobHash(ownerType, ownerId, size);
+        if (hash.isEmpty()) {
+            return size == ImageSize.ORIGINAL ? Optional.empty() : getImage(ownerType, ownerId, ImageSize.ORIGINAL, originalHash);
+        }
+        return blobStore.describe(hash.get()).map(blob -> {
+            if (!imageCache.fits(blob.getSize())) {
+                return new ImageContent(blob.getHash(), blob.getContentType(), blob.getSize(), null, blobStore.pathOf(blob.getHash()));
+            }
+            ImageContent image = new ImageContent(blob.getHash(), blob.getContentType(), blob.getSize(),
+                    blobStore.readDirect(blob.getHash()), null);
+            imageCache.put(ownerType, ownerId, size, image, generation);
+            return image;
+        });
+    }
+
+    private ImageVariant createVariant(ImageOwnerType ownerType, Long ownerId, ImageSize size,
+                                       BufferedImage source, int maxDimension) {
+        boolean alpha = source.getColorModel().hasAlpha();
+        BufferedImage resized = resize(source, maxDimension, alpha);
+        return ImageVariant.builder()
+                .ownerType(ownerType)
+                .ownerId(ownerId)
+                .imageSize(size)
+                .contentType(alpha ? "image/png" : "image/jpeg")
+                .width(resized.getWidth())
+                .height(resized.getHeight())
+                .blobHash(blobStore.put(alpha ? encodePng(resized) : encodeJpeg(resized)))
+                .build();
+    }
+
+    private static BufferedImage decode(byte[] data) {
+        try {
+            return ImageIO.read(new ByteArrayInputStream(data));
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * کوچک کردن مرحله‌ای (هر بار حداکثر نصف) تا کیفیت در کوچک‌سازی‌های زیاد با درون‌یابی دوخطی حفظ شود.
+     * تصاویری که از قبل کوچک‌تر هستند بزرگ نمی‌شوند.
+     */
+    private static BufferedImage resize(BufferedImage source, int maxDimension, boolean alpha) {
+        double scale = Math.min(1.0, (double) maxDimension / Math.max(source.getWidth(), source.getHeight()));
+        int targetWidth = Math.max(1, (int) Math.round(source.getWidth() * scale));
+        int targetHeight = Math.max(1, (int) Math.round(source.getHeight() * scale));
+        BufferedImage current = source;
+        int width = source.getWidth();
+        int height = source.getHeight();
+        do {
+            width = Math.max(targetWidth, width / 2);
+            height = Math.max(targetHeight, height / 2);
+            current = draw(current, width, height, alpha);
+        } while (width != targetWidth || height != targetHeight);
+        return current;
+    }
+
+    private static BufferedImage draw(BufferedImage source, int width, int height, boolean alpha) {
+        BufferedImage target = new BufferedImage(width, height, alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = target.createGraphics();
+        try {
+            if (!alpha) {
+                g.setColor(Color.WHITE);
+                g.fillRect(0, 0, width, height);
+            }
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.drawImage(source, 0, 0, width, height, null);
+        } finally {
+            g.dispose();
+        }
+        return target;
+    }
+
+    private byte[] encodeJpeg(BufferedImage image) {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ImageOutputStream output = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(output);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(jpegQuality);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not encode image variant", e);
+        } finally {
+            writer.dispose();
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] encodePng(BufferedImage image) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            ImageIO.write(image, "png", out);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not encode image variant", e);
+        }
+        return out.toByteArray();
+    }
+
+    private void evictAfterCommit(ImageOwnerType ownerType, Long ownerId) {
+        imageCache.evict(ownerType, ownerId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            // دوباره پس از commit، تا خواندن‌های هم‌زمان نسخه قدیمی را در کش نگذارند
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    imageCache.evict(ownerType, ownerId);
+                }
+            });
+        }
+    }
+}
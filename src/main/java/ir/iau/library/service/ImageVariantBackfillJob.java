@@ -0,0 +1,89 @@
+package ir.iau.library.service;
+
+import ir.iau.library.entity.ImageOwnerType;
+import ir.iau.library.repository.BookRepository;
+import ir.iau.library.repository.PersonRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * ساخت نسخه‌های thumbnail و medium برای جلدها و عکس‌هایی که پیش از وجود این قابلیت ذخیره شده‌اند.
+ * پیش از آن، تصاویر قدیمی که هنوز در ستون‌های BLOB هستند با {@link LegacyBlobMigrator} به blob store منتقل می‌شوند.
+ * <p>
+ * پس از بالا آمدن برنامه در پس‌زمینه اجرا می‌شود و ردیف‌ها را به ترتیب id و دسته‌ای پیمایش می‌کند؛ هر دسته
+ * تراکنش جداگانه دارد تا فقط تصاویر همان دسته در حافظه باشند. تا زمان ساخته شدن نسخه‌ها، فایل اصلی سرو می‌شود.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ImageVariantBackfillJob {
+
+    private final BookRepository bookRepository;
+    private final PersonRepository personRepository;
+    private final ImageService imageService;
+    private final BlobStore blobStore;
+    private final LegacyBlobMigrator legacyBlobMigrator;
+    private final PlatformTransactionManager transactionManager;
+
+    @Value("${app.images.backfill.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.images.backfill.batch-size:20}")
+    private int batchSize;
+
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfill() {
+        legacyBlobMigrator.migrate();
+        if (!enabled) {
+            return;
+        }
+        backfill(ImageOwnerType.BOOK_COVER, bookRepository::findIdsWithCoverWithoutVariants, bookRepository::findCoverHashById);
+        backfill(ImageOwnerType.PERSON_PICTURE, personRepository::findIdsWithPictureWithoutVariants,
+                personRepository::findProfilePictureHashById);
+    }
+
+    private void backfill(ImageOwnerType ownerType,
+                          BiFunction<Long, Pageable, List<Long>> pendingIds,
+                          Function<Long, Optional<String>> originalHash) {
+        long start = System.currentTimeMillis();
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        int processed = 0;
+        long lastId = 0L;
+        List<Long> ids;
+        do {
+            ids = pendingIds.apply(lastId, PageRequest.ofSize(batchSize));
+            if (ids.isEmpty()) {
+                break;
+            }
+            List<Long> batch = ids;
+            lastId = batch.get(batch.size() - 1);
+            try {
+                transaction.executeWithoutResult(status -> batch.forEach(id ->
+                        originalHash.apply(id).ifPresent(hash -> imageService.replaceVariants(ownerType, id, blobStore.read(hash)))));
+                processed += batch.size();
+            } catch (RuntimeException e) {
+                // مثلاً آپلود هم‌زمان تصویر جدید؛ در اجرای بعدی دوباره امتحان می‌شود
+                log.warn("Image variant backfill failed for {} batch ending at id {}: {}", ownerType, lastId, e.getMessage());
+            }
+        } while (ids.size() == batchSize);
+        if (processed > 0) {
+            log.info("Generated image variants for {} {} rows in {} ms", processed, ownerType,
+                    System.currentTimeMillis() - start);
+        }
+    }
+}
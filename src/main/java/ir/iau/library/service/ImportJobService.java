@@ -0,0 +1,318 @@
+package ir.iau.library.service;
+
+import ir.iau.library.dto.ImportJobDto;
+import ir.iau.library.dto.ImportResult;
+import ir.iau.library.dto.ImportRowError;
+import ir.iau.library.entity.ImportJob;
+import ir.iau.library.entity.ImportJobError;
+import ir.iau.library.entity.ImportJobStatus;
+import ir.iau.library.entity.ImportJobType;
+import ir.iau.library.importer.ChunkResult;
+import ir.iau.library.importer.SpreadsheetReader;
+import ir.iau.library.repository.ImportJobErrorRepository;
+import ir.iau.library.repository.ImportJobRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * اجرای import های اکسل در پس‌زمینه، با گزارش پیشرفت و امکان ادامه پس از خطا یا راه‌اندازی مجدد.
+ * <p>
+ * فایل آپلودشده در {@code app.import.jobs.dir} نگه داشته و job در صف یک thread pool محدود
+ * ({@code app.import.jobs.concurrency} / {@code queue-capacity}) قرار می‌گیرد؛ اگر صف پر باشد درخواست رد می‌شود.
+ * پیشرفت و خطاهای هر دسته در همان تراکنش ذخیره دسته ثبت می‌شوند، پس پس از توقف، ادامه job از اولین ردیف
+ * ذخیره‌نشده شروع می‌شود.
+ * <p>
+ * هر نود هر {@code app.import.jobs.heartbeat-interval} برای job های خودش heartbeat ثبت می‌کند؛ job نیمه‌کاره‌ای که
+ * {@code app.import.jobs.stale-after} از آخرین heartbeat آن گذشته (نودش خاموش شده یا از کار افتاده) متوقف‌شده علامت
+ * می‌خورد. پس راه‌اندازی یک نود job های در حال اجرای نودهای دیگر را خراب نمی‌کند.
+ * <p>
+ * thread pool عمداً bean نیست تا جای executor پیش‌فرض {@code @Async} را نگیرد.
+ */
+@Service
+@Slf4j
+public class ImportJobService {
+
+    private static final List<ImportJobStatus> UNFINISHED = List.of(ImportJobStatus.QUEUED, ImportJobStatus.RUNNING);
+
+    private final ImportJobRepository importJobRepository;
+    private final ImportJobErrorRepository importJobErrorRepository;
+    private final ExcelImportService excelImportService;
+    private final SchedulerLeaseService leaseService;
+    private final ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+
+    @Value("${app.import.jobs.dir:${user.home}/library-imports}")
+    private String jobsDir;
+
+    @Value("${app.import.jobs.concurrency:2}")
+    private int concurrency;
+
+    @Value("${app.import.jobs.queue-capacity:20}")
+    private int queueCapacity;
+
+    @Value("${app.import.max-reported-errors:1000}")
+    private int maxReportedErrors;
+
+    @Value("${app.import.jobs.stale-after:PT5M}")
+    private Duration staleAfter;
+
+    private Path root;
+
+    public ImportJobService(ImportJobRepository importJobRepository,
+                            ImportJobErrorRepository importJobErrorRepository,
+                            ExcelImportService excelImportService,
+                            SchedulerLeaseService leaseService) {
+        this.importJobRepository = importJobRepository;
+        this.importJobErrorRepository = importJobErrorRepository;
+        this.excelImportService = excelImportService;
+        this.leaseService = leaseService;
+    }
+
+    @PostConstruct
+    void init() throws IOException {
+        root = Paths.get(jobsDir).toAbsolutePath().normalize();
+        Files.createDirectories(root);
+        executor.setCorePoolSize(concurrency);
+        executor.setMaxPoolSize(concurrency);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("excel-import-");
+        executor.initialize();
+    }
+
+    /**
+     * heartbeat job های همین نود، و متوقف‌شده علامت زدن job هایی که نودشان دیگر heartbeat نمی‌دهد
+     */
+    @Scheduled(fixedDelayString = "${app.import.jobs.heartbeat-interval:PT30S}")
+    public void heartbeat() {
+        LocalDateTime now = LocalDateTime.now();
+        importJobRepository.heartbeat(leaseService.owner(), UNFINISHED, now);
+        int interrupted = importJobRepository.failStale(UNFINISHED, now.minus(staleAfter),
+                "Interrupted: the node running the import stopped", now);
+        if (interrupted > 0) {
+            log.warn("Marked {} interrupted import jobs as failed; they can be resumed", interrupted);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * @throws TaskRejectedException اگر صف import پر باشد؛ job ثبت می‌شود و بعداً قابل ادامه است
+     */
+    public ImportJobDto submit(ImportJobType type, MultipartFile file) throws IOException {
+        ImportJob job = create(type, file);
+        enqueue(job);
+        return toDto(job);
+    }
+
+    /**
+     * import هم‌زمان برای endpoint های قدیمی {@code /api/excel-import/books|persons}: همان job و همان صف محدود، ولی
+     * پاسخ پس از پایان job و به شکل {@link ImportResult} برمی‌گردد.
+     *
+     * @throws IllegalStateException اگر job ناموفق تمام شود (قابل ادامه با resume)
+     */
+    public ImportResult importAndWait(ImportJobType type, MultipartFile file) throws IOException, InterruptedException {
+        ImportJob job = create(type, file);
+        try {
+            enqueue(job).get();
+        } catch (ExecutionException e) {
+            // run خطاهایش را خودش در job ثبت می‌کند
+        }
+        ImportJob finished = importJobRepository.findById(job.getId()).orElseThrow();
+        if (finished.getStatus() != ImportJobStatus.COMPLETED) {
+            throw new IllegalStateException("Import job " + finished.getId() + " failed: " + finished.getErrorMessage());
+        }
+        return ImportResult.builder()
+                .totalRows(finished.getProcessedRows())
+                .imported(finished.getImportedRows())
+                .failed(finished.getFailedRows())
+                .errors(getErrors(finished.getId(), PageRequest.of(0, Math.max(maxReportedErrors, 1))).getContent())
+                .durationMs(Duration.between(finished.getStartedAt(), finished.getFinishedAt()).toMillis())
+                .build();
+    }
+
+    private ImportJob create(ImportJobType type, MultipartFile file) throws IOException {
+        ImportJob job = importJobRepository.save(ImportJob.builder()
+                .type(type)
+                .status(ImportJobStatus.QUEUED)
+                .originalFileName(file.getOriginalFilename())
+                .build());
+        Path path = root.resolve(job.getId() + ".xlsx");
+        try {
+            file.transferTo(path);
+        } catch (IOException e) {
+            importJobRepository.delete(job);
+            throw e;
+        }
+        job.setFilePath(path.toString());
+        return importJobRepository.save(job);
+    }
+
+    /**
+     * ادامه یک job متوقف‌شده از آخرین checkpoint
+     */
+    public Optional<ImportJobDto> resume(Long id) {
+        return importJobRepository.findById(id).map(job -> {
+            if (job.getStatus() != ImportJobStatus.FAILED) {
+                throw new IllegalArgumentException("Only failed import jobs can be resumed; job " + id + " is " + job.getStatus());
+            }
+            if (job.getFilePath() == null || !Files.exists(Paths.get(job.getFilePath()))) {
+                throw new IllegalArgumentException("The uploaded file of import job " + id + " is no longer available");
+            }
+            job.setStatus(ImportJobStatus.QUEUED);
+            job.setErrorMessage(null);
+            job.setFinishedAt(null);
+            ImportJob queued = importJobRepository.save(job);
+            enqueue(queued);
+            return toDto(queued);
+        });
+    }
+
+    public Optional<ImportJobDto> getJob(Long id) {
+        return importJobRepository.findById(id).map(this::toDto);
+    }
+
+    public Page<ImportJobDto> getJobs(Pageable pageable) {
+        return importJobRepository.findAll(pageable).map(this::toDto);
+    }
+
+    public Page<ImportRowError> getErrors(Long id, Pageable pageable) {
+        return importJobErrorRepository.findByJobIdOrderByRowNumber(id, pageable)
+                .map(error -> new ImportRowError(error.getRowNumber(), error.getMessage()));
+    }
+
+    private Future<?> enqueue(ImportJob job) {
+        job.setOwner(leaseService.owner());
+        job.setHeartbeatAt(LocalDateTime.now());
+        importJobRepository.save(job);
+        try {
+            return executor.submit(() -> run(job.getId()));
+        } catch (TaskRejectedException e) {
+            job.setStatus(ImportJobStatus.FAILED);
+            job.setErrorMessage("Import queue is full");
+            job.setFinishedAt(LocalDateTime.now());
+            importJobRepository.save(job);
+            throw e;
+        }
+    }
+
+    private void run(Long id) {
+        ImportJob job = importJobRepository.findById(id).orElseThrow();
+        try {
+            File file = new File(job.getFilePath());
+            LocalDateTime now = LocalDateTime.now();
+            job.setStatus(ImportJobStatus.RUNNING);
+            job.setStartedAt(job.getStartedAt() != null ? job.getStartedAt() : now);
+            job.setRunStartedAt(now);
+            job.setRunStartProcessedRows(job.getProcessedRows());
+            job = importJobRepository.save(job);
+            if (job.getTotalRows() == null) {
+                job.setTotalRows(SpreadsheetReader.count(file));
+                job = importJobRepository.save(job);
+            }
+
+            excelImportService.process(file, job.getType(), job.getProcessedRows(), chunk -> checkpoint(id, chunk));
+
+            job = importJobRepository.findById(id).orElseThrow();
+            job.setStatus(ImportJobStatus.COMPLETED);
+            job.setFinishedAt(LocalDateTime.now());
+            job.setFilePath(null);
+            importJobRepository.save(job);
+            Files.deleteIfExists(file.toPath());
+            log.info("Import job {} completed: {} imported, {} failed", id, job.getImportedRows(), job.getFailedRows());
+        } catch (Exception e) {
+            log.warn("Import job {} failed: {}", id, e.getMessage(), e);
+            importJobRepository.findById(id).ifPresent(failed -> {
+                failed.setStatus(ImportJobStatus.FAILED);
+                failed.setErrorMessage(abbreviate(String.valueOf(e.getMessage())));
+                failed.setFinishedAt(LocalDateTime.now());
+                importJobRepository.save(failed);
+            });
+        }
+    }
+
+    /**
+     * داخل تراکنش دسته اجرا می‌شود
+     */
+    private void checkpoint(Long id, ChunkResult chunk) {
+        ImportJob job = importJobRepository.findById(id).orElseThrow();
+        int room = (int) (maxReportedErrors - Math.min(job.getFailedRows(), maxReportedErrors));
+        importJobErrorRepository.saveAll(chunk.errors().stream()
+                .limit(room)
+                .map(error -> ImportJobError.builder()
+                        .jobId(id)
+                        .rowNumber(error.getRowNumber())
+                        .message(error.getMessage())
+                        .build())
+                .toList());
+        job.setHeartbeatAt(LocalDateTime.now());
+        job.setProcessedRows(job.getProcessedRows() + chunk.rows());
+        job.setImportedRows(job.getImportedRows() + chunk.imported());
+        job.setFailedRows(job.getFailedRows() + chunk.errors().size());
+    }
+
+    private static String abbreviate(String message) {
+        return message.length() <= 2000 ? message : message.substring(0, 2000);
+    }
+
+    private ImportJobDto toDto(ImportJob job) {
+        Double percent = null;
+        Double rowsPerSecond = null;
+        Long etaSeconds = null;
+        if (job.getTotalRows() != null) {
+            percent = job.getTotalRows() == 0 ? 100.0 : 100.0 * job.getProcessedRows() / job.getTotalRows();
+        }
+        if (job.getRunStartedAt() != null) {
+            LocalDateTime end = job.getStatus() == ImportJobStatus.RUNNING || job.getFinishedAt() == null
+                    ? LocalDateTime.now() : job.getFinishedAt();
+            long millis = Duration.between(job.getRunStartedAt(), end).toMillis();
+            long rows = job.getProcessedRows() - job.getRunStartProcessedRows();
+            if (millis > 0) {
+                rowsPerSecond = rows * 1000.0 / millis;
+            }
+            if (job.getStatus() == ImportJobStatus.RUNNING && job.getTotalRows() != null && rows > 0) {
+                etaSeconds = (long) Math.ceil((job.getTotalRows() - job.getProcessedRows()) * (double) millis / rows / 1000);
+            }
+        }
+        return ImportJobDto.builder()
+                .id(job.getId())
+                .type(job.getType())
+                .status(job.getStatus())
+                .fileName(job.getOriginalFileName())
+                .totalRows(job.getTotalRows())
+                .processedRows(job.getProcessedRows())
+                .importedRows(job.getImportedRows())
+                .failedRows(job.getFailedRows())
+                .percent(percent)
+                .rowsPerSecond(rowsPerSecond)
+                .etaSeconds(etaSeconds)
+                .errorMessage(job.getErrorMessage())
+                .createDate(job.getCreateDate())
+                .startedAt(job.getStartedAt())
+                .finishedAt(job.getFinishedAt())
+                .build();
+    }
+}
@@ -0,0 +1,113 @@
+package ir.iau.library.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * انتقال تصاویری که هنوز در ستون‌های BLOB قدیمی ({@code books.book_cover_file} و {@code person.profile_picture})
+ * هستند به {@link BlobStore}.
+ * <p>
+ * این ستون‌ها دیگر در موجودیت‌ها نگاشت نشده‌اند ولی {@code ddl-auto=update} آن‌ها را حذف نمی‌کند، پس با SQL خام و
+ * به صورت دسته‌ای (هر دسته یک تراکنش) خوانده می‌شوند؛ برای هر ردیف hash در ستون جدید نوشته و BLOB قدیمی null می‌شود.
+ * اجرای دوباره بی‌خطر است. با {@code app.blob.migration.clear-audit-blobs=true} نسخه‌های BLOB در جدول‌های audit هم
+ * پاک می‌شوند (تاریخچه تصویر آن نسخه‌ها از دست می‌رود).
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class LegacyBlobMigrator {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final BlobStore blobStore;
+    private final PlatformTransactionManager transactionManager;
+
+    @Value("${app.blob.migration.batch-size:50}")
+    private int batchSize;
+
+    @Value("${app.blob.migration.clear-audit-blobs:false}")
+    private boolean clearAuditBlobs;
+
+    public void migrate() {
+        migrate("books", "book_cover_file", "cover_hash");
+        migrate("person", "profile_picture", "profile_picture_hash");
+    }
+
+    private void migrate(String table, String blobColumn, String hashColumn) {
+        if (!columnExists(table, blobColumn)) {
+            return;
+        }
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        int migrated = 0;
+        long lastId = 0L;
+        List<Map<String, Object>> rows;
+        do {
+            rows = jdbcTemplate.queryForList("SELECT id, " + blobColumn + " AS data FROM " + table
+                    + " WHERE id > ? AND " + blobColumn + " IS NOT NULL AND " + hashColumn + " IS NULL ORDER BY id LIMIT ?",
+                    lastId, batchSize);
+            if (rows.isEmpty()) {
+                break;
+            }
+            List<Map<String, Object>> batch = rows;
+            lastId = ((Number) batch.get(batch.size() - 1).get("id")).longValue();
+            Integer count = transaction.execute(status -> {
+                int updated = 0;
+                for (Map<String, Object> row : batch) {
+                    String hash = blobStore.put((byte[]) row.get("data"));
+                    // اگر در این فاصله تصویر جدیدی آپلود شده باشد، hash آن حفظ و ارجاع اضافی برگردانده می‌شود
+                    if (jdbcTemplate.update("UPDATE " + table + " SET " + hashColumn + " = ?, " + blobColumn
+                            + " = NULL WHERE id = ? AND " + hashColumn + " IS NULL", hash, row.get("id")) == 1) {
+                        updated++;
+                    } else {
+                        blobStore.release(hash);
+                    }
+                }
+                return updated;
+            });
+            migrated += count != null ? count : 0;
+        } while (rows.size() == batchSize);
+        // ردیف‌هایی که hash دارند ولی BLOB قدیمی‌شان هنوز پاک نشده
+        jdbcTemplate.update("UPDATE " + table + " SET " + blobColumn + " = NULL WHERE "
+                + blobColumn + " IS NOT NULL AND " + hashColumn + " IS NOT NULL");
+        if (clearAuditBlobs && columnExists(table + "_AUD", blobColumn)) {
+            int cleared = jdbcTemplate.update("UPDATE " + table + "_AUD SET " + blobColumn + " = NULL WHERE "
+                    + blobColumn + " IS NOT NULL");
+            log.info("Cleared {} legacy image blobs from {}_AUD", cleared, table);
+        }
+        if (migrated > 0) {
+            log.info("Moved {} legacy images from {}.{} to the blob store", migrated, table, blobColumn);
+        }
+    }
+
+    private boolean columnExists(String table, String column) {
+        Boolean exists = jdbcTemplate.execute((ConnectionCallback<Boolean>) connection -> {
+            DatabaseMetaData metaData = connection.getMetaData();
+            // H2 نام‌ها را با حروف بزرگ و MySQL همان‌طور که ساخته شده‌اند نگه می‌دارد
+            for (String name : List.of(table, table.toUpperCase(Locale.ROOT), table.toLowerCase(Locale.ROOT))) {
+                if (hasColumn(metaData, name, column) || hasColumn(metaData, name, column.toUpperCase(Locale.ROOT))) {
+                    return true;
+                }
+            }
+            return false;
+        });
+        return Boolean.TRUE.equals(exists);
+    }
+
+    private static boolean hasColumn(DatabaseMetaData metaData, String table, String column) throws SQLException {
+        try (ResultSet columns = metaData.getColumns(null, null, table, column)) {
+            return columns.next();
+        }
+    }
+}
@@ -4,18 +4,27 @@ import ir.iau.library.dto.*;
 import ir.iau.library.entity.Message;
 import ir.iau.library.repository.MessageRepository;
 import ir.iau.library.repository.UserRepository;
+import ir.iau.library.search.Bm25Index;
+import ir.iau.library.search.MessageSearchIndex;
+import ir.iau.library.search.TextNormalizer;
+import ir.iau.library.specification.KeysetSpecification;
+import ir.iau.library.specification.MessageSpecification;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.time.LocalDate; // <--- این import اضافه شده
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
@@ -26,6 +35,15 @@ public class MessageService {
     private final MessageRepository messageRepository;
     private final UserRepository userRepository;
     private final MessageMapper messageMapper;
+    private final MessageStatsStore messageStatsStore;
+    private final ConversationKeyBackfill conversationKeyBackfill;
+    private final ConversationTailCache conversationTailCache;
+    private final MessageSearchIndex messageSearchIndex;
+    private final TextNormalizer textNormalizer;
+
+    private static final Sort.Order CONVERSATION_ORDER = Sort.Order.desc("createDate");
+    // cursor خالی: از جدیدترین پیام
+    private static final LocalDateTime LATEST = LocalDateTime.of(9999, 12, 31, 0, 0);
 
     /**
      * دریافت پیام‌های مکال-مه بین دو کاربر
@@ -36,6 +54,8 @@ public class MessageService {
      * - page: شماره صفحه (پیش‌فرض: 0)
      * - size: تعداد آیتم در هر صفحه (پیش‌فرض: 15)
      * <p>
+     * صفحه اول با size تا {@code app.messages.tail-cache.size} از {@link ConversationTailCache} و بدون کوئری پاسخ داده می‌شود.
+     * <p>
      * خروجی: ApiResponse<Page<MessageDto>>
      * - success: وضعیت موفقیت
      * - data: صفحه‌بندی شده از پیام‌ها
@@ -47,9 +67,11 @@ public class MessageService {
             log.info("Getting conversation messages between {} and {}", criteria.getSenderUsername(), criteria.getRecipientUsername());
 
             Pageable pageable = PageRequest.of(criteria.getPage(), criteria.getSize());
-            Page<Message> messages = messageRepository.findConversationMessages(criteria.getSenderUsername(), criteria.getRecipientUsername(), pageable);
-
-            Page<MessageDto> messageDtos = messages.map(messageMapper::toDto);
+            String user1 = criteria.getSenderUsername();
+            String user2 = criteria.getRecipientUsername();
+            Page<MessageDto> messageDtos = criteria.getPage() == 0 && criteria.getSize() <= conversationTailCache.capacity()
+                    ? latestConversationPage(user1, user2, pageable)
+                    : findConversation(user1, user2, pageable).map(messageMapper::toDto);
 
             return ApiResponse.<Page<MessageDto>>builder().success(true).data(messageDtos).hasMore(messageDtos.hasNext()).totalElements(messageDtos.getTotalElements()).totalPages(messageDtos.getTotalPages()).message("Messages retrieved successfully").build();
 
@@ -59,6 +81,65 @@ public class MessageService {
         }
     }
 
+    // صفحه اول مکالمه (باز کردن چت) از ConversationTailCache؛ در صورت نبودن، به اندازه کل بافر خوانده و در کش گذاشته می‌شود
+    private Page<MessageDto> latestConversationPage(String user1, String user2, Pageable pageable) {
+        Optional<ConversationTailCache.Slice> cached = conversationTailCache.latest(user1, user2, pageable.getPageSize());
+        if (cached.isPresent()) {
+            return new PageImpl<>(cached.get().content(), pageable, cached.get().total());
+        }
+        long readToken = conversationTailCache.readToken(user1, user2);
+        Page<MessageDto> tail = findConversation(user1, user2, PageRequest.ofSize(conversationTailCache.capacity()))
+                .map(messageMapper::toDto);
+        conversationTailCache.put(user1, user2, tail.getContent(), tail.getTotalElements(), readToken);
+        List<MessageDto> content = tail.getContent().subList(0, Math.min(pageable.getPageSize(), tail.getNumberOfElements()));
+        return new PageImpl<>(content, pageable, tail.getTotalElements());
+    }
+
+    private Page<Message> findConversation(String user1, String user2, Pageable pageable) {
+        return conversationKeyBackfill.isComplete()
+                ? messageRepository.findConversationByKey(Message.conversationKey(user1, user2), user1, user2, pageable)
+                : messageRepository.findConversationMessages(user1, user2, pageable);
+    }
+
+    /**
+     * پیام‌های مکالمه با صفحه‌بندی keyset (جدیدترین اول): هزینه هر صفحه، چه پیام دهم و چه صد هزارم، یکسان است.
+     * <p>
+     * ورودی: ConversationCriteria با after = nextCursor پاسخ قبلی (خالی برای صفحه اول)
+     * <p>
+     * خروجی: ApiResponse<CursorPage<MessageDto>>
+     */
+    public ApiResponse<CursorPage<MessageDto>> getConversationMessagesBefore(ConversationCriteria criteria) {
+        try {
+            String user1 = criteria.getSenderUsername();
+            String user2 = criteria.getRecipientUsername();
+            int size = criteria.getSize();
+            KeysetSpecification.Position position = KeysetSpecification.position(CONVERSATION_ORDER, criteria.getAfter());
+            if (position != null && position.value() == null) {
+                // پیام بدون تاریخ ایجاد آخرین ردیف ممکن است
+                return ApiResponse.success(CursorPage.<MessageDto>builder().content(List.of()).build());
+            }
+            if (position == null && size <= conversationTailCache.capacity()) {
+                // صفحه اول مثل حالت offset از ConversationTailCache (و در صورت نبودن، با پر کردن آن)؛ صفحه بعد از total کش معلوم است
+                Page<MessageDto> latest = latestConversationPage(user1, user2, PageRequest.ofSize(size));
+                return ApiResponse.success(KeysetSpecification.page(latest.getContent(), latest.hasNext(),
+                        CONVERSATION_ORDER, Function.identity()));
+            }
+            LocalDateTime beforeDate = position != null ? LocalDateTime.parse(position.value()) : LATEST;
+            Long beforeId = position != null ? position.id() : Long.MAX_VALUE;
+            Pageable limit = PageRequest.ofSize(size + 1);
+            List<Message> rows = conversationKeyBackfill.isComplete()
+                    ? messageRepository.findConversationBefore(Message.conversationKey(user1, user2), user1, user2,
+                    beforeDate, beforeId, limit)
+                    : messageRepository.findConversationBeforeWithoutKey(user1, user2, beforeDate, beforeId, limit);
+            return ApiResponse.success(KeysetSpecification.page(rows, size, CONVERSATION_ORDER, messageMapper::toDto));
+        } catch (IllegalArgumentException e) {
+            return ApiResponse.error(e.getMessage());
+        } catch (Exception e) {
+            log.error("Error getting conversation messages: {}", e.getMessage(), e);
+            return ApiResponse.error("Failed to retrieve conversation messages");
+        }
+    }
+
     /**
      * ارسال پیام جدید
      * <p>
@@ -110,6 +191,9 @@ public class MessageService {
 
             Message message = messageBuilder.build();
             Message savedMessage = messageRepository.save(message);
+            messageStatsStore.sentAfterCommit(savedMessage);
+            messageSearchIndex.indexAfterCommit(savedMessage);
+            conversationTailCache.sentAfterCommit(messageMapper.toDto(savedMessage));
 
             MessageDto messageDto = messageMapper.toDto(savedMessage);
 
@@ -156,6 +240,8 @@ public class MessageService {
             message.setModifyDate(LocalDateTime.now());
 
             Message savedMessage = messageRepository.save(message);
+            conversationTailCache.updatedAfterCommit(messageMapper.toDto(savedMessage));
+            messageSearchIndex.indexAfterCommit(savedMessage);
             MessageDto messageDto = messageMapper.toDto(savedMessage);
 
             log.info("Message updated successfully with ID: {}", savedMessage.getId());
@@ -191,6 +277,9 @@ public class MessageService {
             }
 
             Message message = messageOptional.get();
+            messageStatsStore.deletedAfterCommit(message);
+            conversationTailCache.deletedAfterCommit(message.getId(), message.getSender(), message.getRecipient());
+            messageSearchIndex.removeAfterCommit(message.getId());
             message.setIsActive(false);
             message.setDeleteDate(LocalDateTime.now());
             message.setMessage(""); // پاک کردن محتوای پیام
@@ -211,6 +300,7 @@ public class MessageService {
      * <p>
      * ورودی: SearchCriteria
      * - query: کلمه کلیدی جستجو
+     * - username: فقط پیام‌هایی که این کاربر فرستاده یا دریافت کرده است
      * - sender: نام کاربری فرستنده
      * - recipient: نام کاربری گیرنده
      * - subject: موضوع
@@ -221,6 +311,9 @@ public class MessageService {
      * - page: شماره صفحه
      * - size: تعداد آیتم در صفحه
      * <p>
+     * با query غیرخالی و ایندکس آماده، نتایج از {@link MessageSearchIndex} به ترتیب امتیاز (BM25) و با highlight برمی‌گردند؛
+     * وگرنه از {@link MessageSpecification} با همان قاعده‌ها و به ترتیب جدیدترین.
+     * <p>
      * خروجی: ApiResponse<Page<MessageDto>>
      */
     public ApiResponse<Page<MessageDto>> searchMessages(SearchCriteria criteria) {
@@ -228,9 +321,14 @@ public class MessageService {
             log.info("Searching messages with query: {}", criteria.getQuery());
 
             Pageable pageable = PageRequest.of(criteria.getPage(), criteria.getSize());
-            Page<Message> messages = messageRepository.searchMessages(criteria.getQuery(), criteria.getSender(), criteria.getSubject(), criteria.getPriority(), criteria.getStartDate(), criteria.getEndDate(), pageable);
-
-            Page<MessageDto> messageDtos = messages.map(messageMapper::toDto);
+            Page<MessageDto> messageDtos;
+            if (messageSearchIndex.canSearch(criteria)) {
+                messageDtos = searchIndexed(criteria, pageable);
+            } else {
+                Pageable sorted = PageRequest.of(criteria.getPage(), criteria.getSize(), MessageSpecification.NEWEST_FIRST);
+                messageDtos = messageRepository.findAll(MessageSpecification.search(criteria, textNormalizer), sorted)
+                        .map(messageMapper::toDto);
+            }
 
             return ApiResponse.<Page<MessageDto>>builder().success(true).data(messageDtos).hasMore(messageDtos.hasNext()).totalElements(messageDtos.getTotalElements()).totalPages(messageDtos.getTotalPages()).message("Search completed successfully").build();
 
@@ -240,6 +338,25 @@ public class MessageService {
         }
     }
 
+    // فقط پیام‌های همین صفحه از پایگاه داده خوانده می‌شوند؛ پیامی که در این فاصله حذف شده از صفحه کنار می‌رود
+    private Page<MessageDto> searchIndexed(SearchCriteria criteria, Pageable pageable) {
+        Page<Bm25Index.Hit<MessageSearchIndex.Indexed>> hits = messageSearchIndex.search(criteria, pageable);
+        Map<Long, Message> messages = messageRepository.findActiveByIdIn(hits.map(Bm25Index.Hit::id).getContent())
+                .stream()
+                .collect(Collectors.toMap(Message::getId, Function.identity()));
+        List<MessageDto> content = hits.getContent().stream()
+                .filter(hit -> messages.containsKey(hit.id()))
+                .map(hit -> {
+                    Message message = messages.get(hit.id());
+                    MessageDto dto = messageMapper.toDto(message);
+                    dto.setScore(Math.round(hit.score() * 1000) / 1000.0);
+                    dto.setHighlight(messageSearchIndex.highlight(message.getMessage(), criteria.getQuery()));
+                    return dto;
+                })
+                .toList();
+        return new PageImpl<>(content, pageable, hits.getTotalElements());
+    }
+
     /**
      * دریافت پیام‌های ارسال شده کاربر
      * <p>
@@ -316,8 +433,12 @@ public class MessageService {
             }
 
             Message message = messageOptional.get();
+            if ("SENT".equals(message.getMessageStatus())) {
+                messageStatsStore.readAfterCommit(message.getRecipient());
+            }
             message.setMessageStatus("READ");
             messageRepository.save(message);
+            conversationTailCache.updatedAfterCommit(messageMapper.toDto(message));
 
             return ApiResponse.success("Message marked as read");
 
@@ -328,41 +449,12 @@ public class MessageService {
     }
 
     /**
-     * دریافت آمار پیام‌ها
+     * دریافت آمار پیام‌ها از شمارنده‌های {@link MessageStatsStore}؛ پیام‌ها شمرده یا بارگذاری نمی‌شوند
      */
     public ApiResponse<MessageStats> getMessageStats(String username) {
         try {
-            log.info("Getting message stats for user: {}", username);
-
-            Object[] stats = messageRepository.getMessageStats(username);
-            Long sentCount = stats[0] instanceof Long ? (Long) stats[0] : 0L;
-            Long receivedCount = stats[1] instanceof Long ? (Long) stats[1] : 0L;
-            Long unreadCount = stats[2] instanceof Long ? (Long) stats[2] : 0L;
-
-            // --- START OF CHANGES ---
-
-            // محاسبه شروع و پایان امروز برای ارسال به کوئری بهینه شده
-            LocalDateTime startOfToday = LocalDate.now().atStartOfDay();
-            LocalDateTime endOfToday = LocalDate.now().plusDays(1).atStartOfDay();
-
-            // استفاده از متد جدید و بهینه شده findMessagesBetween
-            List<Message> todayMessages = messageRepository.findMessagesBetween(startOfToday, endOfToday);
-
-            // --- END OF CHANGES ---
-
-            List<Message> highPriorityMessages = messageRepository.findHighPriorityMessages(PageRequest.of(0, Integer.MAX_VALUE)).getContent();
-
-            MessageStats messageStats = MessageStats.builder()
-                    .sentCount(sentCount)
-                    .receivedCount(receivedCount)
-                    .unreadCount(unreadCount)
-                    .totalCount(sentCount + receivedCount)
-                    .todayCount((long) todayMessages.size())
-                    .highPriorityCount((long) highPriorityMessages.size())
-                    .build();
-
-            return ApiResponse.success(messageStats);
-
+            log.debug("Getting message stats for user: {}", username);
+            return ApiResponse.success(messageStatsStore.get(username));
         } catch (Exception e) {
             log.error("Error getting message stats: {}", e.getMessage(), e);
             return ApiResponse.error("Failed to retrieve message statistics");
@@ -0,0 +1,169 @@
+package ir.iau.library.service;
+
+import ir.iau.library.dto.MessageStats;
+import ir.iau.library.entity.Message;
+import ir.iau.library.repository.MessageRepository;
+import ir.iau.library.support.AfterCommit;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * شمارنده‌های پیام در حافظه، پشت {@link MessageService#getMessageStats}: برای هر کاربر (ارسالی، دریافتی، خوانده‌نشده)
+ * و برای کل سیستم (ارسال امروز، اولویت بالا)، تا داشبورد در هر درخواست پیام‌ها را نشمارد یا بارگذاری نکند.
+ * <p>
+ * شمارنده‌ها پس از commit ارسال، خواندن یا حذف پیام توسط {@link MessageService} به‌روز می‌شوند. شمارنده‌های هر کاربر
+ * اولین بار که خواسته شوند با یک کوئری تجمیعی از پایگاه داده خوانده می‌شوند؛ تغییرات کاربرانی که کسی آمارشان را
+ * نخواسته دنبال نمی‌شود. هر {@code app.messages.stats.reconcile-interval} شمارنده‌های کلی دوباره شمرده و شمارنده‌های
+ * کاربران دور ریخته می‌شوند تا هر انحرافی (مثلاً تغییری که حین شمارش commit شده یا ردیف‌هایی که بیرون از برنامه
+ * تغییر کرده‌اند) اصلاح شود.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class MessageStatsStore {
+
+    private final MessageRepository messageRepository;
+
+    private final ConcurrentHashMap<String, UserCounters> users = new ConcurrentHashMap<>();
+    private final AtomicLong highPriority = new AtomicLong();
+    private final AtomicLong today = new AtomicLong();
+    private volatile LocalDate todayDate;
+
+    public MessageStats get(String username) {
+        refreshGlobalsIfStale();
+        UserCounters counters = users.computeIfAbsent(username, name -> new UserCounters());
+        counters.loadIfNeeded(username);
+        long sent = counters.sent.get();
+        long received = counters.received.get();
+        return MessageStats.builder()
+                .sentCount(sent)
+                .receivedCount(received)
+                .unreadCount(counters.unread.get())
+                .totalCount(sent + received)
+                .todayCount(today.get())
+                .highPriorityCount(highPriority.get())
+                .build();
+    }
+
+    public void sentAfterCommit(Message message) {
+        AfterCommit.run(() -> apply(message, 1));
+    }
+
+    public void deletedAfterCommit(Message message) {
+        // وضعیت و تاریخ پیام پیش از حذف نرم، تا شمارنده‌های درست کم شوند
+        Message snapshot = Message.builder()
+                .sender(message.getSender())
+                .recipient(message.getRecipient())
+                .priority(message.getPriority())
+                .messageStatus(message.getMessageStatus())
+                .createDate(message.getCreateDate())
+                .build();
+        AfterCommit.run(() -> apply(snapshot, -1));
+    }
+
+    public void readAfterCommit(String recipient) {
+        AfterCommit.run(() -> {
+            UserCounters counters = loaded(recipient);
+            if (counters != null) {
+                counters.unread.decrementAndGet();
+            }
+        });
+    }
+
+    @Scheduled(fixedDelayString = "${app.messages.stats.reconcile-interval:PT10M}",
+            initialDelayString = "${app.messages.stats.reconcile-interval:PT10M}")
+    public void reconcile() {
+        long start = System.currentTimeMillis();
+        users.clear();
+        recountGlobals(LocalDate.now());
+        log.debug("Message stats reconciled in {} ms", System.currentTimeMillis() - start);
+    }
+
+    private void apply(Message message, int delta) {
+        UserCounters sender = loaded(message.getSender());
+        if (sender != null) {
+            sender.sent.addAndGet(delta);
+        }
+        UserCounters recipient = loaded(message.getRecipient());
+        if (recipient != null) {
+            recipient.received.addAndGet(delta);
+            if ("SENT".equals(message.getMessageStatus())) {
+                recipient.unread.addAndGet(delta);
+            }
+        }
+        if (isHighPriority(message.getPriority())) {
+            highPriority.addAndGet(delta);
+        }
+        LocalDate day = todayDate;
+        if (day != null && message.getCreateDate() != null && message.getCreateDate().toLocalDate().equals(day)) {
+            today.addAndGet(delta);
+        }
+    }
+
+    private UserCounters loaded(String username) {
+        UserCounters counters = username != null ? users.get(username) : null;
+        return counters != null && counters.loaded ? counters : null;
+    }
+
+    private void refreshGlobalsIfStale() {
+        LocalDate now = LocalDate.now();
+        if (!now.equals(todayDate)) {
+            synchronized (this) {
+                if (!now.equals(todayDate)) {
+                    recountGlobals(now);
+                }
+            }
+        }
+    }
+
+    // تغییراتی که هم‌زمان با شمارش commit شوند روی نتیجه شمارش اضافه می‌شوند
+    private synchronized void recountGlobals(LocalDate day) {
+        long highPriorityBefore = highPriority.get();
+        long todayBefore = today.get();
+        long highPriorityCount = messageRepository.countHighPriorityMessages();
+        long todayCount = messageRepository.countMessagesBetween(day.atStartOfDay(), day.plusDays(1).atStartOfDay());
+        highPriority.addAndGet(highPriorityCount - highPriorityBefore);
+        today.addAndGet(todayCount - todayBefore);
+        todayDate = day;
+    }
+
+    private static boolean isHighPriority(String priority) {
+        return "high".equals(priority) || "urgent".equals(priority);
+    }
+
+    private class UserCounters {
+        private final AtomicLong sent = new AtomicLong();
+        private final AtomicLong received = new AtomicLong();
+        private final AtomicLong unread = new AtomicLong();
+        private volatile boolean loaded;
+
+        // تا پایان بارگذاری تغییرات اعمال نمی‌شوند؛ اگر بارگذاری خطا بدهد، در درخواست بعدی دوباره انجام می‌شود
+        void loadIfNeeded(String username) {
+            if (loaded) {
+                return;
+            }
+            synchronized (this) {
+                if (loaded) {
+                    return;
+                }
+                List<Object[]> rows = messageRepository.getMessageStats(username);
+                Object[] row = rows.isEmpty() ? new Object[3] : rows.get(0);
+                sent.addAndGet(toLong(row[0]));
+                received.addAndGet(toLong(row[1]));
+                unread.addAndGet(toLong(row[2]));
+                loaded = true;
+            }
+        }
+    }
+
+    private static long toLong(Object value) {
+        return value instanceof Number number ? number.longValue() : 0L;
+    }
+}
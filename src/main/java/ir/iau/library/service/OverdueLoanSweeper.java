@@ -0,0 +1,138 @@
+package ir.iau.library.service;
+
+import ir.iau.library.dto.OverdueSweepStats;
+import ir.iau.library.repository.BookLoanRepository;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.envers.AuditReaderFactory;
+import org.hibernate.envers.DefaultRevisionEntity;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * تغییر وضعیت امانت‌هایی که سررسیدشان گذشته از ON_LOAN به OVERDUE.
+ * <p>
+ * به جای بارگذاری موجودیت‌ها، بازه id ردیف‌های دیرکرد پیدا و در دسته‌های {@code chunk-size} تایی با یک UPDATE
+ * مجموعه‌ای (هر دسته یک تراکنش کوتاه) به‌روزرسانی می‌شود تا جدول مدت طولانی قفل نماند. با lease پایگاه داده فقط یک
+ * نود در هر زمان اجرا می‌کند؛ lease پس از هر دسته تمدید می‌شود. چون UPDATE شرط وضعیت دارد، اجرای دوباره بی‌خطر است.
+ * <p>
+ * UPDATE مستقیم از Envers عبور نمی‌کند، پس مثل انقضای رزروها هر دسته یک revision می‌گیرد و ردیف‌های audit آن با
+ * یک INSERT ... SELECT نوشته می‌شوند.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class OverdueLoanSweeper {
+
+    static final String LEASE_NAME = "overdue-loan-sweep";
+
+    private final BookLoanRepository loanRepository;
+    private final SchedulerLeaseService leaseService;
+    private final PlatformTransactionManager transactionManager;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Value("${app.loans.overdue-sweep.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.loans.overdue-sweep.chunk-size:1000}")
+    private int chunkSize;
+
+    @Value("${app.loans.overdue-sweep.lease-ttl:10m}")
+    private Duration leaseTtl;
+
+    private final OverdueSweepStats stats = new OverdueSweepStats();
+
+    @Scheduled(cron = "${app.loans.overdue-sweep.cron:0 30 0 * * *}")
+    public void scheduledSweep() {
+        if (enabled) {
+            sweep();
+        }
+    }
+
+    /**
+     * @return تعداد امانت‌هایی که دیرکرد علامت خوردند، یا empty اگر نود دیگری در حال اجرا بود
+     */
+    public Optional<Long> sweep() {
+        if (!leaseService.tryAcquire(LEASE_NAME, leaseTtl)) {
+            synchronized (stats) {
+                stats.setSkippedRuns(stats.getSkippedRuns() + 1);
+            }
+            log.debug("Overdue loan sweep skipped; lease is held by another node");
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(sweepChunks());
+        } finally {
+            leaseService.release(LEASE_NAME);
+        }
+    }
+
+    public OverdueSweepStats getStats() {
+        synchronized (stats) {
+            return stats.toBuilder().build();
+        }
+    }
+
+    private int markChunk(long afterId, long toId, LocalDate today) {
+        List<Long> ids = loanRepository.findOverdueIds(afterId, toId, today);
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        int count = loanRepository.markOverdue(ids, today);
+        if (count > 0) {
+            DefaultRevisionEntity revision = AuditReaderFactory.get(entityManager)
+                    .getCurrentRevision(DefaultRevisionEntity.class, true);
+            entityManager.flush(); // ردیف REVINFO پیش از درج ردیف‌های audit که به آن ارجاع می‌دهند
+            loanRepository.insertOverdueAuditRows(ids, revision.getId());
+        }
+        return count;
+    }
+
+    private long sweepChunks() {
+        long start = System.currentTimeMillis();
+        LocalDate today = LocalDate.now();
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        long updated = 0;
+        int chunks = 0;
+        List<Object[]> range = loanRepository.findOverdueIdRange(today);
+        Object[] bounds = range.isEmpty() ? null : range.get(0);
+        if (bounds != null && bounds[0] != null) {
+            long maxId = ((Number) bounds[1]).longValue();
+            for (long afterId = ((Number) bounds[0]).longValue() - 1; afterId < maxId; afterId += chunkSize) {
+                long from = afterId;
+                long to = Math.min(afterId + chunkSize, maxId);
+                Integer count = transaction.execute(status -> markChunk(from, to, today));
+                updated += count != null ? count : 0;
+                chunks++;
+                if (!leaseService.tryAcquire(LEASE_NAME, leaseTtl)) {
+                    log.warn("Overdue loan sweep lost its lease after id {}; stopping", to);
+                    break;
+                }
+            }
+        }
+        long duration = System.currentTimeMillis() - start;
+        synchronized (stats) {
+            stats.setLastRunAt(LocalDateTime.now());
+            stats.setLastRowsUpdated(updated);
+            stats.setLastChunks(chunks);
+            stats.setLastDurationMs(duration);
+            stats.setTotalRuns(stats.getTotalRuns() + 1);
+            stats.setTotalRowsUpdated(stats.getTotalRowsUpdated() + updated);
+        }
+        log.info("Marked {} loans overdue in {} chunks ({} ms)", updated, chunks, duration);
+        return updated;
+    }
+}
@@ -1,19 +1,39 @@
 package ir.iau.library.service;
 
+import ir.iau.library.dto.CursorPage;
 import ir.iau.library.dto.PersonFilterDto;
+import ir.iau.library.dto.PersonLoanSummaryDto;
+import ir.iau.library.dto.PersonSummaryDto;
+import ir.iau.library.entity.ImageOwnerType;
+import ir.iau.library.entity.ImageSize;
 import ir.iau.library.entity.Person;
+import ir.iau.library.dto.SearchResultDto;
 import ir.iau.library.repository.PersonRepository;
+import ir.iau.library.repository.SpecificationProjectionExecutor;
+import ir.iau.library.search.PersonSearchIndex;
+import ir.iau.library.search.TextNormalizer;
+import ir.iau.library.specification.KeysetSpecification;
 import ir.iau.library.specification.PersonSpecification;
 import jakarta.persistence.EntityNotFoundException;
 import jakarta.transaction.Transactional;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
 
 @Service
 @Transactional
@@ -22,23 +42,117 @@ public class PersonService {
     @Autowired
     private PersonRepository personRepository;
 
-    public Page<Person> findAllFiltered(PersonFilterDto filter, Pageable pageable) {
-        return personRepository.findAll(PersonSpecification.filter(filter), pageable);
+    @Autowired
+    private PersonSearchIndex personSearchIndex;
+
+    @Autowired
+    private TextNormalizer textNormalizer;
+
+    @Autowired
+    private SpecificationProjectionExecutor projectionExecutor;
+
+    @Autowired
+    private ImageService imageService;
+
+    @Autowired
+    private BlobStore blobStore;
+
+    public Optional<PersonLoanSummaryDto> getLoanSummary(Long id) {
+        return personRepository.findLoanSummary(id, LocalDate.now());
+    }
+
+    public Page<PersonSummaryDto> findAllFiltered(PersonFilterDto filter, Pageable pageable) {
+        // فقط ستون‌های نمای فهرستی انتخاب می‌شوند؛ عکس پروفایل هرگز در فهرست خوانده نمی‌شود
+        return toSpecification(filter)
+                .map(spec -> projectionExecutor.findPage(Person.class, spec, pageable,
+                        PersonSummaryDto.class, PersonSpecification.summarySelection()))
+                .orElseGet(() -> Page.empty(pageable));
+    }
+
+    /**
+     * صفحه‌بندی keyset: به جای OFFSET و COUNT، از آخرین کلید مرتب‌سازی و id صفحه قبل ادامه می‌دهد.
+     */
+    public CursorPage<PersonSummaryDto> findAllFilteredAfter(PersonFilterDto filter, String after, int size, Sort.Order order) {
+        List<PersonSummaryDto> rows = toSpecification(filter)
+                .map(spec -> projectionExecutor.findList(Person.class, spec.and(KeysetSpecification.after(order, after)),
+                        KeysetSpecification.sort(order), size + 1, PersonSummaryDto.class, PersonSpecification.summarySelection()))
+                .orElseGet(List::of);
+        return KeysetSpecification.page(rows, size, order, Function.identity());
+    }
+
+    /**
+     * همه اعضای منطبق به ترتیب id و به صورت جریانی، برای خروجی اکسل/CSV؛ باید داخل همین تراکنش مصرف شوند.
+     */
+    public void streamFiltered(PersonFilterDto filter, int fetchSize, Consumer<PersonSummaryDto> consumer) {
+        toSpecification(filter).ifPresent(spec -> {
+            try (Stream<PersonSummaryDto> rows = projectionExecutor.stream(Person.class, spec, Sort.by("id"), fetchSize,
+                    PersonSummaryDto.class, PersonSpecification.summarySelection())) {
+                rows.forEach(consumer);
+            }
+        });
+    }
+
+    private Optional<Specification<Person>> toSpecification(PersonFilterDto filter) {
+        Optional<Set<Long>> indexedIds = personSearchIndex.resolve(filter);
+        if (indexedIds.isEmpty()) {
+            return Optional.of(PersonSpecification.filter(filter, textNormalizer));
+        }
+        if (indexedIds.get().isEmpty()) {
+            return Optional.empty();
+        }
+        return Optional.of(PersonSpecification.filter(filter, indexedIds.get()));
+    }
+
+    /**
+     * جستجوی رتبه‌بندی شده (پیشوندی و تقریبی) روی نام، ایمیل و کد ملی اعضا.
+     * تا زمانی که ایندکس آماده نیست، از جستجوی ساده روی نام خانوادگی در پایگاه داده استفاده می‌شود.
+     */
+    public List<SearchResultDto> search(String query, int limit) {
+        if (personSearchIndex.isReady()) {
+            return personSearchIndex.search(query, limit);
+        }
+        PersonFilterDto filter = new PersonFilterDto();
+        filter.setLastName(query);
+        return personRepository.findAll(PersonSpecification.filter(filter, textNormalizer), PageRequest.of(0, limit))
+                .map(p -> SearchResultDto.builder()
+                        .id(p.getId())
+                        .score(0.0)
+                        .fields(Map.of(
+                                "firstName", String.valueOf(p.getFirstName()),
+                                "lastName", String.valueOf(p.getLastName())))
+                        .build())
+                .getContent();
     }
 
     public Optional<Person> getPersonById(Long id) {
         return personRepository.findById(id);
     }
 
+    public boolean existsById(Long id) {
+        return personRepository.existsById(id);
+    }
+
+    public Optional<ImageContent> getProfilePicture(Long id, ImageSize size) {
+        return imageService.getImage(ImageOwnerType.PERSON_PICTURE, id, size, () -> personRepository.findProfilePictureHashById(id));
+    }
+
     public Person createPerson(Person person, MultipartFile profilePicture) throws IOException {
         person.setActive(true);
         person.setMembershipDate(java.time.LocalDate.now());
 
+        byte[] picture = null;
+        person.setProfilePictureHash(null); // hash فقط از روی فایل آپلود شده تعیین می‌شود
         if (profilePicture != null && !profilePicture.isEmpty()) {
-            person.setProfilePicture(profilePicture.getBytes());
+            picture = profilePicture.getBytes();
+            person.setProfilePictureHash(blobStore.put(picture));
         }
 
-        return personRepository.save(person);
+        Person saved = personRepository.save(person);
+        if (picture != null) {
+            imageService.replaceVariants(ImageOwnerType.PERSON_PICTURE, saved.getId(), picture);
+        }
+        personSearchIndex.indexAfterCommit(saved);
+        return saved;
     }
 
     public Person updatePerson(Long id, Person personDetails, MultipartFile profilePicture) throws IOException {
@@ -56,15 +170,23 @@ public class PersonService {
         person.setNotes(personDetails.getNotes());
         person.setActive(personDetails.getActive());
 
+        String previousPicture = person.getProfilePictureHash();
         if (profilePicture != null && !profilePicture.isEmpty()) {
-            person.setProfilePicture(profilePicture.getBytes());
-        } else if (personDetails.getProfilePicture() == null) {
-            // اگر عکس جدیدی آپلود نشده و در دیتای ارسالی هم عکس نال بود، یعنی حذف عکس
-            person.setProfilePicture(null);
+            byte[] picture = profilePicture.getBytes();
+            person.setProfilePictureHash(blobStore.put(picture));
+            blobStore.release(previousPicture);
+            imageService.replaceVariants(ImageOwnerType.PERSON_PICTURE, id, picture);
+        } else if (personDetails.getProfilePictureHash() == null && previousPicture != null) {
+            // اگر عکس جدیدی آپلود نشده و در دیتای ارسالی هم hash عکس نال بود، یعنی حذف عکس
+            person.setProfilePictureHash(null);
+            blobStore.release(previousPicture);
+            imageService.replaceVariants(ImageOwnerType.PERSON_PICTURE, id, null);
         }
         // در غیر این صورت، عکس قبلی باقی می ماند
 
-        return personRepository.save(person);
+        Person saved = personRepository.save(person);
+        personSearchIndex.indexAfterCommit(saved);
+        return saved;
     }
 
     public void deactivatePerson(Long id) {
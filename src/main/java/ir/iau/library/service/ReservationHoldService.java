@@ -0,0 +1,133 @@
+package ir.iau.library.service;
+
+import ir.iau.library.dto.WebSocketMessage;
+import ir.iau.library.entity.Book;
+import ir.iau.library.entity.Reservation;
+import ir.iau.library.entity.ReservationStatus;
+import ir.iau.library.repository.BookRepository;
+import ir.iau.library.repository.ReservationRepository;
+import ir.iau.library.support.AfterCommit;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * صف رزرو (FIFO) هر کتاب: نسخه‌ای که برمی‌گردد، پیش از قفسه به قدیمی‌ترین رزرو در انتظار آن کتاب داده می‌شود.
+ * <p>
+ * همه تخصیص‌ها با قفل ردیف کتاب انجام می‌شوند تا بازگشت و رزرو هم‌زمان یک کتاب پشت سر هم اجرا شوند؛ تصمیم صف یا
+ * قفسه همیشه از پایگاه داده گرفته می‌شود و سر صف با SELECT ... FOR UPDATE خوانده می‌شود. HoldQueue فقط جایگاه و طول
+ * صف را نشان می‌دهد. رزرو تخصیص یافته READY می‌شود، مهلت دریافتش {@code hold-days} روز است و
+ * پس از commit با WebSocket به {@code /topic/user/{nationalId}} عضو اطلاع داده می‌شود.
+ */
+@Service
+@Transactional
+@RequiredArgsConstructor
+@Slf4j
+public class ReservationHoldService {
+
+    private final ReservationRepository reservationRepository;
+    private final BookRepository bookRepository;
+    private final HoldQueue holdQueue;
+    private final WebSocketService webSocketService;
+
+    @Value("${app.reservations.hold-days:3}")
+    private int holdDays;
+
+    /**
+     * برگرداندن نسخه‌های چند کتاب (bookId -> تعداد): ابتدا به صف انتظار هر کتاب و باقی‌مانده به قفسه، با یک UPDATE
+     * برای کتاب‌های بدون صف به ازای هر تعداد متمایز.
+     * <p>
+     * اینکه کتاب صف دارد یا نه از پایگاه داده و پس از قفل کتاب خوانده می‌شود، نه از HoldQueue: رزروی که هم‌زمان ثبت
+     * می‌شود یا پیش از قفل commit شده و اینجا دیده می‌شود، یا پس از آزاد شدن قفل نسخه را از قفسه برمی‌دارد.
+     */
+    public void releaseCopies(Map<Long, Integer> copiesByBook) {
+        bookRepository.lockAllById(copiesByBook.keySet());
+        Set<Long> withWaiting = new HashSet<>(reservationRepository.findBookIdsWithWaiting(copiesByBook.keySet()));
+        Map<Integer, List<Long>> toShelf = new HashMap<>();
+        copiesByBook.forEach((bookId, copies) -> {
+            if (withWaiting.contains(bookId)) {
+                allocate(bookId, copies);
+            } else {
+                toShelf.computeIfAbsent(copies, n -> new ArrayList<>()).add(bookId);
+            }
+        });
+        toShelf.forEach((count, bookIds) -> bookRepository.adjustAvailableCopies(bookIds, count));
+    }
+
+    public void releaseCopy(Long bookId) {
+        releaseCopies(Map.of(bookId, 1));
+    }
+
+    /**
+     * رزرو تازه ثبت شده: اگر کسی جلوتر در صف نیست و نسخه‌ای روی قفسه است، همان نسخه برایش کنار گذاشته می‌شود؛
+     * وگرنه در صف می‌ماند.
+     */
+    public void enqueue(Reservation reservation) {
+        Long bookId = reservation.getBook().getId();
+        bookRepository.lockAllById(List.of(bookId));
+        if (reservationRepository.countWaitingAhead(bookId, reservation.getId()) == 0
+                && bookRepository.takeCopy(bookId) == 1) {
+            hold(reservation);
+        } else {
+            holdQueue.addBeforeCommit(reservation.getId(), bookId);
+        }
+    }
+
+    /**
+     * جایگاه رزرو در صف کتاب (از ۱)؛ اگر HoldQueue هنوز ساخته نشده از پایگاه داده شمرده می‌شود.
+     */
+    @Transactional(readOnly = true)
+    public int position(Reservation reservation) {
+        return holdQueue.position(reservation.getId()).orElseGet(() -> (int) reservationRepository
+                .countWaitingAhead(reservation.getBook().getId(), reservation.getId()) + 1);
+    }
+
+    @Transactional(readOnly = true)
+    public int queueLength(Long bookId) {
+        return holdQueue.isReady() ? holdQueue.length(bookId) : (int) reservationRepository.countWaiting(bookId);
+    }
+
+    private void allocate(Long bookId, int copies) {
+        List<Reservation> heads = reservationRepository.lockQueueHead(bookId, PageRequest.ofSize(copies));
+        heads.forEach(this::hold);
+        if (copies > heads.size()) {
+            bookRepository.adjustAvailableCopies(bookId, copies - heads.size());
+        }
+    }
+
+    private void hold(Reservation reservation) {
+        reservation.setStatus(ReservationStatus.READY);
+        reservation.setExpiryDate(LocalDate.now().plusDays(holdDays));
+        holdQueue.removeAfterCommit(reservation.getId());
+        notifyAfterCommit(reservation);
+    }
+
+    private void notifyAfterCommit(Reservation reservation) {
+        Book book = reservation.getBook();
+        String username = reservation.getPerson().getNationalId();
+        WebSocketMessage message = WebSocketMessage.builder()
+                .sender("system")
+                .recipient(username)
+                .subject("رزرو آماده دریافت")
+                .message("کتاب «" + book.getTitle() + "» برای شما کنار گذاشته شد و تا " + reservation.getExpiryDate()
+                        + " قابل دریافت است.")
+                .messageType("reservation_ready")
+                .originalMessageId(String.valueOf(reservation.getId()))
+                .timestamp(System.currentTimeMillis())
+                .build();
+        Runnable send = () -> webSocketService.sendMessageToUser(username, message);
+        AfterCommit.run(send);
+        log.info("Reservation {} is ready for pickup of book {}", reservation.getId(), book.getId());
+    }
+}
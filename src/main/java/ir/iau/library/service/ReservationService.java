@@ -1,5 +1,8 @@
 package ir.iau.library.service;
 
+import ir.iau.library.dto.HoldPositionDto;
+import ir.iau.library.dto.ReservationDto;
+import ir.iau.library.dto.ReservationFilterDto;
 import ir.iau.library.entity.Book;
 import ir.iau.library.entity.Person;
 import ir.iau.library.entity.Reservation;
@@ -7,24 +10,58 @@ import ir.iau.library.entity.ReservationStatus;
 import ir.iau.library.repository.BookRepository;
 import ir.iau.library.repository.PersonRepository;
 import ir.iau.library.repository.ReservationRepository;
+import ir.iau.library.repository.SpecificationProjectionExecutor;
+import ir.iau.library.specification.ReservationSpecification;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
 import jakarta.transaction.Transactional;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.envers.AuditReaderFactory;
+import org.hibernate.envers.DefaultRevisionEntity;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.time.Duration;
 import java.time.LocalDate;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 @Service
 @Transactional
 @RequiredArgsConstructor
+@Slf4j
 public class ReservationService {
 
     private final ReservationRepository reservationRepository;
     private final PersonRepository personRepository;
     private final BookRepository bookRepository;
+    private final SchedulerLeaseService leaseService;
+    private final PlatformTransactionManager transactionManager;
+    private final ReservationHoldService reservationHoldService;
+    private final HoldQueue holdQueue;
+    private final BookLoanService bookLoanService;
+    private final SpecificationProjectionExecutor projectionExecutor;
 
-    public Reservation createReservation(Long personId, Long bookId, LocalDate expiryDate) {
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Value("${app.reservations.expiry.chunk-size:1000}")
+    private int expiryChunkSize;
+
+    @Value("${app.reservations.expiry.lease-ttl:10m}")
+    private Duration expiryLeaseTtl;
+
+    private static final String EXPIRY_LEASE_NAME = "reservation-expiry";
+
+    public ReservationDto createReservation(Long personId, Long bookId, LocalDate expiryDate) {
         Person person = personRepository.findById(personId)
                 .orElseThrow(() -> new RuntimeException("Person not found"));
         Book book = bookRepository.findById(bookId)
@@ -38,32 +75,142 @@ public class ReservationService {
                 .status(ReservationStatus.ACTIVE)
                 .build();
 
-        return reservationRepository.save(reservation);
+        Reservation saved = reservationRepository.save(reservation);
+        // اگر صفی نباشد و نسخه‌ای روی قفسه باشد همان حالا READY می‌شود
+        reservationHoldService.enqueue(saved);
+        return convertToDto(saved);
     }
 
-    public Reservation fulfillReservation(Long reservationId) {
-        Reservation reservation = reservationRepository.findById(reservationId)
+    /**
+     * تحویل رزرو: برای رزرو READY نسخه کنار گذاشته شده به عضو امانت داده می‌شود.
+     */
+    public ReservationDto fulfillReservation(Long reservationId) {
+        Reservation reservation = reservationRepository.lockWithPersonAndBookById(reservationId)
                 .orElseThrow(() -> new RuntimeException("Reservation not found"));
+        if (reservation.getStatus() == ReservationStatus.READY) {
+            bookLoanService.createLoanForHold(reservation.getPerson(), reservation.getBook());
+        } else if (reservation.getStatus() == ReservationStatus.ACTIVE) {
+            holdQueue.removeAfterCommit(reservation.getId());
+        } else {
+            throw new IllegalStateException("Reservation is already " + reservation.getStatus());
+        }
         reservation.setStatus(ReservationStatus.FULFILLED);
-        return reservationRepository.save(reservation);
+        return convertToDto(reservationRepository.save(reservation));
     }
 
-    public List<Reservation> getActiveReservations() {
-        return reservationRepository.findByStatus(ReservationStatus.ACTIVE);
+    public HoldPositionDto getHoldPosition(Long reservationId) {
+        Reservation reservation = reservationRepository.findById(reservationId)
+                .orElseThrow(() -> new RuntimeException("Reservation not found"));
+        Long bookId = reservation.getBook().getId();
+        return HoldPositionDto.builder()
+                .reservationId(reservationId)
+                .bookId(bookId)
+                .status(reservation.getStatus())
+                .position(reservation.getStatus() == ReservationStatus.ACTIVE
+                        ? reservationHoldService.position(reservation) : null)
+                .queueLength(reservationHoldService.queueLength(bookId))
+                .build();
     }
 
-    public List<Reservation> expireOverdueReservations() {
+    // فقط ستون‌های DTO با join روی عضو و کتاب؛ صفحه‌بندی شده تا داشبورد با بزرگ شدن صف کند نشود
+    public Page<ReservationDto> findAllFiltered(ReservationFilterDto filter, Pageable pageable) {
+        return projectionExecutor.findPage(Reservation.class, ReservationSpecification.filter(filter), pageable,
+                ReservationDto.class, ReservationSpecification.dtoSelection());
+    }
+
+    /**
+     * منقضی کردن رزروهای فعالی که تاریخ انقضایشان گذشته، بدون بارگذاری موجودیت‌ها.
+     * <p>
+     * id ها به صورت keyset در دسته‌های {@code chunk-size} تایی خوانده می‌شوند و هر دسته در تراکنش جداگانه با یک UPDATE
+     * منقضی می‌شود؛ ردیف‌های Envers همان دسته با یک INSERT ... SELECT در یک revision مشترک نوشته می‌شوند.
+     * سپس نسخه‌های READY که عضو تا مهلتشان نیامده منقضی و به نفر بعدی صف (یا قفسه) داده می‌شوند.
+     *
+     * @return تعداد رزروهای منقضی شده
+     */
+    @Transactional(Transactional.TxType.NOT_SUPPORTED)
+    public long expireOverdueReservations() {
+        long start = System.currentTimeMillis();
         LocalDate today = LocalDate.now();
-        List<Reservation> toExpire = reservationRepository.findByExpiryDateBeforeAndStatus(today, ReservationStatus.ACTIVE);
-        toExpire.forEach(r -> r.setStatus(ReservationStatus.EXPIRED));
-        return reservationRepository.saveAll(toExpire);
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        long expired = 0;
+        long afterId = 0L;
+        List<Long> ids;
+        do {
+            ids = reservationRepository.findExpiredIds(today, afterId, PageRequest.ofSize(expiryChunkSize));
+            if (ids.isEmpty()) {
+                break;
+            }
+            List<Long> chunk = ids;
+            afterId = chunk.get(chunk.size() - 1);
+            Integer count = transaction.execute(status -> expireChunk(chunk, today));
+            expired += count != null ? count : 0;
+        } while (ids.size() == expiryChunkSize);
+        expired += expireUnclaimedHolds(today, transaction);
+        log.info("Expired {} reservations ({} ms)", expired, System.currentTimeMillis() - start);
+        return expired;
+    }
+
+    private int expireChunk(List<Long> ids, LocalDate today) {
+        int count = reservationRepository.expireByIds(ids, today);
+        if (count > 0) {
+            DefaultRevisionEntity revision = AuditReaderFactory.get(entityManager)
+                    .getCurrentRevision(DefaultRevisionEntity.class, true);
+            entityManager.flush(); // ردیف REVINFO پیش از درج ردیف‌های audit که به آن ارجاع می‌دهند
+            reservationRepository.insertExpiredAuditRows(ids, revision.getId());
+        }
+        holdQueue.removeAfterCommit(ids);
+        return count;
+    }
+
+    // تعدادشان کم است؛ موجودیت‌ها بارگذاری می‌شوند تا Envers و تخصیص دوباره نسخه مسیر عادی را بروند
+    private long expireUnclaimedHolds(LocalDate today, TransactionTemplate transaction) {
+        long expired = 0;
+        Integer count;
+        do {
+            count = transaction.execute(status -> {
+                List<Reservation> holds = reservationRepository.findUnclaimedHolds(today, PageRequest.ofSize(expiryChunkSize));
+                Map<Long, Integer> copiesByBook = new LinkedHashMap<>();
+                for (Reservation hold : holds) {
+                    hold.setStatus(ReservationStatus.EXPIRED);
+                    copiesByBook.merge(hold.getBook().getId(), 1, Integer::sum);
+                }
+                if (!copiesByBook.isEmpty()) {
+                    reservationHoldService.releaseCopies(copiesByBook);
+                }
+                return holds.size();
+            });
+            expired += count != null ? count : 0;
+        } while (count != null && count == expiryChunkSize);
+        return expired;
     }
 
     /**
-     *  هر روز ساعت ۲ نیمه‌شب وضعیت رزروهای منقضی را به‌روزرسانی می‌کند
+     *  هر روز ساعت ۲ نیمه‌شب وضعیت رزروهای منقضی را به‌روزرسانی می‌کند؛ با lease فقط روی یک نود
      */
     @Scheduled(cron = "0 0 2 * * *")
+    @Transactional(Transactional.TxType.NOT_SUPPORTED)
     public void scheduledExpire() {
-        expireOverdueReservations();
+        if (!leaseService.tryAcquire(EXPIRY_LEASE_NAME, expiryLeaseTtl)) {
+            return;
+        }
+        try {
+            expireOverdueReservations();
+        } finally {
+            leaseService.release(EXPIRY_LEASE_NAME);
+        }
+    }
+
+    private ReservationDto convertToDto(Reservation reservation) {
+        return ReservationDto.builder()
+                .id(reservation.getId())
+                .reservationDate(reservation.getReservationDate())
+                .expiryDate(reservation.getExpiryDate())
+                .status(reservation.getStatus())
+                .personId(reservation.getPerson().getId())
+                .personFirstName(reservation.getPerson().getFirstName())
+                .personLastName(reservation.getPerson().getLastName())
+                .bookId(reservation.getBook().getId())
+                .bookTitle(reservation.getBook().getTitle())
+                .build();
     }
-}
\ No newline at end of file
+}
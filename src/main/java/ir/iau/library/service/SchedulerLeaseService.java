@@ -0,0 +1,72 @@
+package ir.iau.library.service;
+
+import ir.iau.library.repository.SchedulerLeaseRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * lease های پایگاه داده برای کارهای زمان‌بندی شده، تا وقتی برنامه روی چند نود اجرا می‌شود هر کار فقط روی یک نود اجرا شود.
+ * <p>
+ * هر عملیات در تراکنش جداگانه (REQUIRES_NEW) انجام و بلافاصله commit می‌شود تا نودهای دیگر آن را ببینند.
+ * اگر نود وسط کار از کار بیفتد، lease پس از ttl منقضی و توسط نود دیگری گرفته می‌شود؛ پس کارها باید تکرارپذیر باشند.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class SchedulerLeaseService {
+
+    private final SchedulerLeaseRepository leaseRepository;
+    private final PlatformTransactionManager transactionManager;
+
+    private final String owner = hostName() + ":" + UUID.randomUUID().toString().substring(0, 8);
+
+    /**
+     * گرفتن lease یا تمدید lease ای که همین نود دارد.
+     */
+    public boolean tryAcquire(String name, Duration ttl) {
+        TransactionTemplate transaction = newTransaction();
+        LocalDateTime now = LocalDateTime.now();
+        if (!leaseRepository.existsById(name)) {
+            try {
+                transaction.executeWithoutResult(status -> leaseRepository.insert(name, now.minusSeconds(1)));
+            } catch (DataIntegrityViolationException e) {
+                // نود دیگری هم‌زمان همین ردیف را ساخت
+            }
+        }
+        Integer acquired = transaction.execute(status -> leaseRepository.acquire(name, owner, now, now.plus(ttl)));
+        return acquired != null && acquired == 1;
+    }
+
+    public void release(String name) {
+        newTransaction().executeWithoutResult(status -> leaseRepository.release(name, owner, LocalDateTime.now()));
+    }
+
+    public String owner() {
+        return owner;
+    }
+
+    private TransactionTemplate newTransaction() {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        return transaction;
+    }
+
+    private static String hostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            return "unknown";
+        }
+    }
+}
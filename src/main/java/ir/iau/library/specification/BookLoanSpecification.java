@@ -1,7 +1,12 @@
 package ir.iau.library.specification;
 
 import ir.iau.library.dto.BookLoanFilterDto;
+import ir.iau.library.dto.BookLoanDto;
+import ir.iau.library.entity.Book;
 import ir.iau.library.entity.BookLoan;
+import ir.iau.library.entity.Person;
+import ir.iau.library.repository.SpecificationProjectionExecutor;
+import jakarta.persistence.criteria.Join;
 import jakarta.persistence.criteria.JoinType;
 import jakarta.persistence.criteria.Predicate;
 import org.springframework.data.jpa.domain.Specification;
@@ -11,17 +16,36 @@ import java.util.ArrayList;
 import java.util.List;
 
 public class BookLoanSpecification {
+
+    /**
+     * ستون‌های {@link BookLoanDto} به ترتیب پارامترهای سازنده، برای کوئری‌های projection.
+     */
+    public static SpecificationProjectionExecutor.Selector<BookLoan> dtoSelection() {
+        return (root, cb) -> {
+            Join<BookLoan, Person> person = root.join("person");
+            Join<BookLoan, Book> book = root.join("book");
+            return List.of(root.get("id"), root.get("loanDate"), root.get("dueDate"), root.get("returnDate"),
+                    root.get("status"), root.get("notes"),
+                    person.get("id"), person.get("firstName"), person.get("lastName"),
+                    book.get("id"), book.get("title"));
+        };
+    }
+
     public static Specification<BookLoan> filter(BookLoanFilterDto criteria) {
         return (root, query, cb) -> {
             List<Predicate> predicates = new ArrayList<>();
 
-            // To avoid n+1 problem in count queries for pagination
-            if (query.getResultType() != Long.class && query.getResultType() != long.class) {
+            // To avoid n+1 problem; not for count queries or DTO projections, which select the columns they need
+            if (query.getResultType() == BookLoan.class) {
                 root.fetch("person", JoinType.LEFT);
                 root.fetch("book", JoinType.LEFT);
             }
 
 
+            if (criteria.getPersonId() != null) {
+                predicates.add(cb.equal(root.get("person").get("id"), criteria.getPersonId()));
+            }
+
             if (StringUtils.hasText(criteria.getPersonNationalId())) {
                 predicates.add(cb.equal(root.get("person").get("nationalId"), criteria.getPersonNationalId()));
             }
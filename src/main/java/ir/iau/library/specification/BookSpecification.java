@@ -2,37 +2,85 @@ package ir.iau.library.specification;
 
 import ir.iau.library.dto.BookFilterDto;
 import ir.iau.library.entity.Book;
+import ir.iau.library.repository.SpecificationProjectionExecutor;
+import ir.iau.library.search.TextNormalizer;
 import jakarta.persistence.criteria.CriteriaBuilder;
 import jakarta.persistence.criteria.CriteriaQuery;
 import jakarta.persistence.criteria.Predicate;
 import jakarta.persistence.criteria.Root;
+import jakarta.persistence.criteria.Selection;
 import org.springframework.data.jpa.domain.Specification;
 import org.springframework.util.StringUtils;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 public class BookSpecification {
-    public static Specification<Book> filter(BookFilterDto criteria) {
+
+    private static final List<String> SUMMARY_ATTRIBUTES = List.of(
+            "id", "title", "author", "translator", "publisher", "isbn10", "isbn13", "description", "deweyDecimal",
+            "congressClassification", "subject", "summary", "publicationDate", "pageCount", "language", "edition",
+            "copyCount", "availableCopies", "librarySection", "shelfCode", "rowNumbers", "columnNumber", "positionNote", "active");
+
+    /**
+     * ستون‌های {@link ir.iau.library.dto.BookSummaryDto}: همه ستون‌ها جز BLOB جلد، به اضافه پرچم {@code hasCover} که
+     * پایگاه داده حساب می‌کند.
+     */
+    public static SpecificationProjectionExecutor.Selector<Book> summarySelection() {
+        return (root, cb) -> {
+            List<Selection<?>> selections = new ArrayList<>();
+            SUMMARY_ATTRIBUTES.forEach(attribute -> selections.add(root.get(attribute)));
+            selections.add(cb.<Boolean>selectCase()
+                    .when(cb.isNotNull(root.get("coverHash")), true)
+                    .otherwise(false));
+            return selections;
+        };
+    }
+
+    /**
+     * معیارهای متنی که {@link ir.iau.library.search.BookSearchIndex} جواب می‌دهد (عنوان، نویسنده، مترجم، ناشر، موضوع،
+     * خلاصه) مثل خود ایندکس کلمه به کلمه و پس از {@code normalizer} تطبیق داده می‌شوند، تا نتیجه چه ایندکس آماده باشد
+     * چه نباشد یکی باشد.
+     */
+    public static Specification<Book> filter(BookFilterDto criteria, TextNormalizer normalizer) {
+        return filter(criteria, null, normalizer);
+    }
+
+    /**
+     * مثل {@link #filter(BookFilterDto, TextNormalizer)}، ولی معیارهای متنی که
+     * {@link ir.iau.library.search.BookSearchIndex} جواب داده با شرط {@code id IN (...)} جایگزین می‌شوند.
+     */
+    public static Specification<Book> filter(BookFilterDto criteria, Collection<Long> indexedIds) {
+        return filter(criteria, indexedIds, null);
+    }
+
+    private static Specification<Book> filter(BookFilterDto criteria, Collection<Long> indexedIds,
+                                              TextNormalizer normalizer) {
         return (Root<Book> root, CriteriaQuery<?> query, CriteriaBuilder cb) -> {
             List<Predicate> predicates = new ArrayList<>();
+            boolean indexed = indexedIds != null;
+
+            if (indexed) {
+                predicates.add(root.get("id").in(indexedIds));
+            }
 
             // Active status is almost always applied
             if (criteria.getActive() != null) {
                 predicates.add(cb.equal(root.get("active"), criteria.getActive()));
             }
 
-            if (StringUtils.hasText(criteria.getTitle())) {
-                predicates.add(cb.like(cb.lower(root.get("title")), "%" + criteria.getTitle().toLowerCase() + "%"));
+            if (!indexed && StringUtils.hasText(criteria.getTitle())) {
+                predicates.add(normalizer.matchesWords(cb, root.get("title"), criteria.getTitle()));
             }
-            if (StringUtils.hasText(criteria.getAuthor())) {
-                predicates.add(cb.like(cb.lower(root.get("author")), "%" + criteria.getAuthor().toLowerCase() + "%"));
+            if (!indexed && StringUtils.hasText(criteria.getAuthor())) {
+                predicates.add(normalizer.matchesWords(cb, root.get("author"), criteria.getAuthor()));
             }
-            if (StringUtils.hasText(criteria.getTranslator())) {
-                predicates.add(cb.like(cb.lower(root.get("translator")), "%" + criteria.getTranslator().toLowerCase() + "%"));
+            if (!indexed && StringUtils.hasText(criteria.getTranslator())) {
+                predicates.add(normalizer.matchesWords(cb, root.get("translator"), criteria.getTranslator()));
             }
-            if (StringUtils.hasText(criteria.getPublisher())) {
-                predicates.add(cb.like(cb.lower(root.get("publisher")), "%" + criteria.getPublisher().toLowerCase() + "%"));
+            if (!indexed && StringUtils.hasText(criteria.getPublisher())) {
+                predicates.add(normalizer.matchesWords(cb, root.get("publisher"), criteria.getPublisher()));
             }
             if (StringUtils.hasText(criteria.getIsbn10())) {
                 predicates.add(cb.like(cb.lower(root.get("isbn10")), "%" + criteria.getIsbn10().toLowerCase() + "%"));
@@ -49,12 +97,11 @@ public class BookSpecification {
             if (StringUtils.hasText(criteria.getCongressClassification())) {
                 predicates.add(cb.like(cb.lower(root.get("congressClassification")), "%" + criteria.getCongressClassification().toLowerCase() + "%"));
             }
-            if (StringUtils.hasText(criteria.getSubject())) {
-                // For subject, you might want an exact match or like, depending on requirements
-                predicates.add(cb.like(cb.lower(root.get("subject")), "%" + criteria.getSubject().toLowerCase() + "%"));
+            if (!indexed && StringUtils.hasText(criteria.getSubject())) {
+                predicates.add(normalizer.matchesWords(cb, root.get("subject"), criteria.getSubject()));
             }
-            if (StringUtils.hasText(criteria.getSummary())) {
-                predicates.add(cb.like(cb.lower(root.get("summary")), "%" + criteria.getSummary().toLowerCase() + "%"));
+            if (!indexed && StringUtils.hasText(criteria.getSummary())) {
+                predicates.add(normalizer.matchesWords(cb, root.get("summary"), criteria.getSummary()));
             }
             if (criteria.getPublicationDate() != null) {
                 predicates.add(cb.equal(root.get("publicationDate"), criteria.getPublicationDate()));
@@ -87,24 +134,12 @@ public class BookSpecification {
                 predicates.add(cb.like(cb.lower(root.get("positionNote")), "%" + criteria.getPositionNote().toLowerCase() + "%"));
             }
 
-            // The 'available' filter logic from original specification, if needed:
-            /*
+            // شمارنده available_copies (ایندکس شده) جایگزین زیرکوئری EXISTS روی امانت‌ها
             if (criteria.getAvailable() != null) {
-                Subquery<Long> sub = query.subquery(Long.class);
-                Root<Book> subRoot = sub.from(Book.class);
-                Join<?, ?> loans = subRoot.join("loans", JoinType.LEFT);
-                sub.select(subRoot.get("id"))
-                        .where(cb.and(
-                                cb.equal(subRoot.get("id"), root.get("id")),
-                                cb.equal(loans.get("status"), LoanStatus.ON_LOAN) // Ensure LoanStatus enum is imported
-                        ));
-                if (criteria.getAvailable()) {
-                    predicates.add(cb.not(cb.exists(sub)));
-                } else {
-                    predicates.add(cb.exists(sub));
-                }
-            }
-            */
+                predicates.add(criteria.getAvailable()
+                        ? cb.greaterThan(root.get("availableCopies"), 0)
+                        : cb.lessThanOrEqualTo(root.get("availableCopies"), 0));
+            }
 
             return cb.and(predicates.toArray(new Predicate[0]));
         };
@@ -0,0 +1,157 @@
+package ir.iau.library.specification;
+
+import ir.iau.library.dto.CursorPage;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Predicate;
+import org.springframework.beans.BeanWrapper;
+import org.springframework.beans.PropertyAccessorFactory;
+import org.springframework.core.convert.support.DefaultConversionService;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.util.StringUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * صفحه‌بندی keyset (seek) روی یک ستون مرتب‌سازی، با {@code id} برای ترتیب ردیف‌های هم‌مقدار.
+ * <p>
+ * به جای {@code OFFSET n} و {@code COUNT(*)}، صفحه بعد با {@code (key > :lastKey) OR (key = :lastKey AND id > :lastId)}
+ * (برعکس برای ترتیب نزولی) انتخاب می‌شود، پس هزینه هر صفحه به عمق آن بستگی ندارد. موقعیت بین درخواست‌ها با یک cursor
+ * مات و امن برای URL منتقل می‌شود.
+ * <p>
+ * فرض بر این است که مقادیر NULL کوچک‌ترین‌اند (پیش‌فرض H2 و MySQL): در ترتیب صعودی اول و در نزولی آخر.
+ */
+public class KeysetSpecification {
+
+    private KeysetSpecification() {
+    }
+
+    /**
+     * مرتب‌سازی کوئری keyset: ترتیب خواسته‌شده و پس از آن {@code id} در همان جهت.
+     */
+    public static Sort sort(Sort.Order order) {
+        validate(order);
+        if ("id".equals(order.getProperty())) {
+            return Sort.by(order);
+        }
+        return Sort.by(order, new Sort.Order(order.getDirection(), "id"));
+    }
+
+    /**
+     * شرط انتخاب ردیف‌های بعد از {@code cursor}؛ cursor خالی یعنی صفحه اول.
+     */
+    public static <T> Specification<T> after(Sort.Order order, String cursor) {
+        Position position = position(order, cursor);
+        if (position == null) {
+            return (root, query, cb) -> cb.conjunction();
+        }
+        boolean asc = order.isAscending();
+        return (root, query, cb) -> {
+            Path<Long> id = root.get("id");
+            Predicate idAfter = asc ? cb.greaterThan(id, position.id()) : cb.lessThan(id, position.id());
+            if ("id".equals(order.getProperty())) {
+                return idAfter;
+            }
+            Path<Comparable<Object>> key = root.get(order.getProperty());
+            if (position.value() == null) {
+                Predicate sameNullGroup = cb.and(cb.isNull(key), idAfter);
+                return asc ? cb.or(sameNullGroup, cb.isNotNull(key)) : sameNullGroup;
+            }
+            Comparable<Object> value = convert(position.value(), key.getJavaType());
+            Predicate beyond = asc ? cb.greaterThan(key, value) : cb.lessThan(key, value);
+            Predicate page = cb.or(beyond, cb.and(cb.equal(key, value), idAfter));
+            return asc ? page : cb.or(page, cb.isNull(key));
+        };
+    }
+
+    /**
+     * آخرین ردیف صفحه قبل طبق {@code cursor}، برای کوئری‌هایی که شرط keyset را خودشان می‌نویسند؛ برای cursor خالی
+     * (صفحه اول) null.
+     */
+    public static Position position(Sort.Order order, String cursor) {
+        validate(order);
+        if (!StringUtils.hasText(cursor)) {
+            return null;
+        }
+        Cursor decoded = Cursor.decode(cursor);
+        if (!decoded.property().equals(order.getProperty()) || decoded.direction() != order.getDirection()) {
+            throw new IllegalArgumentException("Cursor does not belong to sort " + order.getProperty() + "," + order.getDirection());
+        }
+        return new Position(decoded.id(), decoded.value());
+    }
+
+    /**
+     * ساخت {@link CursorPage} از کوئری‌ای که {@code size + 1} ردیف خوانده؛ ردیف اضافه فقط نشان می‌دهد صفحه بعدی
+     * وجود دارد. cursor از آخرین ردیف برگشتی و پیش از تبدیل آن خوانده می‌شود.
+     */
+    public static <E, R> CursorPage<R> page(List<E> rows, int size, Sort.Order order, Function<E, R> mapper) {
+        boolean hasNext = rows.size() > size;
+        return page(hasNext ? rows.subList(0, size) : rows, hasNext, order, mapper);
+    }
+
+    /**
+     * ساخت {@link CursorPage} از صفحه‌ای که وجود صفحه بعد از پیش معلوم است (مثلاً از تعداد کل در کش).
+     */
+    public static <E, R> CursorPage<R> page(List<E> content, boolean hasNext, Sort.Order order, Function<E, R> mapper) {
+        String nextCursor = null;
+        if (hasNext) {
+            BeanWrapper last = PropertyAccessorFactory.forBeanPropertyAccess(content.get(content.size() - 1));
+            Object value = last.getPropertyValue(order.getProperty());
+            Long id = (Long) last.getPropertyValue("id");
+            nextCursor = new Cursor(order.getProperty(), order.getDirection(), id, value != null ? value.toString() : null).encode();
+        }
+        return CursorPage.<R>builder()
+                .content(content.stream().map(mapper).toList())
+                .nextCursor(nextCursor)
+                .hasNext(hasNext)
+                .size(content.size())
+                .build();
+    }
+
+    private static void validate(Sort.Order order) {
+        if (order.getProperty().contains(".")) {
+            throw new IllegalArgumentException("Keyset pagination only supports direct properties: " + order.getProperty());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Comparable<Object> convert(String value, Class<?> type) {
+        if (type == LocalDate.class) {
+            return (Comparable<Object>) (Comparable<?>) LocalDate.parse(value);
+        }
+        if (type == LocalDateTime.class) {
+            return (Comparable<Object>) (Comparable<?>) LocalDateTime.parse(value);
+        }
+        return (Comparable<Object>) DefaultConversionService.getSharedInstance().convert(value, type);
+    }
+
+    /**
+     * @param value مقدار ستون مرتب‌سازی ردیف به صورت رشته، یا null
+     */
+    public record Position(Long id, String value) {
+    }
+
+    private record Cursor(String property, Sort.Direction direction, Long id, String value) {
+
+        String encode() {
+            String raw = property + "," + direction + "," + id + (value != null ? "," + value : "");
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+        }
+
+        static Cursor decode(String cursor) {
+            try {
+                String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+                String[] parts = raw.split(",", 4);
+                return new Cursor(parts[0], Sort.Direction.fromString(parts[1]), Long.valueOf(parts[2]),
+                        parts.length > 3 ? parts[3] : null);
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Invalid cursor: " + cursor);
+            }
+        }
+    }
+}
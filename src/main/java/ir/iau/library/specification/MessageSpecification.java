@@ -0,0 +1,90 @@
+package ir.iau.library.specification;
+
+import ir.iau.library.dto.SearchCriteria;
+import ir.iau.library.entity.Message;
+import ir.iau.library.search.TextNormalizer;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.Expression;
+import jakarta.persistence.criteria.Predicate;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.util.StringUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class MessageSpecification {
+
+    /**
+     * ترتیب نتایج جستجو: جدیدترین اول؛ با ایندکس‌های (ستون فیلتر، create_date) مرتب‌سازی جداگانه لازم نیست
+     */
+    public static final Sort NEWEST_FIRST = Sort.by(Sort.Order.desc("createDate"), Sort.Order.desc("id"));
+
+    /**
+     * فقط معیارهایی که مقدار دارند به WHERE اضافه می‌شوند (به جای {@code :p IS NULL OR col = :p})، تا هر ترکیب
+     * فیلترها SQL و plan خودش را داشته باشد و ایندکس ستون فیلتر شده قابل استفاده باشد.
+     * <p>
+     * قاعده‌ها همان قاعده‌های {@link ir.iau.library.search.MessageSearchIndex} است: معیار متنی خالی یا فقط فاصله نادیده
+     * گرفته می‌شود، isActive خالی یعنی پیام‌های فعال، و query در موضوع و متن پیام با همان normalizer جستجو می‌شود؛ هر
+     * کلمه آن باید ابتدای کلمه‌ای در یکی از این دو باشد (کلمه یک حرفی فقط خودش).
+     */
+    public static Specification<Message> search(SearchCriteria criteria, TextNormalizer normalizer) {
+        return (root, query, cb) -> {
+            List<Predicate> predicates = new ArrayList<>();
+            predicates.add(Boolean.FALSE.equals(criteria.getIsActive())
+                    ? cb.isFalse(root.get("isActive"))
+                    : cb.isTrue(root.get("isActive")));
+
+            if (StringUtils.hasText(criteria.getQuery())) {
+                List<String> tokens = normalizer.tokenize(criteria.getQuery());
+                if (tokens.isEmpty()) {
+                    predicates.add(cb.disjunction());
+                }
+                Expression<String> subject = words(cb, normalizer, root.get("subject"));
+                Expression<String> message = words(cb, normalizer, root.get("message"));
+                for (String token : tokens) {
+                    // مثل Bm25Index: کلمه یک حرفی فقط با همان کلمه و بقیه به صورت پیشوندی
+                    String pattern = token.length() < 2 ? "% " + token + " %" : "% " + token + "%";
+                    predicates.add(cb.or(cb.like(subject, pattern), cb.like(message, pattern)));
+                }
+            }
+
+            if (StringUtils.hasText(criteria.getUsername())) {
+                predicates.add(cb.or(
+                        cb.equal(root.get("sender"), criteria.getUsername()),
+                        cb.equal(root.get("recipient"), criteria.getUsername())));
+            }
+
+            if (StringUtils.hasText(criteria.getSender())) {
+                predicates.add(cb.equal(root.get("sender"), criteria.getSender()));
+            }
+
+            if (StringUtils.hasText(criteria.getRecipient())) {
+                predicates.add(cb.equal(root.get("recipient"), criteria.getRecipient()));
+            }
+
+            if (StringUtils.hasText(criteria.getSubject())) {
+                predicates.add(cb.equal(root.get("subject"), criteria.getSubject()));
+            }
+
+            if (StringUtils.hasText(criteria.getPriority())) {
+                predicates.add(cb.equal(root.get("priority"), criteria.getPriority()));
+            }
+
+            if (criteria.getStartDate() != null) {
+                predicates.add(cb.greaterThanOrEqualTo(root.get("createDate"), criteria.getStartDate()));
+            }
+
+            if (criteria.getEndDate() != null) {
+                predicates.add(cb.lessThanOrEqualTo(root.get("createDate"), criteria.getEndDate()));
+            }
+
+            return cb.and(predicates.toArray(new Predicate[0]));
+        };
+    }
+
+    // متن نرمال شده با یک فاصله در دو طرف، تا ابتدا و انتهای هر کلمه با LIKE '% x%' پیدا شود
+    private static Expression<String> words(CriteriaBuilder cb, TextNormalizer normalizer, Expression<String> column) {
+        return cb.concat(cb.concat(" ", normalizer.normalize(cb, column)), " ");
+    }
+}
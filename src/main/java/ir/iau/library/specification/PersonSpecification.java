@@ -3,30 +3,76 @@ package ir.iau.library.specification;
 
 import ir.iau.library.dto.PersonFilterDto;
 import ir.iau.library.entity.Person;
+import ir.iau.library.repository.SpecificationProjectionExecutor;
+import ir.iau.library.search.TextNormalizer;
 import jakarta.persistence.criteria.CriteriaBuilder;
 import jakarta.persistence.criteria.CriteriaQuery;
 import jakarta.persistence.criteria.Predicate;
 import jakarta.persistence.criteria.Root;
+import jakarta.persistence.criteria.Selection;
 import org.springframework.data.jpa.domain.Specification;
 import org.springframework.util.StringUtils;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 public class PersonSpecification {
-    public static Specification<Person> filter(PersonFilterDto criteria) {
+
+    private static final List<String> SUMMARY_ATTRIBUTES = List.of(
+            "id", "firstName", "lastName", "email", "nationalId", "phone", "birthDate", "membershipDate",
+            "membershipType", "address", "notes", "active");
+
+    /**
+     * ستون‌های {@link ir.iau.library.dto.PersonSummaryDto}: همه ستون‌ها جز BLOB عکس پروفایل، به اضافه پرچم
+     * {@code hasProfilePicture} که پایگاه داده حساب می‌کند.
+     */
+    public static SpecificationProjectionExecutor.Selector<Person> summarySelection() {
+        return (root, cb) -> {
+            List<Selection<?>> selections = new ArrayList<>();
+            SUMMARY_ATTRIBUTES.forEach(attribute -> selections.add(root.get(attribute)));
+            selections.add(cb.<Boolean>selectCase()
+                    .when(cb.isNotNull(root.get("profilePictureHash")), true)
+                    .otherwise(false));
+            return selections;
+        };
+    }
+
+    /**
+     * معیارهای نام و نشانی که {@link ir.iau.library.search.PersonSearchIndex} جواب می‌دهد، مثل خود ایندکس کلمه به
+     * کلمه و پس از {@code normalizer} تطبیق داده می‌شوند.
+     */
+    public static Specification<Person> filter(PersonFilterDto criteria, TextNormalizer normalizer) {
+        return filter(criteria, null, normalizer);
+    }
+
+    /**
+     * مثل {@link #filter(PersonFilterDto, TextNormalizer)}، ولی معیارهای نام و نشانی که
+     * {@link ir.iau.library.search.PersonSearchIndex} جواب داده با شرط {@code id IN (...)} جایگزین می‌شوند.
+     */
+    public static Specification<Person> filter(PersonFilterDto criteria, Collection<Long> indexedIds) {
+        return filter(criteria, indexedIds, null);
+    }
+
+    private static Specification<Person> filter(PersonFilterDto criteria, Collection<Long> indexedIds,
+                                                TextNormalizer normalizer) {
         return (Root<Person> root, CriteriaQuery<?> query, CriteriaBuilder cb) -> {
             List<Predicate> predicates = new ArrayList<>();
+            boolean indexed = indexedIds != null;
+
+            if (indexed) {
+                predicates.add(root.get("id").in(indexedIds));
+            }
 
             if (criteria.getActive() != null) {
                 predicates.add(cb.equal(root.get("active"), criteria.getActive()));
             }
 
-            if (StringUtils.hasText(criteria.getFirstName())) {
-                predicates.add(cb.like(cb.lower(root.get("firstName")), "%" + criteria.getFirstName().toLowerCase() + "%"));
+            if (!indexed && StringUtils.hasText(criteria.getFirstName())) {
+                predicates.add(normalizer.matchesWords(cb, root.get("firstName"), criteria.getFirstName()));
             }
-            if (StringUtils.hasText(criteria.getLastName())) {
-                predicates.add(cb.like(cb.lower(root.get("lastName")), "%" + criteria.getLastName().toLowerCase() + "%"));
+            if (!indexed && StringUtils.hasText(criteria.getLastName())) {
+                predicates.add(normalizer.matchesWords(cb, root.get("lastName"), criteria.getLastName()));
             }
             if (StringUtils.hasText(criteria.getEmail())) {
                 predicates.add(cb.like(cb.lower(root.get("email")), "%" + criteria.getEmail().toLowerCase() + "%"));
@@ -40,8 +86,8 @@ public class PersonSpecification {
             if (StringUtils.hasText(criteria.getMembershipType())) {
                 predicates.add(cb.equal(cb.lower(root.get("membershipType")), criteria.getMembershipType().toLowerCase()));
             }
-            if (StringUtils.hasText(criteria.getAddress())) {
-                predicates.add(cb.like(cb.lower(root.get("address")), "%" + criteria.getAddress().toLowerCase() + "%"));
+            if (!indexed && StringUtils.hasText(criteria.getAddress())) {
+                predicates.add(normalizer.matchesWords(cb, root.get("address"), criteria.getAddress()));
             }
             if (criteria.getMembershipDateFrom() != null) {
                 predicates.add(cb.greaterThanOrEqualTo(root.get("membershipDate"), criteria.getMembershipDateFrom()));
@@ -0,0 +1,64 @@
+package ir.iau.library.specification;
+
+import ir.iau.library.dto.ReservationDto;
+import ir.iau.library.dto.ReservationFilterDto;
+import ir.iau.library.entity.Book;
+import ir.iau.library.entity.Person;
+import ir.iau.library.entity.Reservation;
+import ir.iau.library.repository.SpecificationProjectionExecutor;
+import jakarta.persistence.criteria.Join;
+import jakarta.persistence.criteria.Predicate;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.util.StringUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class ReservationSpecification {
+
+    /**
+     * ستون‌های {@link ReservationDto} به ترتیب پارامترهای سازنده، برای کوئری‌های projection.
+     */
+    public static SpecificationProjectionExecutor.Selector<Reservation> dtoSelection() {
+        return (root, cb) -> {
+            Join<Reservation, Person> person = root.join("person");
+            Join<Reservation, Book> book = root.join("book");
+            return List.of(root.get("id"), root.get("reservationDate"), root.get("expiryDate"), root.get("status"),
+                    person.get("id"), person.get("firstName"), person.get("lastName"),
+                    book.get("id"), book.get("title"));
+        };
+    }
+
+    public static Specification<Reservation> filter(ReservationFilterDto criteria) {
+        return (root, query, cb) -> {
+            List<Predicate> predicates = new ArrayList<>();
+
+            // شناسه‌ها از ستون کلید خارجی خوانده می‌شوند و join اضافه نمی‌سازند
+            if (criteria.getPersonId() != null) {
+                predicates.add(cb.equal(root.get("person").get("id"), criteria.getPersonId()));
+            }
+
+            if (StringUtils.hasText(criteria.getPersonNationalId())) {
+                predicates.add(cb.equal(root.get("person").get("nationalId"), criteria.getPersonNationalId()));
+            }
+
+            if (criteria.getBookId() != null) {
+                predicates.add(cb.equal(root.get("book").get("id"), criteria.getBookId()));
+            }
+
+            if (criteria.getStatus() != null) {
+                predicates.add(cb.equal(root.get("status"), criteria.getStatus()));
+            }
+
+            if (criteria.getReservationDateFrom() != null) {
+                predicates.add(cb.greaterThanOrEqualTo(root.get("reservationDate"), criteria.getReservationDateFrom()));
+            }
+
+            if (criteria.getReservationDateTo() != null) {
+                predicates.add(cb.lessThanOrEqualTo(root.get("reservationDate"), criteria.getReservationDateTo()));
+            }
+
+            return cb.and(predicates.toArray(new Predicate[0]));
+        };
+    }
+}
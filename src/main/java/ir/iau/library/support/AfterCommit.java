@@ -0,0 +1,27 @@
+package ir.iau.library.support;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * اجرای یک کار پس از commit تراکنش جاری (و فوراً اگر تراکنشی فعال نیست)؛ برای هم‌گام کردن کش‌ها و ایندکس‌های حافظه
+ * تا تغییری که rollback می‌شود هرگز در آن‌ها دیده نشود.
+ */
+public final class AfterCommit {
+
+    private AfterCommit() {
+    }
+
+    public static void run(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package ir.iau.library.controller;
+
+import com.jayway.jsonpath.JsonPath;
+import ir.iau.library.entity.Book;
+import ir.iau.library.entity.BookLoan;
+import ir.iau.library.entity.LoanStatus;
+import ir.iau.library.entity.Message;
+import ir.iau.library.entity.Person;
+import ir.iau.library.entity.Reservation;
+import ir.iau.library.entity.ReservationStatus;
+import ir.iau.library.repository.BookLoanRepository;
+import ir.iau.library.repository.BookRepository;
+import ir.iau.library.repository.MessageRepository;
+import ir.iau.library.repository.PersonRepository;
+import ir.iau.library.repository.ReservationRepository;
+import ir.iau.library.support.SqlStatementCounter;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import java.time.LocalDate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * تعداد دستورهای SQL هر endpoint خواندنی نباید با تعداد ردیف‌ها رشد کند (N+1).
+ * داده‌ها ۲۰ ردیف دارند، پس یک بارگذاری lazy به ازای هر ردیف فوراً عدد را خراب می‌کند.
+ */
+@SpringBootTest(properties = {
+        "spring.jpa.properties.hibernate.session_factory.statement_inspector=ir.iau.library.support.SqlStatementCounter",
+        "app.images.backfill.enabled=false"
+})
+@AutoConfigureMockMvc
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class QueryCountTest {
+
+    private static final int ROWS = 20;
+
+    @Autowired
+    private MockMvc mvc;
+
+    @Autowired
+    private PersonRepository personRepository;
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private BookLoanRepository loanRepository;
+
+    @Autowired
+    private ReservationRepository reservationRepository;
+
+    @Autowired
+    private MessageRepository messageRepository;
+
+    private Long loanId;
+    private Long firstPersonId;
+
+    @BeforeAll
+    void seed() {
+        Message previous = null;
+        for (int i = 0; i < ROWS; i++) {
+            Person person = personRepository.save(Person.builder()
+                    .firstName("First" + i).lastName("Last" + i)
+                    .email("qc" + i + "@example.com").nationalId("qc" + i)
+                    .active(true).build());
+            if (firstPersonId == null) {
+                firstPersonId = person.getId();
+            }
+            Book book = bookRepository.save(Book.builder().title("Book " + i).copyCount(1).active(true).build());
+            loanId = loanRepository.save(BookLoan.builder().person(person).book(book)
+                    .loanDate(LocalDate.now()).dueDate(LocalDate.now().plusDays(14))
+                    .status(LoanStatus.ON_LOAN).build()).getId();
+            reservationRepository.save(Reservation.builder().person(person).book(book)
+                    .reservationDate(LocalDate.now()).expiryDate(LocalDate.now().plusDays(3))
+                    .status(ReservationStatus.ACTIVE).build());
+            // هر پیام پاسخ پیام قبلی است تا هر ردیف والد متفاوتی داشته باشد
+            previous = messageRepository.save(message("alice", "bob", "message " + i, previous));
+            messageRepository.save(message("carol", "dave", "keyset " + i, null));
+        }
+    }
+
+    @Test
+    void loanPageUsesOneSelectAndOneCount() throws Exception {
+        assertStatements(get("/api/loan").param("size", "10"), 2);
+    }
+
+    @Test
+    void loanKeysetPageUsesOneSelect() throws Exception {
+        assertStatements(get("/api/loan").param("after", "").param("size", "10"), 1);
+    }
+
+    @Test
+    void activeReservationsPageUsesOneSelectAndCount() throws Exception {
+        assertStatements(get("/api/reservations/active").param("size", "10"), 2);
+    }
+
+    @Test
+    void conversationPageUsesOneSelectAndOneCount() throws Exception {
+        assertStatements(get("/api/messages/conversation")
+                .param("senderUsername", "alice").param("recipientUsername", "bob").param("size", "10"), 2);
+        // باز کردن دوباره چت (از هر دو طرف) از ConversationTailCache پاسخ داده می‌شود
+        assertStatements(get("/api/messages/conversation")
+                .param("senderUsername", "bob").param("recipientUsername", "alice").param("size", "10"), 0);
+    }
+
+    @Test
+    void conversationKeysetFirstPageIsServedFromTailCache() throws Exception {
+        // اولین باز کردن چت کش را پر می‌کند (select + count) و بعدی‌ها بدون کوئری پاسخ داده می‌شوند
+        assertStatements(get("/api/messages/conversation").param("after", "")
+                .param("senderUsername", "carol").param("recipientUsername", "dave"), 2);
+        SqlStatementCounter.reset();
+        String nextCursor = JsonPath.read(mvc.perform(get("/api/messages/conversation").param("after", "")
+                        .param("senderUsername", "dave").param("recipientUsername", "carol"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.data.size").value(15))
+                .andExpect(jsonPath("$.data.hasNext").value(true))
+                .andReturn().getResponse().getContentAsString(), "$.data.nextCursor");
+        assertThat(SqlStatementCounter.count()).isZero();
+        // صفحه‌های بعد از پایگاه داده، با یک select
+        SqlStatementCounter.reset();
+        mvc.perform(get("/api/messages/conversation").param("after", nextCursor)
+                        .param("senderUsername", "carol").param("recipientUsername", "dave"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.data.size").value(ROWS - 15))
+                .andExpect(jsonPath("$.data.hasNext").value(false));
+        assertThat(SqlStatementCounter.count()).isEqualTo(1);
+    }
+
+    @Test
+    void personSummaryUsesOneAggregateQuery() throws Exception {
+        SqlStatementCounter.reset();
+        mvc.perform(get("/api/person/{id}/summary", firstPersonId))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.activeLoans").value(1))
+                .andExpect(jsonPath("$.totalLoans").value(1))
+                .andExpect(jsonPath("$.activeReservations").value(1));
+        assertThat(SqlStatementCounter.count()).isEqualTo(1);
+    }
+
+    @Test
+    void returnLoadsLoanWithPersonAndBookInOneSelect() throws Exception {
+        SqlStatementCounter.reset();
+        mvc.perform(put("/api/loan/{id}/return", loanId))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.bookTitle").exists());
+        // select امانت + قفل کتاب و بررسی صف رزرو + قفل سر صف + update امانت و رزرو + revision و دو ردیف audit (Envers)
+        assertThat(SqlStatementCounter.count()).isLessThanOrEqualTo(9);
+    }
+
+    private void assertStatements(MockHttpServletRequestBuilder request, int expected) throws Exception {
+        SqlStatementCounter.reset();
+        mvc.perform(request).andExpect(status().isOk());
+        assertThat(SqlStatementCounter.count()).isEqualTo(expected);
+    }
+
+    private static Message message(String sender, String recipient, String text, Message parent) {
+        return Message.builder()
+                .sender(sender).senderFarsiTitle(sender)
+                .recipient(recipient).recipientFarsiTitle(recipient)
+                .message(text).parentMessage(parent).build();
+    }
+}
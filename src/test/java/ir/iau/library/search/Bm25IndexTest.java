@@ -0,0 +1,50 @@
+package ir.iau.library.search;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class Bm25IndexTest {
+
+    private final TextNormalizer normalizer = new PersianTextNormalizer();
+
+    @Test
+    void requiresEveryTokenAndRanksByTermFrequencyAndLength() {
+        Bm25Index<String> index = new Bm25Index<>(normalizer, Map.of("message", 1f), 1024 * 1024);
+        index.index(1L, Map.of("message", "کتاب جاوا را امانت گرفتم و هنوز کتاب را نخوانده‌ام، کتاب خوبی است"), "a", 0);
+        index.index(2L, Map.of("message", "کتاب جاوا"), "a", 0);
+        index.index(3L, Map.of("message", "کتاب پایتون"), "a", 0);
+
+        List<Long> ids = index.search("کتاب جاوا", s -> true).stream().map(Bm25Index.Hit::id).toList();
+
+        assertEquals(List.of(2L, 1L), ids);
+    }
+
+    @Test
+    void matchesPrefixesBelowExactTermsAndAppliesFilter() {
+        Bm25Index<String> index = new Bm25Index<>(normalizer, Map.of("message", 1f), 1024 * 1024);
+        index.index(1L, Map.of("message", "کتابخانه مرکزی"), "ali", 0);
+        index.index(2L, Map.of("message", "كتاب"), "ali", 0);
+        index.index(3L, Map.of("message", "کتاب"), "reza", 0);
+
+        List<Bm25Index.Hit<String>> hits = index.search("کتاب", "ali"::equals);
+
+        assertEquals(List.of(2L, 1L), hits.stream().map(Bm25Index.Hit::id).toList());
+        assertTrue(index.search("ک", s -> true).isEmpty());
+    }
+
+    @Test
+    void removedDocumentsAreNotFound() {
+        Bm25Index<String> index = new Bm25Index<>(normalizer, Map.of("message", 1f), 1024 * 1024);
+        index.index(1L, Map.of("message", "سلام"), "a", 0);
+        index.index(1L, Map.of("message", "خداحافظ"), "a", 0);
+
+        assertTrue(index.search("سلام", s -> true).isEmpty());
+        index.remove(1L);
+        assertTrue(index.search("خداحافظ", s -> true).isEmpty());
+        assertEquals(0, index.size());
+    }
+}
@@ -0,0 +1,66 @@
+package ir.iau.library.search;
+
+import ir.iau.library.dto.BookFilterDto;
+import ir.iau.library.entity.Book;
+import ir.iau.library.repository.BookRepository;
+import ir.iau.library.specification.BookSpecification;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * یک فیلتر متنی چه از ایندکس حافظه جواب داده شود چه (تا آماده شدن ایندکس) از پایگاه داده، باید همان ردیف‌ها را برگرداند.
+ */
+@SpringBootTest(properties = "app.images.backfill.enabled=false")
+@Transactional
+class IndexFallbackConsistencyTest {
+
+    private static final List<String> TITLES = List.of(
+            "كتاب‌هاي تاريخ",            // ي و ك عربی، نیم‌فاصله
+            "کتابهای تاریخ ایران",
+            "تاریخِ ادبیات",              // اعراب
+            "برنامه‌نویسی (جاوا) ۱۴۰۲",
+            "Java Concurrency in Practice",
+            "مقدمه‌ای بر الگوریتم‌ها");
+
+    private static final List<String> QUERIES = List.of(
+            "کتابها", "كتاب‌ها تاریخ", "تاريخ", "تاریخ ایران", "ادب", "جاوا", "1402", "۱۴۰", "java practice",
+            "نویسی", "اب", "الگوریتم", "!!");
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private TextNormalizer normalizer;
+
+    @Test
+    void sqlFallbackMatchesTheSameBooksAsTheIndex() {
+        InvertedIndex index = new InvertedIndex(normalizer);
+        Map<Long, String> titles = new HashMap<>();
+        for (String title : TITLES) {
+            Book book = bookRepository.save(Book.builder().title(title).active(true).build());
+            index.index(book.getId(), Map.of("title", title));
+            titles.put(book.getId(), title);
+        }
+
+        for (String query : QUERIES) {
+            BookFilterDto filter = new BookFilterDto();
+            filter.setTitle(query);
+            Set<Long> fromDatabase = new HashSet<>();
+            bookRepository.findAll(BookSpecification.filter(filter, normalizer)).stream()
+                    .map(Book::getId)
+                    .filter(titles::containsKey)
+                    .forEach(fromDatabase::add);
+            assertThat(fromDatabase).as(query).isEqualTo(index.match("title", query));
+        }
+    }
+}
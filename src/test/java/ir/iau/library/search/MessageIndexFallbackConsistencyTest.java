@@ -0,0 +1,85 @@
+package ir.iau.library.search;
+
+import ir.iau.library.dto.SearchCriteria;
+import ir.iau.library.entity.Message;
+import ir.iau.library.repository.MessageRepository;
+import ir.iau.library.specification.MessageSpecification;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * جستجوی متنی پیام‌ها چه از {@link MessageSearchIndex} (BM25) جواب داده شود چه از {@link MessageSpecification}، باید
+ * همان پیام‌ها را برگرداند؛ مثل {@link IndexFallbackConsistencyTest} برای کتاب‌ها.
+ */
+@SpringBootTest(properties = "app.images.backfill.enabled=false")
+@Transactional
+class MessageIndexFallbackConsistencyTest {
+
+    // موضوع، متن، فرستنده، فعال
+    private static final List<Object[]> MESSAGES = List.of(
+            new Object[]{"امانت", "كتاب‌هاي تاريخ را پس دادم", "ali", true},        // ي و ك عربی، نیم‌فاصله
+            new Object[]{null, "کتابهای تاریخ ایران رسید", "reza", true},
+            new Object[]{"تمدید", "تاریخِ ادبیات را تمدید کنید", "ali", true},      // اعراب
+            new Object[]{"رزرو", "برنامه‌نویسی (جاوا) ۱۴۰۲ آماده است", "sara", true},
+            new Object[]{"Java", "a book about Java concurrency", "reza", true},
+            new Object[]{null, "بخش ب کتابخانه بسته است", "sara", true},             // توکن یک‌حرفی
+            new Object[]{"امانت", "کتاب تاریخ حذف شده", "ali", false});
+
+    private static final List<String> QUERIES = List.of(
+            "کتابها", "كتاب‌ها تاریخ", "تاريخ", "تاریخ ایران", "ادب", "جاوا", "1402", "۱۴۰", "java", "a", "ب",
+            "امانت", "امانت کتاب", "نویسی", "اب", "!!");
+
+    @Autowired
+    private MessageRepository messageRepository;
+
+    @Autowired
+    private TextNormalizer normalizer;
+
+    @Test
+    void sqlFallbackMatchesTheSameMessagesAsTheIndex() {
+        Set<Long> ids = new HashSet<>();
+        for (Object[] row : MESSAGES) {
+            ids.add(messageRepository.save(Message.builder()
+                    .subject((String) row[0]).message((String) row[1])
+                    .sender((String) row[2]).senderFarsiTitle((String) row[2])
+                    .recipient("librarian").recipientFarsiTitle("librarian")
+                    .messageStatus("SENT").isActive((Boolean) row[3]).build()).getId());
+        }
+        // ایندکس جدا و در همین تراکنش ساخته می‌شود تا پیام‌های commit نشده این تست را ببیند
+        MessageSearchIndex index = new MessageSearchIndex(messageRepository, normalizer, 16, 100);
+        index.rebuild();
+        assertThat(index.isReady()).isTrue();
+
+        int matched = 0;
+        for (String query : QUERIES) {
+            for (SearchCriteria criteria : List.of(
+                    SearchCriteria.builder().query(query).build(),
+                    SearchCriteria.builder().query(query).sender(" ").subject("").build(),
+                    SearchCriteria.builder().query(query).sender("ali").build(),
+                    SearchCriteria.builder().query(query).subject("امانت").isActive(true).build())) {
+                assertThat(index.canSearch(criteria)).isTrue();
+                Set<Long> fromIndex = index.search(criteria, PageRequest.ofSize(1000)).stream()
+                        .map(Bm25Index.Hit::id)
+                        .filter(ids::contains)
+                        .collect(Collectors.toSet());
+                Set<Long> fromDatabase = messageRepository.findAll(MessageSpecification.search(criteria, normalizer)).stream()
+                        .map(Message::getId)
+                        .filter(ids::contains)
+                        .collect(Collectors.toSet());
+                assertThat(fromDatabase).as(criteria.toString()).isEqualTo(fromIndex);
+                matched += fromIndex.size();
+            }
+        }
+        assertThat(matched).isPositive();
+    }
+}
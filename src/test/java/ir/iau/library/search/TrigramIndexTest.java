@@ -0,0 +1,69 @@
+package ir.iau.library.search;
+
+import ir.iau.library.dto.SearchResultDto;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TrigramIndexTest {
+
+    private final TextNormalizer normalizer = new PersianTextNormalizer();
+
+    @Test
+    void normalizesArabicVariantsDiacriticsAndZwnj() {
+        assertEquals("کتابها", normalizer.normalize("كتاب\u200Cها"));
+        assertEquals("علی", normalizer.normalize("عَلي"));
+        assertEquals("1402", normalizer.normalize("۱۴۰۲"));
+        assertEquals(List.of("java", "کتاب"), normalizer.tokenize("Java - کتاب"));
+    }
+
+    @Test
+    void ranksExactAbovePrefixAboveFuzzy() {
+        TrigramIndex index = new TrigramIndex(normalizer, Map.of("title", 1f), Set.of("title"), 1024 * 1024);
+        index.index(1L, Map.of("title", "برنامه نویسی جاوا"));
+        index.index(2L, Map.of("title", "جاواسکریپت"));
+        index.index(3L, Map.of("title", "جاوو"));
+
+        List<SearchResultDto> hits = index.search("جاوا", 10);
+
+        assertEquals(List.of(1L, 2L, 3L), hits.stream().map(SearchResultDto::getId).toList());
+        assertEquals("برنامه نویسی جاوا", hits.get(0).getFields().get("title"));
+    }
+
+    @Test
+    void findsArabicSpellingOfPersianTitle() {
+        TrigramIndex index = new TrigramIndex(normalizer, Map.of("title", 1f), Set.of(), 1024 * 1024);
+        index.index(1L, Map.of("title", "کتاب یکم"));
+
+        assertEquals(1, index.search("كتاب يكم", 10).size());
+    }
+
+    @Test
+    void rejectsDocumentsOverMemoryBudget() {
+        TrigramIndex index = new TrigramIndex(normalizer, Map.of("title", 1f), Set.of("title"), 2048);
+        int accepted = 0;
+        for (long id = 1; id <= 100; id++) {
+            if (index.index(id, Map.of("title", "title number " + id))) {
+                accepted++;
+            }
+        }
+
+        assertTrue(index.isOverBudget());
+        assertTrue(accepted < 100);
+        assertTrue(index.getEstimatedBytes() <= 2048);
+    }
+
+    @Test
+    void removeDropsDocumentAndItsTerms() {
+        TrigramIndex index = new TrigramIndex(normalizer, Map.of("title", 1f), Set.of(), 1024 * 1024);
+        index.index(1L, Map.of("title", "unique"));
+        index.remove(1L);
+
+        assertTrue(index.search("unique", 10).isEmpty());
+        assertEquals(0, index.getEstimatedBytes());
+    }
+}
@@ -0,0 +1,92 @@
+package ir.iau.library.service;
+
+import ir.iau.library.dto.CreateLoanRequestDto;
+import ir.iau.library.entity.Book;
+import ir.iau.library.entity.Person;
+import ir.iau.library.exception.BookNotAvailableException;
+import ir.iau.library.repository.BookLoanRepository;
+import ir.iau.library.repository.BookRepository;
+import ir.iau.library.repository.PersonRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * ۵۰۰ امانت هم‌زمان روی کتابی با ۱۰ نسخه: دقیقاً ۱۰ امانت ثبت شود و بقیه با BookNotAvailableException رد شوند.
+ */
+@SpringBootTest(properties = {
+        "app.images.backfill.enabled=false",
+        "logging.level.org.hibernate.SQL=INFO"
+})
+class BookLoanConcurrencyTest {
+
+    private static final int COPIES = 10;
+    private static final int CHECKOUTS = 500;
+    private static final int THREADS = 16;
+
+    @Autowired
+    private BookLoanService loanService;
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private PersonRepository personRepository;
+
+    @Autowired
+    private BookLoanRepository loanRepository;
+
+    @Test
+    void concurrentCheckoutsNeverLendMoreThanCopyCount() throws Exception {
+        Person person = personRepository.save(Person.builder()
+                .firstName("Stress").lastName("Test").email("stress@example.com").nationalId("stress")
+                .active(true).build());
+        Book book = bookRepository.save(Book.builder().title("Contended").copyCount(COPIES).active(true).build());
+
+        AtomicInteger lent = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (int i = 0; i < CHECKOUTS; i++) {
+                futures.add(pool.submit(() -> {
+                    start.await();
+                    CreateLoanRequestDto request = new CreateLoanRequestDto();
+                    request.setPersonId(person.getId());
+                    request.setBookId(book.getId());
+                    try {
+                        loanService.createLoan(request);
+                        lent.incrementAndGet();
+                    } catch (BookNotAvailableException e) {
+                        rejected.incrementAndGet();
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS); // هر خطای دیگری (مثلاً timeout قفل) تست را شکست می‌دهد
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        assertThat(lent.get()).isEqualTo(COPIES);
+        assertThat(rejected.get()).isEqualTo(CHECKOUTS - COPIES);
+        assertThat(loanRepository.count((root, query, cb) -> cb.equal(root.get("book").get("id"), book.getId())))
+                .isEqualTo(COPIES);
+        assertThat(bookRepository.findById(book.getId()).orElseThrow().getAvailableCopies()).isZero();
+    }
+}
@@ -0,0 +1,184 @@
+package ir.iau.library.service;
+
+import ir.iau.library.dto.SearchCriteria;
+import ir.iau.library.entity.Message;
+import ir.iau.library.repository.MessageRepository;
+import ir.iau.library.search.TextNormalizer;
+import ir.iau.library.specification.MessageSpecification;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.TypedQuery;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.LongSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * مقایسه جستجوی پیام‌ها با کوئری قدیمی {@code (:p IS NULL OR col = :p)} و با {@link MessageSpecification} روی
+ * داده بزرگ، برای ترکیب‌های رایج فیلترها (هر مسیر: صفحه اول ۲۰تایی + COUNT).
+ * <p>
+ * فقط با {@code -Dbenchmark=true} اجرا می‌شود؛ تعداد پیام‌ها با {@code -Dbenchmark.messages} (پیش‌فرض یک میلیون):
+ * <pre>mvn test -Dtest=MessageSearchBenchmarkTest -Dbenchmark=true -DargLine=-Xmx3g</pre>
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+@SpringBootTest(properties = {
+        "app.images.backfill.enabled=false",
+        "logging.level.org.hibernate.SQL=INFO"
+})
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+@Slf4j
+class MessageSearchBenchmarkTest {
+
+    private static final String LEGACY_WHERE = "WHERE m.isActive = true AND " +
+            "(:query IS NULL OR LOWER(m.message) LIKE LOWER(CONCAT('%', :query, '%'))) AND " +
+            "(:username IS NULL OR m.sender = :username OR m.recipient = :username) AND " +
+            "(:sender IS NULL OR m.sender = :sender) AND " +
+            "(:recipient IS NULL OR m.recipient = :recipient) AND " +
+            "(:subject IS NULL OR m.subject = :subject) AND " +
+            "(:priority IS NULL OR m.priority = :priority) AND " +
+            "(:startDate IS NULL OR m.createDate >= :startDate) AND " +
+            "(:endDate IS NULL OR m.createDate <= :endDate) ";
+
+    private static final int USERS = 5_000;
+    private static final int PAGE_SIZE = 20;
+    private static final int WARMUP = 3;
+    private static final int RUNS = 10;
+    private static final String[] SUBJECTS = {"امانت", "رزرو", "جریمه", "تمدید", "پرسش"};
+    private static final String[] WORDS = {"کتاب", "مقاله", "پایان‌نامه", "مجله", "جزوه", "فرهنگ", "جاوا", "تاریخ"};
+
+    private final LocalDateTime now = LocalDateTime.now().withNano(0);
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MessageRepository messageRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private TextNormalizer normalizer;
+
+    @BeforeAll
+    void seed() {
+        int total = Integer.getInteger("benchmark.messages", 1_000_000);
+        Random random = new Random(42);
+        long start = System.currentTimeMillis();
+        List<Object[]> batch = new ArrayList<>();
+        for (int i = 0; i < total; i++) {
+            String sender = "user" + random.nextInt(USERS);
+            String recipient = "user" + random.nextInt(USERS);
+            int p = random.nextInt(100);
+            batch.add(new Object[]{
+                    sender, recipient, Message.conversationKey(sender, recipient),
+                    random.nextInt(4) == 0 ? SUBJECTS[random.nextInt(SUBJECTS.length)] : null,
+                    "پیام " + i + " درباره " + WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)],
+                    p == 0 ? "urgent" : p < 5 ? "high" : "normal",
+                    random.nextInt(50) != 0,
+                    Timestamp.valueOf(now.minusSeconds(random.nextInt(2 * 365 * 24 * 3600)))});
+            if (batch.size() == 10_000 || i == total - 1) {
+                jdbcTemplate.batchUpdate("INSERT INTO messages (sender, sender_farsi_title, recipient, conversation_key, "
+                        + "subject, message, priority, is_active, create_date, message_status) "
+                        + "VALUES (?, 'x', ?, ?, ?, ?, ?, ?, ?, 'SENT')", batch);
+                batch.clear();
+            }
+        }
+        jdbcTemplate.execute("ANALYZE");
+        log.info("Seeded {} messages in {} ms", total, System.currentTimeMillis() - start);
+    }
+
+    @Test
+    @Transactional(readOnly = true)
+    void compareCatchAllQueryWithSpecification() {
+        Map<String, SearchCriteria> scenarios = new LinkedHashMap<>();
+        scenarios.put("sender", SearchCriteria.builder().sender("user42").build());
+        scenarios.put("username (sender or recipient)", SearchCriteria.builder().username("user42").build());
+        scenarios.put("recipient + subject", SearchCriteria.builder().recipient("user42").subject("امانت").build());
+        scenarios.put("urgent, last 30 days", SearchCriteria.builder().priority("urgent")
+                .startDate(now.minusDays(30)).endDate(now).build());
+        scenarios.put("last 24 hours", SearchCriteria.builder().startDate(now.minusDays(1)).build());
+        scenarios.put("text + sender", SearchCriteria.builder().query("جاوا").sender("user42").build());
+
+        log.info(String.format("%-32s %12s %12s %12s %12s %10s", "scenario", "legacy p50", "legacy p90", "spec p50",
+                "spec p90", "rows"));
+        for (Map.Entry<String, SearchCriteria> scenario : scenarios.entrySet()) {
+            SearchCriteria criteria = scenario.getValue();
+            long legacyTotal = legacy(criteria);
+            long specificationTotal = specification(criteria);
+            if (criteria.getQuery() == null) {
+                // متن در Specification کلمه به کلمه و در موضوع هم جستجو می‌شود، پس فقط بقیه فیلترها قابل مقایسه‌اند
+                assertThat(specificationTotal).as(scenario.getKey()).isEqualTo(legacyTotal);
+            }
+
+            long[] legacyMillis = measure(() -> legacy(criteria));
+            long[] specificationMillis = measure(() -> specification(criteria));
+            log.info(String.format("%-32s %10d ms %10d ms %10d ms %10d ms %,10d", scenario.getKey(),
+                    percentile(legacyMillis, 50), percentile(legacyMillis, 90),
+                    percentile(specificationMillis, 50), percentile(specificationMillis, 90), legacyTotal));
+        }
+    }
+
+    private long legacy(SearchCriteria criteria) {
+        TypedQuery<Message> page = bind(entityManager.createQuery(
+                "SELECT m FROM Message m " + LEGACY_WHERE + "ORDER BY m.createDate DESC", Message.class), criteria);
+        page.setMaxResults(PAGE_SIZE).getResultList();
+        long total = bind(entityManager.createQuery("SELECT COUNT(m) FROM Message m " + LEGACY_WHERE, Long.class),
+                criteria).getSingleResult();
+        entityManager.clear();
+        return total;
+    }
+
+    private long specification(SearchCriteria criteria) {
+        long total = messageRepository.findAll(MessageSpecification.search(criteria, normalizer),
+                PageRequest.of(0, PAGE_SIZE, MessageSpecification.NEWEST_FIRST)).getTotalElements();
+        entityManager.clear();
+        return total;
+    }
+
+    private static <T> TypedQuery<T> bind(TypedQuery<T> query, SearchCriteria criteria) {
+        return query.setParameter("query", criteria.getQuery())
+                .setParameter("username", criteria.getUsername())
+                .setParameter("sender", criteria.getSender())
+                .setParameter("recipient", criteria.getRecipient())
+                .setParameter("subject", criteria.getSubject())
+                .setParameter("priority", criteria.getPriority())
+                .setParameter("startDate", criteria.getStartDate())
+                .setParameter("endDate", criteria.getEndDate());
+    }
+
+    private static long[] measure(LongSupplier run) {
+        for (int i = 0; i < WARMUP; i++) {
+            run.getAsLong();
+        }
+        long[] millis = new long[RUNS];
+        for (int i = 0; i < RUNS; i++) {
+            long start = System.nanoTime();
+            run.getAsLong();
+            millis[i] = (System.nanoTime() - start) / 1_000_000;
+        }
+        Arrays.sort(millis);
+        return millis;
+    }
+
+    private static long percentile(long[] sorted, int percentile) {
+        return sorted[Math.min(sorted.length - 1, sorted.length * percentile / 100)];
+    }
+}
@@ -0,0 +1,27 @@
+package ir.iau.library.support;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+/**
+ * شمارش دستورهای SQL که Hibernate روی thread جاری آماده می‌کند؛ با
+ * {@code spring.jpa.properties.hibernate.session_factory.statement_inspector} ثبت می‌شود.
+ * شمارنده برای هر thread جداست تا کارهای پس‌زمینه (backfill، ایندکس) در نتیجه اثر نگذارند.
+ */
+public class SqlStatementCounter implements StatementInspector {
+
+    private static final ThreadLocal<int[]> COUNT = ThreadLocal.withInitial(() -> new int[1]);
+
+    @Override
+    public String inspect(String sql) {
+        COUNT.get()[0]++;
+        return sql;
+    }
+
+    public static void reset() {
+        COUNT.get()[0] = 0;
+    }
+
+    public static int count() {
+        return COUNT.get()[0];
+    }
+}